@@ -50,6 +50,12 @@ public class Alert {
     /** Timestamp when the alert was acknowledged */
     private LocalDateTime acknowledgedAt;
 
+    /** Number of times the condition was raised while this alert was open */
+    private int occurrences = 1;
+
+    /** Timestamp when the condition was last raised */
+    private LocalDateTime lastSeenAt;
+
 
     /**
      * Constructs a new Alert instance containing all required alert metadata.
@@ -80,6 +86,7 @@ public class Alert {
         this.thresholdValue = thresholdValue;
         this.actualValue = actualValue;
         this.createdAt = createdAt;
+        this.lastSeenAt = createdAt;
 
         // Alerts start unacknowledged
         this.acknowledged = false;
@@ -100,6 +107,7 @@ public class Alert {
         this.thresholdValue = thresholdValue;
         this.actualValue = actualValue;
         this.createdAt = createdAt;
+        this.lastSeenAt = createdAt;
 
         // Alerts start unacknowledged
         this.acknowledged = false;
@@ -120,6 +128,7 @@ public class Alert {
     public void setSeverity(AlertSeverity severity) { this.severity = severity; }
 
     public String getMessage() { return message; }
+    public void setMessage(String message) { this.message = message; }
 
     public String getRelatedEntity() { return relatedEntity; }
     public void setRelatedEntity(String relatedEntity) { this.relatedEntity = relatedEntity; }
@@ -141,6 +150,26 @@ public class Alert {
     public LocalDateTime getAcknowledgedAt() { return acknowledgedAt; }
     public void setAcknowledgedAt(LocalDateTime acknowledgedAt) { this.acknowledgedAt = acknowledgedAt; }
 
+    public int getOccurrences() { return occurrences; }
+    public void setOccurrences(int occurrences) { this.occurrences = occurrences; }
+
+    public LocalDateTime getLastSeenAt() { return lastSeenAt; }
+    public void setLastSeenAt(LocalDateTime lastSeenAt) { this.lastSeenAt = lastSeenAt; }
+
+
+    /**
+     * @return a new alert with the same values, which can be changed or
+     *         handed to another thread without affecting this one
+     */
+    public Alert copy() {
+        Alert copy = new Alert(id, type, severity, message, relatedEntity, thresholdValue, actualValue, createdAt);
+        copy.acknowledged = acknowledged;
+        copy.acknowledgedBy = acknowledgedBy;
+        copy.acknowledgedAt = acknowledgedAt;
+        copy.occurrences = occurrences;
+        copy.lastSeenAt = lastSeenAt;
+        return copy;
+    }
 
     /**
      * @return a simple formatted representation showing severity, type, and message
@@ -148,6 +177,7 @@ public class Alert {
     @Override
     public String toString() {
         String prefix = "[" + severity + "] (" + type + ") ";
-        return prefix + message;
+        String repeats = occurrences > 1 ? " (x" + occurrences + ")" : "";
+        return prefix + message + repeats;
     }
 }
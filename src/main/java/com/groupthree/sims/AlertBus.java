@@ -0,0 +1,252 @@
+package com.groupthree.sims;
+
+import java.util.EnumSet;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * An in-process publish/subscribe bus for alert events.
+ *
+ * <p>{@link AlertSys} publishes an {@link AlertEvent} whenever an alert is
+ * raised, coalesced into an open alert, or acknowledged. Screens and
+ * background jobs subscribe with a {@link AlertListener} and an optional
+ * filter on alert type and severity, and react as soon as the event
+ * happens instead of polling the {@code alerts} table.</p>
+ *
+ * <p>Delivery is asynchronous. Each subscriber has its own bounded queue,
+ * drained on a dedicated executor, so publishing never waits for a
+ * listener and one subscriber never delays another. A subscriber whose
+ * queue is full is too slow to keep up: it is evicted and receives no
+ * further events.</p>
+ *
+ * <p><b>Example Usage:</b></p>
+ * <pre>{@code
+ * AlertBus.Subscription sub = AlertSys.getAlertBus().subscribe(
+ *         event -> SwingUtilities.invokeLater(() -> refreshAlertList(event)),
+ *         EnumSet.of(AlertType.LOW_STOCK),
+ *         EnumSet.of(AlertSeverity.WARNING, AlertSeverity.CRITICAL));
+ * ...
+ * sub.cancel();
+ * }</pre>
+ */
+public class AlertBus
+{
+    /** Events delivered to one subscriber before its task yields to others. */
+    private static final int MAX_EVENTS_PER_RUN = 64;
+
+    private final int queueCapacity;
+    private final ExecutorService executor;
+    private final CopyOnWriteArrayList<Subscription> subscriptions = new CopyOnWriteArrayList<>();
+
+    private final AtomicLong published = new AtomicLong();
+    private final AtomicLong evicted = new AtomicLong();
+
+    /**
+     * @param deliveryThreads number of threads delivering events
+     * @param queueCapacity   events a subscriber may have pending before it is evicted
+     */
+    public AlertBus(int deliveryThreads, int queueCapacity)
+    {
+        if (deliveryThreads < 1 || queueCapacity < 1)
+        {
+            throw new IllegalArgumentException("Invalid alert bus settings.");
+        }
+
+        this.queueCapacity = queueCapacity;
+
+        AtomicInteger threadNumber = new AtomicInteger();
+        this.executor = Executors.newFixedThreadPool(deliveryThreads, r -> {
+            Thread t = new Thread(r, "sims-alert-bus-" + threadNumber.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /* ===========================================================
+       SUBSCRIBING
+       =========================================================== */
+
+    /**
+     * Subscribes to every alert event.
+     */
+    public Subscription subscribe(AlertListener listener)
+    {
+        return subscribe(listener, EnumSet.allOf(AlertType.class), EnumSet.allOf(AlertSeverity.class));
+    }
+
+    /**
+     * Subscribes to events for alerts of the given types and severities.
+     *
+     * @param listener   receives the events
+     * @param types      alert types of interest; empty means all types
+     * @param severities alert severities of interest; empty means all severities
+     * @return a handle used to cancel the subscription
+     */
+    public Subscription subscribe(AlertListener listener, Set<AlertType> types, Set<AlertSeverity> severities)
+    {
+        Subscription subscription = new Subscription(
+                listener,
+                types.isEmpty() ? EnumSet.allOf(AlertType.class) : EnumSet.copyOf(types),
+                severities.isEmpty() ? EnumSet.allOf(AlertSeverity.class) : EnumSet.copyOf(severities));
+        subscriptions.add(subscription);
+        return subscription;
+    }
+
+    /* ===========================================================
+       PUBLISHING
+       =========================================================== */
+
+    /**
+     * Queues an event for every matching subscriber and returns immediately.
+     *
+     * @param eventType what happened
+     * @param alert     the alert it happened to
+     */
+    public void publish(AlertEventType eventType, Alert alert)
+    {
+        if (subscriptions.isEmpty())
+        {
+            return;
+        }
+
+        AlertEvent event = new AlertEvent(eventType, alert);
+        published.incrementAndGet();
+
+        for (Subscription subscription : subscriptions)
+        {
+            if (subscription.matches(alert))
+            {
+                subscription.enqueue(event);
+            }
+        }
+    }
+
+    /**
+     * Stops delivery. Pending events are discarded.
+     */
+    public void shutdown()
+    {
+        for (Subscription subscription : subscriptions)
+        {
+            subscription.cancel();
+        }
+        executor.shutdownNow();
+    }
+
+    /* ===========================================================
+       METRICS
+       =========================================================== */
+
+    /** @return number of active subscriptions */
+    public int getSubscriberCount() { return subscriptions.size(); }
+
+    /** @return events published while at least one subscriber was registered */
+    public long getPublishedCount() { return published.get(); }
+
+    /** @return subscribers removed for falling too far behind */
+    public long getEvictedCount() { return evicted.get(); }
+
+    /**
+     * A registered listener with its filter and pending events.
+     *
+     * <p>At most one delivery task per subscription runs at a time, so a
+     * listener sees its events one at a time and in publish order.</p>
+     */
+    public final class Subscription
+    {
+        private final AlertListener listener;
+        private final Set<AlertType> types;
+        private final Set<AlertSeverity> severities;
+        private final BlockingQueue<AlertEvent> pending;
+
+        private final AtomicBoolean scheduled = new AtomicBoolean();
+        private volatile boolean active = true;
+        private final AtomicLong delivered = new AtomicLong();
+
+        private Subscription(AlertListener listener, Set<AlertType> types, Set<AlertSeverity> severities)
+        {
+            this.listener = listener;
+            this.types = types;
+            this.severities = severities;
+            this.pending = new ArrayBlockingQueue<>(queueCapacity);
+        }
+
+        private boolean matches(Alert alert)
+        {
+            return active && types.contains(alert.getType()) && severities.contains(alert.getSeverity());
+        }
+
+        private void enqueue(AlertEvent event)
+        {
+            if (!pending.offer(event))
+            {
+                System.err.println("Alert subscriber " + listener + " is not keeping up; unsubscribing it.");
+                evicted.incrementAndGet();
+                cancel();
+                return;
+            }
+            schedule();
+        }
+
+        private void schedule()
+        {
+            if (scheduled.compareAndSet(false, true))
+            {
+                executor.execute(this::deliver);
+            }
+        }
+
+        /** Delivers pending events; runs on the bus executor. */
+        private void deliver()
+        {
+            int count = 0;
+            AlertEvent event;
+            while (active && count < MAX_EVENTS_PER_RUN && (event = pending.poll()) != null)
+            {
+                try
+                {
+                    listener.onAlertEvent(event);
+                    delivered.incrementAndGet();
+                }
+                catch (RuntimeException e)
+                {
+                    System.err.println("Alert listener failed on " + event + ":");
+                    e.printStackTrace();
+                }
+                count++;
+            }
+
+            scheduled.set(false);
+            if (active && !pending.isEmpty())
+            {
+                schedule();
+            }
+        }
+
+        /**
+         * Stops delivery to this subscriber and discards its pending events.
+         */
+        public void cancel()
+        {
+            active = false;
+            subscriptions.remove(this);
+            pending.clear();
+        }
+
+        /** @return {@code false} once cancelled or evicted */
+        public boolean isActive() { return active; }
+
+        /** @return events waiting to be delivered */
+        public int getPendingCount() { return pending.size(); }
+
+        /** @return events delivered to the listener */
+        public long getDeliveredCount() { return delivered.get(); }
+    }
+}
@@ -0,0 +1,36 @@
+package com.groupthree.sims;
+
+import java.time.LocalDateTime;
+
+/**
+ * Something that happened to an alert: it was raised, raised again while
+ * still open (and coalesced), or acknowledged.
+ *
+ * <p>The event holds a snapshot of the alert taken when it was published,
+ * and {@link #getAlert()} hands out copies of it, so listeners on the bus
+ * threads never see the alert change under them.</p>
+ */
+public class AlertEvent {
+
+    private final AlertEventType eventType;
+    private final Alert alert;
+    private final LocalDateTime publishedAt;
+
+    public AlertEvent(AlertEventType eventType, Alert alert) {
+        this.eventType = eventType;
+        this.alert = alert.copy();
+        this.publishedAt = LocalDateTime.now();
+    }
+
+    public AlertEventType getEventType() { return eventType; }
+
+    /** @return a copy of the alert as it was when the event was published */
+    public Alert getAlert() { return alert.copy(); }
+
+    public LocalDateTime getPublishedAt() { return publishedAt; }
+
+    @Override
+    public String toString() {
+        return eventType + " " + alert;
+    }
+}
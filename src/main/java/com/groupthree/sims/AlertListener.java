@@ -0,0 +1,14 @@
+package com.groupthree.sims;
+
+/**
+ * Receives alert events pushed by an {@link AlertBus}.
+ *
+ * <p>Events are delivered on a bus thread, never on the thread that raised
+ * the alert. Swing listeners should hand work to the EDT with
+ * {@code SwingUtilities.invokeLater}.</p>
+ */
+@FunctionalInterface
+public interface AlertListener {
+
+    void onAlertEvent(AlertEvent event);
+}
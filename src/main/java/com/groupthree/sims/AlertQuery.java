@@ -0,0 +1,118 @@
+package com.groupthree.sims;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Filters for {@link AlertSys#queryAlerts(AlertQuery)}.
+ *
+ * <p>Every filter is compiled into the {@code WHERE} clause of one
+ * parameterized query against the {@code alerts} table. Results come newest
+ * first.</p>
+ *
+ * <p><b>Example Usage:</b></p>
+ * <pre>{@code
+ * List<Alert> critical = AlertSys.queryAlerts(
+ *         AlertQuery.create()
+ *                 .acknowledged(false)
+ *                 .severity(AlertSeverity.CRITICAL)
+ *                 .between(LocalDateTime.now().minusHours(24), null));
+ * }</pre>
+ */
+public class AlertQuery {
+
+    private Boolean acknowledged;
+    private final Set<AlertSeverity> severities = EnumSet.noneOf(AlertSeverity.class);
+    private final Set<AlertType> types = EnumSet.noneOf(AlertType.class);
+    private LocalDateTime from;
+    private LocalDateTime to;
+    private int limit;
+
+    public static AlertQuery create() {
+        return new AlertQuery();
+    }
+
+    /** Only acknowledged ({@code true}) or unacknowledged ({@code false}) alerts. */
+    public AlertQuery acknowledged(boolean acknowledged) {
+        this.acknowledged = acknowledged;
+        return this;
+    }
+
+    /** Only alerts with one of these severities. */
+    public AlertQuery severity(AlertSeverity... severities) {
+        this.severities.addAll(List.of(severities));
+        return this;
+    }
+
+    /** Only alerts of one of these types. */
+    public AlertQuery type(AlertType... types) {
+        this.types.addAll(List.of(types));
+        return this;
+    }
+
+    /** Only alerts created at or after {@code from} and before {@code to}; either may be {@code null}. */
+    public AlertQuery between(LocalDateTime from, LocalDateTime to) {
+        this.from = from;
+        this.to = to;
+        return this;
+    }
+
+    /** Most alerts returned; {@code 0} (the default) means no limit. */
+    public AlertQuery limit(int limit) {
+        if (limit < 0) {
+            throw new IllegalArgumentException("Limit must not be negative.");
+        }
+        this.limit = limit;
+        return this;
+    }
+
+    /**
+     * Builds the SQL for this query.
+     *
+     * @param params receives the bind values, in order
+     */
+    String toSql(List<Object> params) {
+        StringBuilder sql = new StringBuilder("SELECT * FROM alerts WHERE 1 = 1");
+
+        if (acknowledged != null) {
+            sql.append(" AND acknowledged = ?");
+            params.add(acknowledged);
+        }
+        if (!severities.isEmpty()) {
+            sql.append(" AND severity IN (");
+            appendNames(sql, params, severities);
+            sql.append(")");
+        }
+        if (!types.isEmpty()) {
+            sql.append(" AND type IN (");
+            appendNames(sql, params, types);
+            sql.append(")");
+        }
+        if (from != null) {
+            sql.append(" AND createdAt >= ?");
+            params.add(Timestamp.valueOf(from));
+        }
+        if (to != null) {
+            sql.append(" AND createdAt < ?");
+            params.add(Timestamp.valueOf(to));
+        }
+
+        sql.append(" ORDER BY createdAt DESC, id DESC");
+        if (limit > 0) {
+            sql.append(" LIMIT ?");
+            params.add(limit);
+        }
+        return sql.toString();
+    }
+
+    private static void appendNames(StringBuilder sql, List<Object> params, Set<? extends Enum<?>> values) {
+        int i = 0;
+        for (Enum<?> value : values) {
+            sql.append(i++ == 0 ? "?" : ", ?");
+            params.add(value.name());
+        }
+    }
+}
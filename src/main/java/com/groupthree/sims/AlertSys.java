@@ -1,10 +1,20 @@
 package com.groupthree.sims;
 
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.Duration;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Stream;
 
 /**
  * AlertSys manages the creation, storage, retrieval, and acknowledgment
@@ -22,6 +32,141 @@ import java.util.Map;
  */
 public class AlertSys
 {
+    /* ===========================================================
+       ALERT EVENTS
+       =========================================================== */
+
+    private static final AlertBus BUS = new AlertBus(2, 1024);
+
+    /**
+     * Returns the bus on which alert events are published. Subscribe to it
+     * to be told about new, repeated and acknowledged alerts as they happen
+     * instead of polling {@link #getActiveAlerts()}.
+     *
+     * @return the alert event bus
+     */
+    public static AlertBus getAlertBus()
+    {
+        return BUS;
+    }
+
+    /**
+     * Publishes an event once the surrounding transaction (if any) commits,
+     * so subscribers never hear about an alert that was rolled back.
+     */
+    private static void publish(AlertEventType eventType, Alert alert)
+    {
+        Database.afterCommit(() -> BUS.publish(eventType, alert));
+    }
+
+    /* ===========================================================
+       ALERT COALESCING
+       =========================================================== */
+
+    /** Default time within which repeats of an open alert are folded into it. */
+    public static final Duration DEFAULT_COALESCE_WINDOW = Duration.ofMinutes(15);
+
+    private static final String REPEAT_SQL =
+            "UPDATE alerts SET occurrences = occurrences + 1, lastSeenAt = ?, actualValue = ?, message = ?"
+            + " WHERE id = ? AND acknowledged = ?";
+
+    private static volatile Duration coalesceWindow = DEFAULT_COALESCE_WINDOW;
+
+    /**
+     * Open (unacknowledged) alerts keyed by type and related entity, so a
+     * repeat can be detected without querying the database. Only committed
+     * changes are applied, and the stored alerts are replaced rather than
+     * modified.
+     */
+    private static final ConcurrentHashMap<String, Alert> OPEN_ALERTS = new ConcurrentHashMap<>();
+
+    private static volatile boolean coalescingReady;
+
+    /**
+     * Sets how long after an alert was last raised a repeat of the same
+     * condition (same type and related entity) is folded into it instead of
+     * creating a new alert. {@link Duration#ZERO} turns coalescing off.
+     *
+     * @param window the coalescing window
+     */
+    public static void setCoalesceWindow(Duration window)
+    {
+        coalesceWindow = window;
+    }
+
+    /** @return the current coalescing window */
+    public static Duration getCoalesceWindow()
+    {
+        return coalesceWindow;
+    }
+
+    /**
+     * Adds the coalescing columns if needed and loads the open alerts into
+     * the in-memory index, once per run.
+     */
+    private static void ensureCoalescing()
+    {
+        if (coalescingReady) return;
+
+        synchronized (OPEN_ALERTS) {
+            if (coalescingReady) return;
+
+            boolean columns = Database.ensureColumn("alerts", "occurrences", "INT NOT NULL DEFAULT 1")
+                    & Database.ensureColumn("alerts", "lastSeenAt", "DATETIME NULL");
+
+            // Newest first, so the most recent open alert per key wins
+            for (Alert open : queryAlerts(AlertQuery.create().acknowledged(false))) {
+                OPEN_ALERTS.putIfAbsent(coalesceKey(open.getType(), open.getRelatedEntity()), open);
+            }
+
+            coalescingReady = columns;
+        }
+    }
+
+    private static String coalesceKey(AlertType type, String relatedEntity)
+    {
+        return type.name() + "|" + relatedEntity;
+    }
+
+    /**
+     * Folds a repeat into an open alert in the database if it is still
+     * within the window. The in-memory alert is not touched.
+     *
+     * @return {@code true} if the repeat was recorded on {@code open}'s row
+     */
+    private static boolean recordRepeat(Alert open, String message, Double actualValue, LocalDateTime now)
+    {
+        Duration window = coalesceWindow;
+        LocalDateTime lastSeen = open.getLastSeenAt() != null ? open.getLastSeenAt() : open.getCreatedAt();
+
+        if (open.isAcknowledged() || window.isZero() || lastSeen.plus(window).isBefore(now)) {
+            return false;
+        }
+
+        List<Object> params = new ArrayList<>();
+        params.add(Timestamp.valueOf(now));
+        params.add(actualValue);
+        params.add(message);
+        params.add(open.getId());
+        params.add(false);
+
+        // Otherwise acknowledged or removed elsewhere, and a new alert is needed
+        return Database.executeUpdate(REPEAT_SQL, params) == 1;
+    }
+
+    /**
+     * @return a copy of {@code open} with one more occurrence, seen at {@code now}
+     */
+    private static Alert withRepeat(Alert open, String message, Double actualValue, LocalDateTime now)
+    {
+        Alert repeated = open.copy();
+        repeated.setOccurrences(open.getOccurrences() + 1);
+        repeated.setLastSeenAt(now);
+        repeated.setActualValue(actualValue);
+        repeated.setMessage(message);
+        return repeated;
+    }
+
     /* ===========================================================
        ALERT CREATION
        =========================================================== */
@@ -29,13 +174,26 @@ public class AlertSys
     /**
      * Creates and registers a new alert with the provided metadata.
      *
+     * <p>If an unacknowledged alert with the same type and related entity
+     * was last raised within the coalescing window (see
+     * {@link #setCoalesceWindow(Duration)}), no new alert is created.
+     * Instead that alert's occurrence count, last-seen time, actual value
+     * and message are updated, and it is returned.</p>
+     *
+     * <p>The open alert is looked up in memory, and the insert or update runs
+     * without holding any lock, so a raise inside a transaction that waits
+     * on a row lock can never block another thread's raise. The in-memory
+     * index is only updated once the surrounding transaction commits. Two
+     * first raises of the same condition at the same moment may therefore
+     * both create an alert; later repeats fold into the newer one.</p>
+     *
      * @param type            alert category/type
      * @param severity        severity level of the alert
      * @param message         main alert message
      * @param relatedEntity   reference entity (e.g., itemCode, batchId)
      * @param thresholdValue  expected threshold limit (nullable)
      * @param actualValue     actual measured value (nullable)
-     * @return the created Alert instance
+     * @return the created Alert instance, or the open alert the repeat was folded into
      */
     public static Alert createAlert(AlertType type,
                              AlertSeverity severity,
@@ -44,6 +202,26 @@ public class AlertSys
                              Double thresholdValue,
                              Double actualValue) {
 
+        ensureCoalescing();
+
+        LocalDateTime now = LocalDateTime.now();
+        String key = coalesceKey(type, relatedEntity);
+
+        Alert open = OPEN_ALERTS.get(key);
+        if (open != null && recordRepeat(open, message, actualValue, now)) {
+            Alert repeated = withRepeat(open, message, actualValue, now);
+
+            Database.afterCommit(() -> {
+                // Counted on the current entry, so concurrent repeats are not lost
+                Alert current = OPEN_ALERTS.computeIfPresent(key, (k, entry) -> entry.getId() == open.getId()
+                        ? withRepeat(entry, message, actualValue, now)
+                        : entry);
+                BUS.publish(AlertEventType.REPEATED,
+                        current != null && current.getId() == open.getId() ? current : repeated);
+            });
+            return repeated;
+        }
+
         Alert alert = new Alert
         (
                 type,
@@ -52,12 +230,19 @@ public class AlertSys
                 relatedEntity,
                 thresholdValue,
                 actualValue,
-                LocalDateTime.now()
+                now
         );
 
-        int id = Database.insert("alerts", toMap(alert));
+        int id = Database.insertWithPk("alerts", toMap(alert));
         alert.setId(id);
 
+        if (id > 0) {
+            Alert stored = alert.copy();
+            Database.afterCommit(() -> {
+                OPEN_ALERTS.merge(key, stored, (entry, fresh) -> fresh.getId() > entry.getId() ? fresh : entry);
+                BUS.publish(AlertEventType.RAISED, stored);
+            });
+        }
         return alert;
     }
 
@@ -79,37 +264,79 @@ public class AlertSys
         map.put("acknowledged", alert.isAcknowledged());
         map.put("acknowledgedBy", alert.getAcknowledgedBy() != null ? alert.getAcknowledgedBy().getId() : null);
         map.put("acknowledgedAt", alert.getAcknowledgedAt() != null ? java.sql.Timestamp.valueOf(alert.getAcknowledgedAt()) : null);
+        map.put("occurrences", alert.getOccurrences());
+        map.put("lastSeenAt", alert.getLastSeenAt() != null ? java.sql.Timestamp.valueOf(alert.getLastSeenAt()) : null);
         
         return map;
     }
 
-    private static Alert fromMap(Map<String, Object> map)
+    /**
+     * Maps an alert row. The acknowledging user is taken from {@code users},
+     * which the caller fills with one batched lookup, so mapping many rows
+     * does not query the users table once per row.
+     */
+    private static Alert fromMap(Map<String, Object> map, Map<Integer, User> users)
     {
         Alert alert = new Alert
         (
-                (int) map.get("id"),
+                ((Number) map.get("id")).intValue(),
                 AlertType.valueOf((String) map.get("type")),
                 AlertSeverity.valueOf((String) map.get("severity")),
                 (String) map.get("message"),
                 (String) map.get("relatedEntity"),
-                (Double) map.get("thresholdValue"),
-                (Double) map.get("actualValue"),
+                map.get("thresholdValue") != null ? ((Number) map.get("thresholdValue")).doubleValue() : null,
+                map.get("actualValue") != null ? ((Number) map.get("actualValue")).doubleValue() : null,
                 ((java.sql.Timestamp) map.get("createdAt")).toLocalDateTime()
         );
 
-        alert.setAcknowledged((Boolean) map.get("acknowledged"));
-        alert.setAcknowledgedBy(
-                map.get("acknowledgedBy") != null ?
-                        SecuritySys.findUserById((int) map.get("acknowledgedBy")) : null
-        );
+        Integer ackBy = acknowledgedById(map);
+        Object acknowledged = map.get("acknowledged");
+        alert.setAcknowledged(acknowledged instanceof Number
+                ? ((Number) acknowledged).intValue() != 0
+                : Boolean.TRUE.equals(acknowledged));
+        alert.setAcknowledgedBy(ackBy != null ? users.get(ackBy) : null);
         alert.setAcknowledgedAt(
                 map.get("acknowledgedAt") != null ?
                         ((java.sql.Timestamp) map.get("acknowledgedAt")).toLocalDateTime() : null
         );
+        if (map.get("occurrences") != null) {
+            alert.setOccurrences(((Number) map.get("occurrences")).intValue());
+        }
+        if (map.get("lastSeenAt") != null) {
+            alert.setLastSeenAt(((java.sql.Timestamp) map.get("lastSeenAt")).toLocalDateTime());
+        }
 
         return alert;
     }
 
+    private static Integer acknowledgedById(Map<String, Object> map)
+    {
+        Object ackBy = map.get("acknowledgedBy");
+        return ackBy != null ? ((Number) ackBy).intValue() : null;
+    }
+
+    /**
+     * Maps alert rows, resolving every acknowledging user with one query.
+     */
+    private static List<Alert> fromRows(List<Map<String, Object>> rows)
+    {
+        Set<Integer> userIds = new HashSet<>();
+        for (Map<String, Object> row : rows) {
+            Integer ackBy = acknowledgedById(row);
+            if (ackBy != null) userIds.add(ackBy);
+        }
+
+        Map<Integer, User> users = userIds.isEmpty()
+                ? Map.of()
+                : SecuritySys.findUsersByIds(userIds);
+
+        List<Alert> alerts = new ArrayList<>(rows.size());
+        for (Map<String, Object> row : rows) {
+            alerts.add(fromMap(row, users));
+        }
+        return alerts;
+    }
+
     /* ===========================================================
        PREDEFINED ALERT FACTORIES
        =========================================================== */
@@ -167,6 +394,36 @@ public class AlertSys
         );
     }
 
+    /**
+     * Generates an alert when the running defect rate of an item or machine
+     * exceeds its threshold. Used by {@link DefectRateMonitor}.
+     *
+     * @param label         what the rate belongs to, e.g. "Item 7" or "Machine M2"
+     * @param relatedEntity stable key of the item or machine, e.g. "item:7"
+     * @param defectRate    current defect rate, in percent
+     * @param threshold     allowable defect rate, in percent
+     * @return created Alert, or the open alert it was coalesced into
+     */
+    public static Alert raiseDefectRateAlert(String label,
+                                             String relatedEntity,
+                                             double defectRate,
+                                             double threshold) {
+
+        String message = String.format(
+                "%s defect rate %.2f%% exceeded threshold %.2f%%",
+                label, defectRate, threshold
+        );
+
+        return createAlert(
+                AlertType.DEFECT_THRESHOLD,
+                AlertSeverity.CRITICAL,
+                message,
+                relatedEntity,
+                threshold,
+                defectRate
+        );
+    }
+
     /**
      * Convenience method that checks if an item is below the required stock level
      * and automatically generates an alert when necessary.
@@ -174,7 +431,7 @@ public class AlertSys
     public static void checkLowStockThreshold(int stockId)
     {
         Stock stock = InventorySys.findStockById(stockId);
-        if (stock.getStockLevel() <= stock.getMinimumStockLevel())
+        if (stock != null && stock.getStockLevel() <= stock.getMinimumStockLevel())
         {
             raiseLowStockAlert(stock);
         }
@@ -184,31 +441,76 @@ public class AlertSys
        ALERT QUERY OPERATIONS
        =========================================================== */
 
+    private static volatile boolean indexesReady;
+
+    /**
+     * Creates the indexes that alert queries rely on, once per run.
+     */
+    static void ensureIndexes()
+    {
+        if (!indexesReady) {
+            indexesReady = Database.ensureIndex("alerts", "idx_alerts_ack_created", "acknowledged", "createdAt")
+                    & Database.ensureIndex("alerts", "idx_alerts_type_created", "type", "createdAt")
+                    & Database.ensureIndex("alerts", "idx_alerts_severity_created", "severity", "createdAt");
+        }
+    }
+
+    /**
+     * Runs a filtered alert query.
+     *
+     * <p>The filters are evaluated by the database, and the users who
+     * acknowledged the returned alerts are loaded with one batched query,
+     * so the cost does not grow with the size of the alert history.</p>
+     *
+     * @param query acknowledged flag, severity, type and time filters
+     * @return matching alerts, newest first
+     */
+    public static List<Alert> queryAlerts(AlertQuery query)
+    {
+        ensureIndexes();
+
+        List<Object> params = new ArrayList<>();
+        String sql = query.toSql(params);
+        return fromRows(Database.select(sql, params));
+    }
+
     /**
      * @return all alerts, including acknowledged and historical alerts
      */
     public static List<Alert> getAllAlerts()
     {
-        List<Map<String, Object>> rows = Database.selectAll("alerts");
-        List<Alert> alerts = new ArrayList<>();
+        return fromRows(Database.selectAll("alerts"));
+    }
 
-        for (Map<String, Object> row : rows) {
-            alerts.add(fromMap(row));
-        }
-        return alerts;
+    /**
+     * Streams all alerts from a database cursor instead of loading the whole
+     * table into memory. The returned stream holds a database connection and
+     * must be closed, e.g. with {@code try-with-resources}.
+     *
+     * <p>Acknowledging users are looked up once each and remembered for the
+     * rest of the stream.</p>
+     *
+     * @return a stream of all alerts that must be closed after use
+     * @throws UncheckedSQLException if reading the alerts fails
+     */
+    public static Stream<Alert> streamAllAlerts()
+    {
+        Map<Integer, User> users = new HashMap<>();
+
+        return Database.streamAll("alerts").map(row -> {
+            Integer ackBy = acknowledgedById(row);
+            if (ackBy != null && !users.containsKey(ackBy)) {
+                users.put(ackBy, SecuritySys.findUserById(ackBy));
+            }
+            return fromMap(row, users);
+        });
     }
 
     /**
      * @return alerts that have not been acknowledged by any user
      */
     public static List<Alert> getUnacknowledgedAlerts() {
-        List<Alert> result = new ArrayList<>();
-        for (Alert a : getAllAlerts()) {
-            if (!a.isAcknowledged()) {
-                result.add(a);
-            }
-        }
-        return result;
+        return queryAlerts(AlertQuery.create().acknowledged(false));
     }
 
     /**
@@ -237,16 +539,19 @@ public class AlertSys
      * @return matching Alert or null if none found
      */
     public static Alert findAlertById(int id) {
-        Map<String, Object> row = Database.select("SELECT * FROM alerts WHERE id = ?").get(0);
-        return row != null ? fromMap(row) : null;
+        List<Map<String, Object>> rows = Database.select("SELECT * FROM alerts WHERE id = ?", List.of(id));
+        return rows.isEmpty() ? null : fromRows(rows).get(0);
     }
 
     /* ===========================================================
        ALERT ACKNOWLEDGMENT
        =========================================================== */
 
+    /** Most ids placed in one {@code IN (...)} list. */
+    private static final int ACK_IN_LIST_LIMIT = 1000;
+
     /**
-     * Marks an alert as acknowledged by a specific user.
+     * Marks an alert as acknowledged by a specific user and saves it.
      *
      * @param alertId ID of the alert to acknowledge
      * @param user    the user acknowledging the alert
@@ -254,12 +559,108 @@ public class AlertSys
      */
     public static boolean acknowledgeAlert(int alertId, User user)
     {
-        Alert alert = findAlertById(alertId);
-        if (alert == null) return false;
+        return acknowledgeAlerts(List.of(alertId), user).contains(alertId);
+    }
+
+    /**
+     * Acknowledges many alerts at once and saves the change.
+     *
+     * <p>The open alerts among {@code ids} are locked with one
+     * {@code SELECT ... WHERE id IN (...) AND acknowledged = false FOR UPDATE}
+     * and acknowledged with one {@code UPDATE} of exactly those ids, in a
+     * single transaction, rather than one round trip per alert. (Very long
+     * id lists are split into chunks of 1000.) Alerts that do not exist or
+     * were already acknowledged are left untouched, and an alert that
+     * another user acknowledges concurrently is reported by only one of
+     * the two calls.</p>
+     *
+     * <p><b>Example Usage:</b></p>
+     * <pre>{@code
+     * List<Integer> cleared = AlertSys.acknowledgeAlerts(selectedIds, supervisor);
+     * System.out.println(cleared.size() + " alerts acknowledged");
+     * }</pre>
+     *
+     * @param ids  the IDs of the alerts to acknowledge
+     * @param user the user acknowledging them
+     * @return the IDs that were actually changed by this call
+     */
+    public static List<Integer> acknowledgeAlerts(Collection<Integer> ids, User user)
+    {
+        List<Integer> distinct = new ArrayList<>(new LinkedHashSet<>(ids));
+        distinct.remove(null);
+        if (distinct.isEmpty() || user == null) return List.of();
+
+        ensureCoalescing();
+        // DATETIME columns keep whole seconds; use the value as it will be stored
+        LocalDateTime now = LocalDateTime.now().withNano(0);
+
+        try {
+            return Database.inTransaction(() -> {
+                List<Integer> changed = new ArrayList<>();
+
+                for (int from = 0; from < distinct.size(); from += ACK_IN_LIST_LIMIT) {
+                    List<Integer> chunk = distinct.subList(from, Math.min(from + ACK_IN_LIST_LIMIT, distinct.size()));
+                    if (!acknowledgeChunk(chunk, user, now, changed)) {
+                        Database.setRollbackOnly();
+                        return List.<Integer>of();
+                    }
+                }
+
+                if (Database.hasFailedStatement()) {
+                    Database.setRollbackOnly();
+                    return List.<Integer>of();
+                }
+                return changed;
+            });
+        }
+        catch (SQLException e) {
+            e.printStackTrace();
+            return List.of();
+        }
+    }
+
+    /**
+     * Acknowledges one chunk of alerts inside the caller's transaction,
+     * adding the changed IDs to {@code changed}.
+     *
+     * @return {@code false} if a statement failed
+     */
+    private static boolean acknowledgeChunk(List<Integer> chunk, User user, LocalDateTime now, List<Integer> changed)
+    {
+        // Lock the alerts this call will acknowledge, so the update changes exactly these
+        List<Object> selectParams = new ArrayList<>(chunk);
+        selectParams.add(false);
+        List<Alert> alerts = fromRows(Database.select("SELECT * FROM alerts WHERE id IN ("
+                + String.join(", ", Collections.nCopies(chunk.size(), "?")) + ")"
+                + " AND acknowledged = ? FOR UPDATE", selectParams));
+        if (Database.hasFailedStatement()) return false;
+        if (alerts.isEmpty()) return true;
 
-        alert.setAcknowledged(true);
-        alert.setAcknowledgedBy(user);
-        alert.setAcknowledgedAt(LocalDateTime.now());
+        Map<String, Object> values = new HashMap<>();
+        values.put("acknowledged", true);
+        values.put("acknowledgedBy", user.getId());
+        values.put("acknowledgedAt", Timestamp.valueOf(now));
+
+        List<Object> ids = new ArrayList<>();
+        for (Alert alert : alerts) {
+            ids.add(alert.getId());
+        }
+        Database.update("alerts", values,
+                "id IN (" + String.join(", ", Collections.nCopies(ids.size(), "?")) + ")", ids);
+        if (Database.hasFailedStatement()) return false;
+
+        for (Alert alert : alerts) {
+            alert.setAcknowledged(true);
+            alert.setAcknowledgedBy(user);
+            alert.setAcknowledgedAt(now);
+            changed.add(alert.getId());
+
+            // The next raise of this condition starts a new alert
+            Database.afterCommit(() -> OPEN_ALERTS.computeIfPresent(
+                    coalesceKey(alert.getType(), alert.getRelatedEntity()),
+                    (key, open) -> open.getId() == alert.getId() ? null : open));
+            publish(AlertEventType.ACKNOWLEDGED, alert);
+        }
         return true;
     }
 }
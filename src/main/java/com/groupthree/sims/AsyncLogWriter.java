@@ -0,0 +1,643 @@
+package com.groupthree.sims;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Writes audit log rows to the {@code logs} table in the background.
+ *
+ * <p>Callers hand a row to {@link #append(int, String, Timestamp)} and return
+ * immediately; a single writer thread collects the rows and batch-inserts
+ * them every {@code flushIntervalMillis}, or sooner once a full batch is
+ * waiting. This keeps audit inserts off the POS and Swing threads.</p>
+ *
+ * <p>Rows wait in a bounded, lock-free ring buffer. Producers claim a slot
+ * with a compare-and-set on the tail counter and then publish the row into
+ * it; the writer is the only consumer and frees slots in order. When the
+ * buffer is full the {@link LogOverflowPolicy} decides what happens:</p>
+ * <ul>
+ *   <li>{@code BLOCK}: the caller waits until the writer frees a slot</li>
+ *   <li>{@code DROP}: the row is discarded and counted</li>
+ *   <li>{@code SPILL}: the row is appended to a local spill file, which the
+ *       writer replays into the database once the buffer has drained</li>
+ * </ul>
+ *
+ * <p>A batch the database rejects is retried {@value #WRITE_ATTEMPTS} times
+ * with a growing pause. Rows that still fail are moved to the spill file,
+ * whatever the policy, and replayed with a growing delay, so an outage of
+ * the database does not lose audit history. A row is only given up, and
+ * counted as failed, after {@value #MAX_SPILL_ROUNDS} replays or when it
+ * still fails during {@link #shutdown()}.</p>
+ *
+ * <p>{@link #flush()} waits until every row appended before the call has
+ * been written, and {@link #shutdown()} drains everything before the writer
+ * stops.</p>
+ *
+ * <p><b>Example Usage:</b></p>
+ * <pre>{@code
+ * AsyncLogWriter writer = new AsyncLogWriter(4096, 250, 500, LogOverflowPolicy.SPILL);
+ * writer.start();
+ * writer.append(user.getId(), "SALES: ...", Timestamp.valueOf(LocalDateTime.now()));
+ * System.out.println("pending=" + writer.getQueueDepth() + " lag=" + writer.getLagMillis() + "ms");
+ * }</pre>
+ */
+public class AsyncLogWriter
+{
+    /** How long a blocked producer parks before checking for space again. */
+    private static final long BLOCK_PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(200);
+
+    /** Tries per batch before its failed rows are moved to the spill file. */
+    private static final int WRITE_ATTEMPTS = 3;
+    private static final long WRITE_BACKOFF_BASE_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+
+    /** Replays of a spilled row before it is given up. */
+    private static final int MAX_SPILL_ROUNDS = 10;
+    private static final long REPLAY_BACKOFF_BASE_NANOS = TimeUnit.SECONDS.toNanos(1);
+    private static final long REPLAY_BACKOFF_MAX_NANOS = TimeUnit.MINUTES.toNanos(1);
+
+    private final int capacity;
+    private final int mask;
+    private final long flushIntervalNanos;
+    private final int maxBatchSize;
+    private final LogOverflowPolicy policy;
+
+    private final AtomicReferenceArray<Entry> slots;
+
+    /** Next sequence a producer will claim. */
+    private final AtomicLong tail = new AtomicLong();
+
+    /** Next sequence the writer will consume; only the writer advances it. */
+    private volatile long head;
+
+    private final Thread writer;
+    private volatile boolean running;
+
+    private final Object flushMonitor = new Object();
+
+    private final Object spillLock = new Object();
+    private Path spillFile;
+    private BufferedWriter spillOut;
+    private final AtomicLong spillPending = new AtomicLong();
+
+    /** Writer thread only: earliest time of the next replay, and the delay after a failed one. */
+    private long nextReplayNanos;
+    private long replayBackoffNanos;
+
+    private final AtomicLong appended = new AtomicLong();
+    private final AtomicLong written = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong spilled = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private volatile long maxLagNanos;
+
+    /**
+     * @param capacity            ring buffer size; rounded up to a power of two
+     * @param flushIntervalMillis longest time a row waits before it is written
+     * @param maxBatchSize        most rows sent in one batch insert
+     * @param policy              what to do when the buffer is full
+     */
+    public AsyncLogWriter(int capacity, long flushIntervalMillis, int maxBatchSize, LogOverflowPolicy policy)
+    {
+        if (capacity < 1 || flushIntervalMillis < 1 || maxBatchSize < 1 || policy == null)
+        {
+            throw new IllegalArgumentException("Invalid audit log writer settings.");
+        }
+
+        int size = 1;
+        while (size < capacity)
+        {
+            size <<= 1;
+        }
+
+        this.capacity = size;
+        this.mask = this.capacity - 1;
+        this.flushIntervalNanos = TimeUnit.MILLISECONDS.toNanos(flushIntervalMillis);
+        this.maxBatchSize = maxBatchSize;
+        this.policy = policy;
+        this.slots = new AtomicReferenceArray<>(this.capacity);
+
+        this.writer = new Thread(this::run, "sims-audit-writer");
+        this.writer.setDaemon(true);
+    }
+
+    /**
+     * Starts the writer thread.
+     */
+    public void start()
+    {
+        running = true;
+        writer.start();
+    }
+
+    /* ===========================================================
+       PRODUCERS
+       =========================================================== */
+
+    /**
+     * Queues one row for the {@code logs} table.
+     *
+     * <p>If the writer has been shut down the row is inserted directly on
+     * the caller's thread so that no audit entry is lost.</p>
+     *
+     * @param userID  the user who performed the action
+     * @param details the log text
+     * @param time    when the action happened
+     * @return {@code false} only if the row was dropped by the
+     *         {@code DROP} policy
+     */
+    public boolean append(int userID, String details, Timestamp time)
+    {
+        Entry entry = new Entry(userID, details, time, System.nanoTime());
+
+        if (!running)
+        {
+            writeNow(entry);
+            return true;
+        }
+
+        appended.incrementAndGet();
+
+        while (!offer(entry))
+        {
+            switch (policy)
+            {
+                case DROP:
+                    dropped.incrementAndGet();
+                    return false;
+
+                case SPILL:
+                    spill(entry);
+                    spilled.incrementAndGet();
+                    return true;
+
+                default:
+                    LockSupport.unpark(writer);
+                    LockSupport.parkNanos(this, BLOCK_PARK_NANOS);
+                    if (!running)
+                    {
+                        writeNow(entry);
+                        return true;
+                    }
+            }
+        }
+
+        if (tail.get() - head >= maxBatchSize)
+        {
+            LockSupport.unpark(writer);
+        }
+        return true;
+    }
+
+    /**
+     * Claims the next free slot and publishes the entry into it.
+     *
+     * @return {@code false} if the buffer is full
+     */
+    private boolean offer(Entry entry)
+    {
+        while (true)
+        {
+            long seq = tail.get();
+            if (seq - head >= capacity)
+            {
+                return false;
+            }
+            if (tail.compareAndSet(seq, seq + 1))
+            {
+                slots.set((int) seq & mask, entry);
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Waits until every row appended before this call has been written to
+     * the database, including rows that were spilled to disk.
+     */
+    public void flush()
+    {
+        long target = tail.get();
+
+        synchronized (flushMonitor)
+        {
+            while (writer.isAlive() && (head < target || spillPending.get() > 0))
+            {
+                LockSupport.unpark(writer);
+                try
+                {
+                    flushMonitor.wait(TimeUnit.NANOSECONDS.toMillis(flushIntervalNanos) + 1);
+                }
+                catch (InterruptedException e)
+                {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Stops accepting rows, writes everything still buffered or spilled and
+     * waits for the writer thread to finish.
+     */
+    public void shutdown()
+    {
+        running = false;
+        LockSupport.unpark(writer);
+
+        try
+        {
+            writer.join();
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            return;
+        }
+
+        // Rows published by producers that raced with the writer's exit.
+        List<Entry> late = new ArrayList<>();
+        while (drain(late) > 0)
+        {
+            write(late);
+            late.clear();
+        }
+    }
+
+    /* ===========================================================
+       WRITER
+       =========================================================== */
+
+    private void run()
+    {
+        List<Entry> batch = new ArrayList<>(maxBatchSize);
+
+        while (true)
+        {
+            while (drain(batch) > 0)
+            {
+                write(batch);
+                batch.clear();
+            }
+
+            if (spillPending.get() > 0 && tail.get() == head
+                    && (!running || System.nanoTime() - nextReplayNanos >= 0))
+            {
+                replaySpill();
+            }
+
+            synchronized (flushMonitor)
+            {
+                flushMonitor.notifyAll();
+            }
+
+            if (!running && tail.get() == head && spillPending.get() == 0)
+            {
+                break;
+            }
+            if (running)
+            {
+                LockSupport.parkNanos(this, flushIntervalNanos);
+            }
+            else if (tail.get() != head && slots.get((int) head & mask) == null)
+            {
+                // A producer has claimed a slot but not yet published it.
+                Thread.onSpinWait();
+            }
+        }
+
+        closeSpill();
+    }
+
+    /**
+     * Moves up to one batch of published rows from the ring buffer into
+     * {@code batch}, freeing their slots.
+     */
+    private int drain(List<Entry> batch)
+    {
+        long seq = head;
+        while (batch.size() < maxBatchSize && seq < tail.get())
+        {
+            int index = (int) seq & mask;
+            Entry entry = slots.get(index);
+            if (entry == null)
+            {
+                break;
+            }
+            slots.set(index, null);
+            batch.add(entry);
+            seq++;
+            head = seq;
+        }
+        return batch.size();
+    }
+
+    /**
+     * Inserts a batch, retrying the rows the database rejects with a growing
+     * pause, and keeps the rows that still fail for a later replay.
+     *
+     * @return {@code true} if every row was written
+     */
+    private boolean write(List<Entry> batch)
+    {
+        long oldest = Long.MAX_VALUE;
+        for (Entry entry : batch)
+        {
+            oldest = Math.min(oldest, entry.enqueuedAt);
+        }
+
+        List<Entry> pending = batch;
+        for (int attempt = 1; ; attempt++)
+        {
+            List<Map<String, Object>> rows = new ArrayList<>(pending.size());
+            for (Entry entry : pending)
+            {
+                rows.add(entry.toRow());
+            }
+
+            int[] counts = Database.insertBatch("logs", rows);
+
+            List<Entry> rejected = new ArrayList<>();
+            for (int i = 0; i < pending.size(); i++)
+            {
+                if (i >= counts.length || counts[i] == Statement.EXECUTE_FAILED)
+                {
+                    rejected.add(pending.get(i));
+                }
+            }
+            written.addAndGet(pending.size() - rejected.size());
+            pending = rejected;
+
+            if (pending.isEmpty() || attempt == WRITE_ATTEMPTS)
+            {
+                break;
+            }
+            pause(WRITE_BACKOFF_BASE_NANOS << (attempt - 1));
+        }
+
+        for (Entry entry : pending)
+        {
+            keepForRetry(entry);
+        }
+
+        long lag = System.nanoTime() - oldest;
+        if (lag > maxLagNanos)
+        {
+            maxLagNanos = lag;
+        }
+        return pending.isEmpty();
+    }
+
+    /**
+     * Moves a row the database rejected to the spill file for a later
+     * replay, or gives it up once it has been replayed too often or the
+     * writer is stopping.
+     */
+    private void keepForRetry(Entry entry)
+    {
+        if (running && entry.spillRounds < MAX_SPILL_ROUNDS)
+        {
+            spill(entry.retried());
+            return;
+        }
+
+        System.err.println("Giving up on audit log entry for user " + entry.userID + ": " + entry.details);
+        failed.incrementAndGet();
+    }
+
+    /** Parks the writer thread for the full duration, even if it is unparked early. */
+    private void pause(long nanos)
+    {
+        long deadline = System.nanoTime() + nanos;
+        for (long left = nanos; left > 0; left = deadline - System.nanoTime())
+        {
+            LockSupport.parkNanos(this, left);
+        }
+    }
+
+    private void writeNow(Entry entry)
+    {
+        Database.insert("logs", entry.toRow());
+    }
+
+    /* ===========================================================
+       SPILL FILE
+       =========================================================== */
+
+    private void spill(Entry entry)
+    {
+        synchronized (spillLock)
+        {
+            try
+            {
+                if (spillOut == null)
+                {
+                    if (spillFile == null)
+                    {
+                        spillFile = Files.createTempFile("sims-audit-", ".spill");
+                        spillFile.toFile().deleteOnExit();
+                    }
+                    spillOut = Files.newBufferedWriter(spillFile, StandardCharsets.UTF_8,
+                            StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+                }
+
+                spillOut.write(entry.userID + "\t" + entry.time.getTime() + "\t" + entry.spillRounds
+                        + "\t" + escape(entry.details));
+                spillOut.newLine();
+                spillOut.flush();
+
+                spillPending.incrementAndGet();
+            }
+            catch (IOException e)
+            {
+                System.err.println("Error spilling audit log entry; entry dropped:");
+                e.printStackTrace();
+                dropped.incrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * Reads back every spilled row, empties the spill file and writes the
+     * rows to the database in batches. If any row has to be kept again, the
+     * next replay waits twice as long as the last, up to a minute.
+     */
+    private void replaySpill()
+    {
+        List<Entry> replay = new ArrayList<>();
+
+        synchronized (spillLock)
+        {
+            try
+            {
+                closeSpill();
+                try (BufferedReader in = Files.newBufferedReader(spillFile, StandardCharsets.UTF_8))
+                {
+                    String line;
+                    while ((line = in.readLine()) != null)
+                    {
+                        String[] parts = line.split("\t", 4);
+                        replay.add(new Entry(Integer.parseInt(parts[0]), unescape(parts[3]),
+                                new Timestamp(Long.parseLong(parts[1])), System.nanoTime(),
+                                Integer.parseInt(parts[2])));
+                    }
+                }
+                Files.write(spillFile, new byte[0]);
+            }
+            catch (IOException | RuntimeException e)
+            {
+                System.err.println("Error replaying audit spill file " + spillFile + ":");
+                e.printStackTrace();
+                failed.addAndGet(spillPending.get() - replay.size());
+            }
+            spillPending.set(0);
+        }
+
+        boolean allWritten = true;
+        for (int from = 0; from < replay.size(); from += maxBatchSize)
+        {
+            allWritten &= write(replay.subList(from, Math.min(from + maxBatchSize, replay.size())));
+        }
+
+        replayBackoffNanos = allWritten ? 0
+                : Math.min(REPLAY_BACKOFF_MAX_NANOS, Math.max(REPLAY_BACKOFF_BASE_NANOS, replayBackoffNanos * 2));
+        nextReplayNanos = System.nanoTime() + replayBackoffNanos;
+    }
+
+    private void closeSpill()
+    {
+        synchronized (spillLock)
+        {
+            if (spillOut != null)
+            {
+                try
+                {
+                    spillOut.close();
+                }
+                catch (IOException e)
+                {
+                    e.printStackTrace();
+                }
+                spillOut = null;
+            }
+        }
+    }
+
+    private static String escape(String s)
+    {
+        return s.replace("\\", "\\\\").replace("\t", "\\t").replace("\n", "\\n").replace("\r", "\\r");
+    }
+
+    private static String unescape(String s)
+    {
+        StringBuilder sb = new StringBuilder(s.length());
+        for (int i = 0; i < s.length(); i++)
+        {
+            char c = s.charAt(i);
+            if (c == '\\' && i + 1 < s.length())
+            {
+                char next = s.charAt(++i);
+                sb.append(next == 't' ? '\t' : next == 'n' ? '\n' : next == 'r' ? '\r' : next);
+            }
+            else
+            {
+                sb.append(c);
+            }
+        }
+        return sb.toString();
+    }
+
+    /* ===========================================================
+       METRICS
+       =========================================================== */
+
+    /** @return rows waiting in the ring buffer */
+    public long getQueueDepth() { return tail.get() - head; }
+
+    /** @return rows waiting in the spill file */
+    public long getSpillDepth() { return spillPending.get(); }
+
+    /**
+     * @return how long the oldest buffered row has been waiting, in
+     *         milliseconds; {@code 0} when the buffer is empty
+     */
+    public long getLagMillis()
+    {
+        Entry oldest = slots.get((int) head & mask);
+        return oldest == null ? 0 : TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - oldest.enqueuedAt);
+    }
+
+    /** @return longest time any written row waited, in milliseconds */
+    public long getMaxLagMillis() { return TimeUnit.NANOSECONDS.toMillis(maxLagNanos); }
+
+    /** @return rows accepted by {@link #append} while the writer was running */
+    public long getAppendedCount() { return appended.get(); }
+
+    /** @return rows successfully inserted by the writer */
+    public long getWrittenCount() { return written.get(); }
+
+    /** @return rows discarded because the buffer was full or could not be spilled */
+    public long getDroppedCount() { return dropped.get(); }
+
+    /** @return rows that overflowed into the spill file */
+    public long getSpilledCount() { return spilled.get(); }
+
+    /** @return rows given up after the database rejected every retry */
+    public long getFailedCount() { return failed.get(); }
+
+    /** @return the ring buffer size */
+    public int getCapacity() { return capacity; }
+
+    /** A queued audit row, when it was queued and how often it has been spilled for a retry. */
+    private static final class Entry
+    {
+        private final int userID;
+        private final String details;
+        private final Timestamp time;
+        private final long enqueuedAt;
+        private final int spillRounds;
+
+        private Entry(int userID, String details, Timestamp time, long enqueuedAt)
+        {
+            this(userID, details, time, enqueuedAt, 0);
+        }
+
+        private Entry(int userID, String details, Timestamp time, long enqueuedAt, int spillRounds)
+        {
+            this.userID = userID;
+            this.details = details;
+            this.time = time;
+            this.enqueuedAt = enqueuedAt;
+            this.spillRounds = spillRounds;
+        }
+
+        private Entry retried()
+        {
+            return new Entry(userID, details, time, enqueuedAt, spillRounds + 1);
+        }
+
+        private Map<String, Object> toRow()
+        {
+            Map<String, Object> values = new HashMap<>();
+            values.put("userID", userID);
+            values.put("details", details);
+            values.put("time", time);
+            return values;
+        }
+    }
+}
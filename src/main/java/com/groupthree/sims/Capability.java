@@ -0,0 +1,33 @@
+package com.groupthree.sims;
+
+/**
+ * Something a user may be allowed to do. Roles are granted capabilities
+ * through the {@link PermissionEngine}; checks go through
+ * {@link SecuritySys#hasCapability(User, Capability)}.
+ *
+ * At most 64 capabilities are supported, since each is one bit of a
+ * {@code long} mask.
+ */
+public enum Capability {
+    /** Actions reserved for administrators, see {@link SecuritySys#authorize(User, Role)}. */
+    ADMIN_ACTIONS,
+    /** Actions reserved for managers. */
+    MANAGER_ACTIONS,
+    /** Recording sales. */
+    SALES_ACTIONS,
+    /** Recording production and defects. */
+    PRODUCTION_ACTIONS,
+    /** Opening the administrator interface. */
+    ACCESS_ADMIN_UI,
+    /** Opening the point-of-sale interface. */
+    ACCESS_POS_UI,
+    /** Opening the factory interface. */
+    ACCESS_FACTORY_UI,
+    /** Creating, changing and deactivating user accounts. */
+    MANAGE_USERS;
+
+    /** @return this capability's bit in a capability mask */
+    public long bit() {
+        return 1L << ordinal();
+    }
+}
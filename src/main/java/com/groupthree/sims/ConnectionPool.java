@@ -0,0 +1,732 @@
+package com.groupthree.sims;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A small, bounded pool of JDBC connections used by {@link Database}.
+ *
+ * <p>Opening a MySQL connection costs a TCP handshake plus authentication,
+ * which is far more expensive than the queries SIMS actually runs. The pool
+ * keeps between {@code minSize} and {@code maxSize} physical connections open
+ * and hands them out as lightweight proxies. Calling {@link Connection#close()}
+ * on a borrowed connection returns it to the pool instead of closing it, so
+ * existing {@code try-with-resources} code works unchanged.</p>
+ *
+ * <p>The pool provides:</p>
+ * <ul>
+ *   <li>Bounded borrowing: at most {@code maxSize} connections are handed out;
+ *       further callers wait up to {@code borrowTimeoutMillis}</li>
+ *   <li>Validation on borrow: a connection that has been idle for a while is
+ *       checked with {@link Connection#isValid(int)} before it is returned</li>
+ *   <li>Idle eviction: a background housekeeper closes connections idle for
+ *       longer than {@code maxIdleMillis}, never going below {@code minSize}</li>
+ *   <li>Leak detection: connections held longer than
+ *       {@code leakThresholdMillis} are reported with the stack trace of the
+ *       code that borrowed them</li>
+ *   <li>Statement caching: each connection keeps an LRU cache of
+ *       {@link PreparedStatement}s keyed by their SQL text, so repeated
+ *       queries skip the prepare round trip</li>
+ *   <li>Statistics: active, idle and total counts, time spent waiting and
+ *       statement cache hits/misses</li>
+ * </ul>
+ *
+ * <p><b>Example Usage:</b></p>
+ * <pre>{@code
+ * try (Connection conn = pool.borrow()) {
+ *     // use conn as normal; close() hands it back to the pool
+ * }
+ * System.out.println(pool.getStatsSummary());
+ * }</pre>
+ */
+public class ConnectionPool
+{
+    /** Connections returned to the pool more recently than this are not re-validated. */
+    private static final long VALIDATION_BYPASS_MILLIS = 500;
+
+    /** Seconds to wait for {@link Connection#isValid(int)} to answer. */
+    private static final int VALIDATION_TIMEOUT_SECONDS = 2;
+
+    private final String url;
+    private final String user;
+    private final String password;
+
+    private final int minSize;
+    private final int maxSize;
+    private final long maxIdleMillis;
+    private final long borrowTimeoutMillis;
+    private final long leakThresholdMillis;
+    private final int statementCacheSize;
+
+    /** Idle connections; most recently returned first so cold ones age out. */
+    private final LinkedBlockingDeque<PooledConnection> idle = new LinkedBlockingDeque<>();
+    private final Set<PooledConnection> borrowed = ConcurrentHashMap.newKeySet();
+    private final Semaphore permits;
+    private final AtomicInteger totalCount = new AtomicInteger();
+
+    private final AtomicLong borrowCount = new AtomicLong();
+    private final AtomicLong totalWaitNanos = new AtomicLong();
+    private final AtomicLong maxWaitNanos = new AtomicLong();
+    private final AtomicLong createdCount = new AtomicLong();
+    private final AtomicLong evictedCount = new AtomicLong();
+    private final AtomicLong leakCount = new AtomicLong();
+    private final AtomicLong statementCacheHits = new AtomicLong();
+    private final AtomicLong statementCacheMisses = new AtomicLong();
+
+    private final ScheduledExecutorService housekeeper;
+    private volatile boolean closed;
+
+    /**
+     * Creates a new pool. No connection is opened on the caller's thread; the
+     * housekeeper fills the pool up to {@code minSize} in the background.
+     *
+     * @param url                 JDBC URL of the database
+     * @param user                database user name
+     * @param password            database password
+     * @param minSize             number of connections to keep open while idle
+     * @param maxSize             maximum number of open connections
+     * @param maxIdleMillis       idle time after which surplus connections are closed
+     * @param borrowTimeoutMillis how long {@link #borrow()} waits for a free connection
+     * @param leakThresholdMillis how long a connection may be held before it is
+     *                            reported as a possible leak; {@code 0} disables
+     *                            leak detection
+     * @param statementCacheSize  prepared statements cached per connection;
+     *                            {@code 0} disables statement caching
+     */
+    public ConnectionPool(String url,
+                          String user,
+                          String password,
+                          int minSize,
+                          int maxSize,
+                          long maxIdleMillis,
+                          long borrowTimeoutMillis,
+                          long leakThresholdMillis,
+                          int statementCacheSize)
+    {
+        if (minSize < 0 || maxSize < 1 || minSize > maxSize)
+        {
+            throw new IllegalArgumentException("Invalid pool size: min=" + minSize + ", max=" + maxSize);
+        }
+
+        this.url = url;
+        this.user = user;
+        this.password = password;
+        this.minSize = minSize;
+        this.maxSize = maxSize;
+        this.maxIdleMillis = maxIdleMillis;
+        this.borrowTimeoutMillis = borrowTimeoutMillis;
+        this.leakThresholdMillis = leakThresholdMillis;
+        this.statementCacheSize = statementCacheSize;
+        this.permits = new Semaphore(maxSize, true);
+
+        this.housekeeper = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "sims-pool-housekeeper");
+            t.setDaemon(true);
+            return t;
+        });
+
+        long period = Math.max(1000, Math.min(maxIdleMillis, 30_000) / 2);
+        housekeeper.scheduleWithFixedDelay(this::housekeep, 0, period, TimeUnit.MILLISECONDS);
+    }
+
+    /* ===========================================================
+       BORROW / RETURN
+       =========================================================== */
+
+    /**
+     * Borrows a connection from the pool, opening a new one if none is idle
+     * and the pool is below its maximum size.
+     *
+     * <p>The returned connection must be closed by the caller; closing it
+     * returns it to the pool.</p>
+     *
+     * @return a validated connection
+     * @throws SQLException if the pool is closed, no connection became
+     *                      available in time, or a new connection could not
+     *                      be opened
+     */
+    public Connection borrow() throws SQLException
+    {
+        if (closed)
+        {
+            throw new SQLException("Connection pool is closed.");
+        }
+
+        long start = System.nanoTime();
+
+        try
+        {
+            if (!permits.tryAcquire(borrowTimeoutMillis, TimeUnit.MILLISECONDS))
+            {
+                throw new SQLException("Timed out after " + borrowTimeoutMillis
+                        + " ms waiting for a database connection (" + getStatsSummary() + ").");
+            }
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for a database connection.", e);
+        }
+
+        try
+        {
+            PooledConnection pooled = takeIdleOrCreate();
+            pooled.onBorrow(leakThresholdMillis > 0);
+            borrowed.add(pooled);
+
+            recordWait(System.nanoTime() - start);
+            return pooled.getProxy();
+        }
+        catch (SQLException | RuntimeException e)
+        {
+            permits.release();
+            throw e;
+        }
+    }
+
+    private PooledConnection takeIdleOrCreate() throws SQLException
+    {
+        while (true)
+        {
+            PooledConnection pooled = idle.pollFirst();
+
+            if (pooled == null)
+            {
+                if (reserveSlot(maxSize))
+                {
+                    return open();
+                }
+
+                // Every slot is open but some are still being handed back; wait briefly.
+                try
+                {
+                    pooled = idle.pollFirst(50, TimeUnit.MILLISECONDS);
+                }
+                catch (InterruptedException e)
+                {
+                    Thread.currentThread().interrupt();
+                    throw new SQLException("Interrupted while waiting for a database connection.", e);
+                }
+
+                if (pooled == null)
+                {
+                    continue;
+                }
+            }
+
+            if (validate(pooled))
+            {
+                return pooled;
+            }
+            discard(pooled);
+        }
+    }
+
+    /**
+     * Called by the connection proxy when the borrower closes it.
+     */
+    private void giveBack(PooledConnection pooled)
+    {
+        if (!borrowed.remove(pooled))
+        {
+            return;
+        }
+
+        try
+        {
+            if (closed || !pooled.resetForReuse())
+            {
+                discard(pooled);
+            }
+            else
+            {
+                idle.offerFirst(pooled);
+            }
+        }
+        finally
+        {
+            permits.release();
+        }
+    }
+
+    private boolean validate(PooledConnection pooled)
+    {
+        if (System.currentTimeMillis() - pooled.lastReturnedAt < VALIDATION_BYPASS_MILLIS)
+        {
+            return true;
+        }
+
+        try
+        {
+            return pooled.physical.isValid(VALIDATION_TIMEOUT_SECONDS);
+        }
+        catch (SQLException e)
+        {
+            return false;
+        }
+    }
+
+    /* ===========================================================
+       PHYSICAL CONNECTION MANAGEMENT
+       =========================================================== */
+
+    private boolean reserveSlot(int limit)
+    {
+        while (true)
+        {
+            int current = totalCount.get();
+            if (current >= limit)
+            {
+                return false;
+            }
+            if (totalCount.compareAndSet(current, current + 1))
+            {
+                return true;
+            }
+        }
+    }
+
+    /** Opens a physical connection for a slot already reserved in {@link #totalCount}. */
+    private PooledConnection open() throws SQLException
+    {
+        try
+        {
+            Connection physical = DriverManager.getConnection(url, user, password);
+            createdCount.incrementAndGet();
+            return new PooledConnection(physical);
+        }
+        catch (SQLException | RuntimeException e)
+        {
+            totalCount.decrementAndGet();
+            throw e;
+        }
+    }
+
+    private void discard(PooledConnection pooled)
+    {
+        totalCount.decrementAndGet();
+        evictedCount.incrementAndGet();
+
+        try
+        {
+            pooled.physical.close();
+        }
+        catch (SQLException e)
+        {
+            // The connection is being thrown away anyway.
+        }
+    }
+
+    /**
+     * Periodic maintenance: closes surplus idle connections, tops the pool up
+     * to its minimum size and reports suspected leaks.
+     */
+    private void housekeep()
+    {
+        if (closed)
+        {
+            return;
+        }
+
+        long now = System.currentTimeMillis();
+
+        // Evict connections that have sat idle for too long (oldest are at the tail).
+        Iterator<PooledConnection> it = idle.descendingIterator();
+        while (it.hasNext() && totalCount.get() > minSize)
+        {
+            PooledConnection pooled = it.next();
+            if (now - pooled.lastReturnedAt > maxIdleMillis && idle.remove(pooled))
+            {
+                discard(pooled);
+            }
+        }
+
+        // Keep the minimum number of connections warm.
+        while (reserveSlot(minSize))
+        {
+            try
+            {
+                idle.offerLast(open());
+            }
+            catch (SQLException e)
+            {
+                System.err.println("Connection pool: could not open connection (" + e.getMessage() + ").");
+                break;
+            }
+        }
+
+        if (leakThresholdMillis > 0)
+        {
+            for (PooledConnection pooled : borrowed)
+            {
+                if (!pooled.leakReported && now - pooled.borrowedAt > leakThresholdMillis)
+                {
+                    pooled.leakReported = true;
+                    leakCount.incrementAndGet();
+                    System.err.println("Connection pool: connection held for "
+                            + (now - pooled.borrowedAt) + " ms, possible leak. Borrowed at:");
+                    if (pooled.borrowTrace != null)
+                    {
+                        pooled.borrowTrace.printStackTrace();
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Closes all idle connections and stops the housekeeper. Connections that
+     * are still borrowed are closed as they are returned.
+     */
+    public void close()
+    {
+        closed = true;
+        housekeeper.shutdownNow();
+
+        PooledConnection pooled;
+        while ((pooled = idle.pollFirst()) != null)
+        {
+            discard(pooled);
+        }
+    }
+
+    /* ===========================================================
+       STATISTICS
+       =========================================================== */
+
+    private void recordWait(long waitNanos)
+    {
+        borrowCount.incrementAndGet();
+        totalWaitNanos.addAndGet(waitNanos);
+        maxWaitNanos.accumulateAndGet(waitNanos, Math::max);
+    }
+
+    /** @return number of connections currently borrowed */
+    public int getActiveCount() { return borrowed.size(); }
+
+    /** @return number of open connections waiting in the pool */
+    public int getIdleCount() { return idle.size(); }
+
+    /** @return number of open physical connections (active + idle) */
+    public int getTotalCount() { return totalCount.get(); }
+
+    /** @return most connections the pool will open at once */
+    public int getMaxSize() { return maxSize; }
+
+    /** @return number of successful borrows since the pool was created */
+    public long getBorrowCount() { return borrowCount.get(); }
+
+    /** @return number of physical connections opened since the pool was created */
+    public long getCreatedCount() { return createdCount.get(); }
+
+    /** @return number of physical connections closed by eviction or failed validation */
+    public long getEvictedCount() { return evictedCount.get(); }
+
+    /** @return number of suspected connection leaks reported */
+    public long getLeakCount() { return leakCount.get(); }
+
+    /** @return number of prepared statements served from a connection's cache */
+    public long getStatementCacheHits() { return statementCacheHits.get(); }
+
+    /** @return number of prepared statements that had to be prepared afresh */
+    public long getStatementCacheMisses() { return statementCacheMisses.get(); }
+
+    /** @return average time, in milliseconds, spent inside {@link #borrow()} */
+    public double getAverageWaitMillis()
+    {
+        long count = borrowCount.get();
+        return count == 0 ? 0 : totalWaitNanos.get() / (count * 1_000_000.0);
+    }
+
+    /** @return longest time, in milliseconds, a caller has spent inside {@link #borrow()} */
+    public double getMaxWaitMillis()
+    {
+        return maxWaitNanos.get() / 1_000_000.0;
+    }
+
+    /**
+     * @return a one-line summary of the pool statistics, suitable for logs
+     */
+    public String getStatsSummary()
+    {
+        return String.format(
+                "active=%d, idle=%d, total=%d/%d, borrows=%d, avgWait=%.3fms, maxWait=%.3fms, created=%d, evicted=%d, leaks=%d, stmtHits=%d, stmtMisses=%d",
+                getActiveCount(), getIdleCount(), getTotalCount(), maxSize, getBorrowCount(),
+                getAverageWaitMillis(), getMaxWaitMillis(), getCreatedCount(), getEvictedCount(), getLeakCount(),
+                getStatementCacheHits(), getStatementCacheMisses()
+        );
+    }
+
+    /* ===========================================================
+       POOLED CONNECTION
+       =========================================================== */
+
+    /**
+     * Wraps one physical connection together with its pool bookkeeping and
+     * hands out a proxy whose {@code close()} returns it to the pool.
+     *
+     * <p>The statement cache is only touched by the thread that currently
+     * holds the connection, so it needs no locking.</p>
+     */
+    private final class PooledConnection implements InvocationHandler
+    {
+        private final Connection physical;
+        private volatile Connection proxy;
+
+        /** Prepared statements keyed by SQL text (plus generated-keys flag), least recently used first. */
+        private final LinkedHashMap<String, CachedStatement> statements =
+                new LinkedHashMap<>(16, 0.75f, true) {
+                    @Override
+                    protected boolean removeEldestEntry(Map.Entry<String, CachedStatement> eldest)
+                    {
+                        if (size() <= statementCacheSize)
+                        {
+                            return false;
+                        }
+                        eldest.getValue().closePhysical();
+                        return true;
+                    }
+                };
+
+        private volatile long borrowedAt;
+        private volatile long lastReturnedAt = System.currentTimeMillis();
+        private volatile Throwable borrowTrace;
+        private volatile boolean leakReported;
+
+        private PooledConnection(Connection physical)
+        {
+            this.physical = physical;
+        }
+
+        private void onBorrow(boolean captureTrace)
+        {
+            borrowedAt = System.currentTimeMillis();
+            borrowTrace = captureTrace ? new Throwable("Connection borrowed here") : null;
+            leakReported = false;
+
+            // A fresh proxy per borrow so a stale reference cannot touch the next borrower's work.
+            proxy = (Connection) Proxy.newProxyInstance(
+                    Connection.class.getClassLoader(),
+                    new Class<?>[] { Connection.class },
+                    this
+            );
+        }
+
+        private Connection getProxy()
+        {
+            return proxy;
+        }
+
+        /**
+         * Restores the connection to its default state before it goes back
+         * into the pool.
+         *
+         * @return {@code false} if the connection is unusable and should be discarded
+         */
+        private boolean resetForReuse()
+        {
+            try
+            {
+                if (physical.isClosed())
+                {
+                    return false;
+                }
+                if (!physical.getAutoCommit())
+                {
+                    physical.rollback();
+                    physical.setAutoCommit(true);
+                }
+                physical.clearWarnings();
+                lastReturnedAt = System.currentTimeMillis();
+                return true;
+            }
+            catch (SQLException e)
+            {
+                return false;
+            }
+        }
+
+        @Override
+        public Object invoke(Object target, Method method, Object[] args) throws Throwable
+        {
+            String name = method.getName();
+
+            if (target != proxy)
+            {
+                // The borrower already gave this connection back.
+                if (name.equals("close")) return null;
+                if (name.equals("isClosed")) return true;
+                throw new SQLException("Connection has already been returned to the pool.");
+            }
+
+            switch (name)
+            {
+                case "close":
+                    proxy = null;
+                    giveBack(this);
+                    return null;
+                case "isClosed":
+                    return false;
+                case "equals":
+                    return target == args[0];
+                case "hashCode":
+                    return System.identityHashCode(target);
+                case "toString":
+                    return "PooledConnection[" + physical + "]";
+                case "prepareStatement":
+                    if (statementCacheSize > 0 && args.length <= 2 && args[0] instanceof String
+                            && (args.length == 1 || args[1] instanceof Integer))
+                    {
+                        int generatedKeys = args.length == 2 ? (Integer) args[1] : Statement.NO_GENERATED_KEYS;
+                        return prepareCached((String) args[0], generatedKeys);
+                    }
+                    // Other overloads (cursor types, key column lists) are not cached.
+                    return invokePhysical(method, args);
+                default:
+                    return invokePhysical(method, args);
+            }
+        }
+
+        private Object invokePhysical(Method method, Object[] args) throws Throwable
+        {
+            try
+            {
+                return method.invoke(physical, args);
+            }
+            catch (InvocationTargetException e)
+            {
+                throw e.getCause();
+            }
+        }
+
+        /**
+         * Returns the cached statement for {@code sql}, preparing and caching
+         * it on a miss. If the cached statement is already in use (the same
+         * query nested inside itself), a plain uncached statement is returned.
+         */
+        private PreparedStatement prepareCached(String sql, int generatedKeys) throws SQLException
+        {
+            String key = generatedKeys == Statement.RETURN_GENERATED_KEYS ? "keys:" + sql : sql;
+            CachedStatement cached = statements.get(key);
+
+            if (cached != null && !cached.inUse)
+            {
+                statementCacheHits.incrementAndGet();
+                return cached.checkOut();
+            }
+
+            statementCacheMisses.incrementAndGet();
+            PreparedStatement ps = physical.prepareStatement(sql, generatedKeys);
+
+            if (cached != null)
+            {
+                return ps;
+            }
+
+            cached = new CachedStatement(ps, this);
+            statements.put(key, cached);
+            return cached.checkOut();
+        }
+    }
+
+    /**
+     * A prepared statement kept open across borrows. The caller receives a
+     * proxy whose {@code close()} clears the parameters and releases the
+     * statement back to the cache instead of closing it.
+     */
+    private static final class CachedStatement implements InvocationHandler
+    {
+        private final PreparedStatement physical;
+        private final PooledConnection owner;
+        private PreparedStatement proxy;
+        private boolean inUse;
+
+        private CachedStatement(PreparedStatement physical, PooledConnection owner)
+        {
+            this.physical = physical;
+            this.owner = owner;
+        }
+
+        private PreparedStatement checkOut()
+        {
+            inUse = true;
+            proxy = (PreparedStatement) Proxy.newProxyInstance(
+                    PreparedStatement.class.getClassLoader(),
+                    new Class<?>[] { PreparedStatement.class },
+                    this
+            );
+            return proxy;
+        }
+
+        private void closePhysical()
+        {
+            try
+            {
+                physical.close();
+            }
+            catch (SQLException e)
+            {
+                // Evicted statement; nothing useful to do.
+            }
+        }
+
+        @Override
+        public Object invoke(Object target, Method method, Object[] args) throws Throwable
+        {
+            String name = method.getName();
+
+            if (target != proxy)
+            {
+                if (name.equals("close")) return null;
+                if (name.equals("isClosed")) return true;
+                throw new SQLException("Statement has already been closed.");
+            }
+
+            switch (name)
+            {
+                case "close":
+                    physical.clearParameters();
+                    physical.clearBatch();
+                    proxy = null;
+                    inUse = false;
+                    return null;
+                case "isClosed":
+                    return false;
+                case "getConnection":
+                    return owner.getProxy();
+                case "equals":
+                    return target == args[0];
+                case "hashCode":
+                    return System.identityHashCode(target);
+                default:
+                    try
+                    {
+                        return method.invoke(physical, args);
+                    }
+                    catch (InvocationTargetException e)
+                    {
+                        throw e.getCause();
+                    }
+            }
+        }
+    }
+}
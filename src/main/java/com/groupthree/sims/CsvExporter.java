@@ -1,24 +1,50 @@
 package com.groupthree.sims;
 
-import java.io.BufferedWriter;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Iterator;
 import java.util.List;
-import java.util.stream.Collectors;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.function.Function;
+import java.util.stream.Stream;
+import java.util.zip.GZIPOutputStream;
 
 /**
  * Utility class for exporting text data to CSV files.
  *
  * This implementation:
- *  - Treats each String in {@code records} as a single-column row.
+ *  - Treats each String in {@code records} as a single-column row, or
+ *    streams typed multi-column rows through a {@link CsvWriter}.
+ *  - Can build large exports from partitions formatted in parallel,
+ *    optionally gzip-compressed.
  *  - Optionally writes a header row.
  *  - Properly escapes values that contain commas, quotes, or newlines
  *    according to common CSV conventions.
  */
 public class CsvExporter {
 
+    /** Compression buffer for gzip output. */
+    private static final int GZIP_BUFFER_SIZE = 64 * 1024;
+
+    /** Initial size of an in-memory partition chunk, in bytes. */
+    private static final int CHUNK_INITIAL_SIZE = 256 * 1024;
+
+    /** CsvWriter buffer used for partition chunks, in characters. */
+    private static final int CHUNK_BUFFER_SIZE = 16 * 1024;
+
     /**
      * Writes the given records to a CSV file.
      *
@@ -35,66 +61,302 @@ public class CsvExporter {
                                 List<String> records,
                                 List<String> headers) throws IOException {
 
-        try (BufferedWriter writer = Files.newBufferedWriter(outputFile, StandardCharsets.UTF_8)) {
+        try (CsvWriter csv = new CsvWriter(Files.newBufferedWriter(outputFile, StandardCharsets.UTF_8))) {
 
             // Write header row (if any)
             if (headers != null && !headers.isEmpty()) {
-                String headerLine = joinCsvRow(headers);
-                writer.write(headerLine);
-                writer.newLine();
+                csv.writeRow(headers);
             }
 
             // Write each record as a single-column row
             if (records != null) {
                 for (String record : records) {
-                    String escaped = escapeCsvField(record);
-                    writer.write(escaped);
-                    writer.newLine();
+                    csv.writeField(record);
+                    csv.endRow();
                 }
             }
         }
     }
 
     /**
-     * Joins multiple fields into a single CSV row string.
+     * Writes one CSV row for a value; used by
+     * {@link #writeCsv(Path, List, Stream, RowWriter)}.
+     *
+     * @param <T> the type of value turned into a row
+     */
+    @FunctionalInterface
+    public interface RowWriter<T> {
+
+        /**
+         * Writes the fields of {@code row} with {@link CsvWriter#writeField}.
+         * The row is ended by the caller.
+         */
+        void write(T row, CsvWriter csv) throws IOException;
+    }
+
+    /**
+     * Streams rows into a multi-column CSV file.
+     *
+     * <p>Rows are pulled from {@code rows} one at a time, typically a
+     * {@link Database#stream(String, List)} cursor, and written through a
+     * single reusable {@link CsvWriter} buffer. Nothing is collected in
+     * memory, so a multi-million-row export uses the same memory as a small
+     * one. The stream is closed when the export finishes.</p>
+     *
+     * <p><b>Example Usage:</b></p>
+     * <pre>{@code
+     * long written = CsvExporter.writeCsv(
+     *         Path.of("stock.csv"),
+     *         List.of("id", "name", "level"),
+     *         Database.streamAll("stock"),
+     *         (row, csv) -> {
+     *             csv.writeField(((Number) row.get("id")).longValue());
+     *             csv.writeField((String) row.get("name"));
+     *             csv.writeField(((Number) row.get("stockLevel")).longValue());
+     *         });
+     * }</pre>
+     *
+     * @param outputFile the path of the CSV file to write to
+     * @param headers    header row, or null/empty for none
+     * @param rows       the values to export; closed by this method
+     * @param rowWriter  writes the fields of one value
+     * @param <T>        the type of value exported
+     * @return the number of data rows written
+     * @throws IOException if an I/O error occurs or reading {@code rows}
+     *                     from the database fails, in which case the file is incomplete
      */
-    private static String joinCsvRow(List<String> fields) {
-        return fields.stream()
-                     .map(CsvExporter::escapeCsvField)
-                     .collect(Collectors.joining(","));
+    public static <T> long writeCsv(Path outputFile,
+                                    List<String> headers,
+                                    Stream<T> rows,
+                                    RowWriter<T> rowWriter) throws IOException {
+
+        return writeCsv(outputFile, false, headers, rows, rowWriter);
     }
 
     /**
-     * Escapes a single CSV field according to RFC 4180-style rules:
-     *  - If the value contains a comma, double quote, CR, or LF, the whole
-     *    field is wrapped in double quotes.
-     *  - Any existing double quotes inside the value are doubled (" becomes "").
+     * Writes a multi-column CSV file from partitions that are queried and
+     * formatted in parallel.
      *
-     * Examples:
-     *  John Doe      -> John Doe
-     *  Smith, John   -> "Smith, John"
-     *  He said "Hi"  -> "He said ""Hi"""
+     * <p>Each partition is turned into CSV on {@code pool} and encoded into
+     * an in-memory chunk. Chunks are then written to the file strictly in
+     * the order of {@code partitions}, so as long as the partitions are
+     * disjoint and each one is ordered, the file is byte-for-byte the same
+     * as a sequential export of the whole range. At most twice the pool's
+     * parallelism chunks are held in memory at once.</p>
+     *
+     * <p><b>Example Usage:</b></p>
+     * <pre>{@code
+     * ForkJoinPool pool = new ForkJoinPool(4);
+     * long written = CsvExporter.writeCsvPartitioned(
+     *         Path.of("sales.csv.gz"), headers, days,
+     *         day -> Database.stream(sql, List.of(day.from, day.to)),
+     *         rowWriter, pool, true);
+     * }</pre>
+     *
+     * @param outputFile the path of the CSV file to write to
+     * @param headers    header row, or null/empty for none
+     * @param partitions the partitions, in output order
+     * @param query      opens the rows of one partition; the stream is closed by this method
+     * @param rowWriter  writes the fields of one value
+     * @param pool       runs the partition queries
+     * @param gzip       whether to gzip the file
+     * @param <P>        the partition type
+     * @param <T>        the type of value exported
+     * @return the number of data rows written
+     * @throws IOException if an I/O error occurs or a partition's rows cannot
+     *                     be read, in which case the file is incomplete
+     */
+    public static <P, T> long writeCsvPartitioned(Path outputFile,
+                                                  List<String> headers,
+                                                  List<P> partitions,
+                                                  Function<P, Stream<T>> query,
+                                                  RowWriter<T> rowWriter,
+                                                  ForkJoinPool pool,
+                                                  boolean gzip) throws IOException {
+
+        int window = Math.max(2, pool.getParallelism() * 2);
+        Deque<ForkJoinTask<Chunk>> inFlight = new ArrayDeque<>();
+        Iterator<P> next = partitions.iterator();
+        long rows = 0;
+
+        try (OutputStream out = openOutput(outputFile, gzip)) {
+
+            if (headers != null && !headers.isEmpty()) {
+                Chunk header = new Chunk();
+                try (CsvWriter csv = header.writer()) {
+                    csv.writeRow(headers);
+                }
+                header.bytes.writeTo(out);
+            }
+
+            while (next.hasNext() || !inFlight.isEmpty()) {
+                while (next.hasNext() && inFlight.size() < window) {
+                    P partition = next.next();
+                    inFlight.add(submit(pool, () -> renderChunk(query.apply(partition), rowWriter)));
+                }
+
+                Chunk chunk = await(inFlight.removeFirst());
+                chunk.bytes.writeTo(out);
+                rows += chunk.rows;
+            }
+        } finally {
+            for (ForkJoinTask<Chunk> task : inFlight) {
+                task.cancel(true);
+            }
+        }
+        return rows;
+    }
+
+    /**
+     * Writes each partition to its own CSV file, in parallel. Every file
+     * gets the header row.
      *
-     * @param value the raw field value
-     * @return CSV-safe representation of the field
+     * @param headers    header row, or null/empty for none
+     * @param partitions the partitions to export
+     * @param fileFor    the output file of a partition
+     * @param query      opens the rows of one partition; the stream is closed by this method
+     * @param rowWriter  writes the fields of one value
+     * @param pool       runs the partition exports
+     * @param gzip       whether to gzip the files
+     * @param <P>        the partition type
+     * @param <T>        the type of value exported
+     * @return the number of data rows written across all files
+     * @throws IOException if an I/O error occurs or a partition's rows cannot be read
      */
-    private static String escapeCsvField(String value) {
-        if (value == null) {
-            return "";
+    public static <P, T> long writeCsvPerPartition(List<String> headers,
+                                                   List<P> partitions,
+                                                   Function<P, Path> fileFor,
+                                                   Function<P, Stream<T>> query,
+                                                   RowWriter<T> rowWriter,
+                                                   ForkJoinPool pool,
+                                                   boolean gzip) throws IOException {
+
+        List<ForkJoinTask<Long>> tasks = new ArrayList<>(partitions.size());
+        for (P partition : partitions) {
+            tasks.add(submit(pool, () -> writeCsv(
+                    fileFor.apply(partition), gzip, headers, query.apply(partition), rowWriter)));
         }
 
-        boolean mustQuote = value.contains(",")
-                || value.contains("\"")
-                || value.contains("\n")
-                || value.contains("\r");
+        long rows = 0;
+        try {
+            for (ForkJoinTask<Long> task : tasks) {
+                rows += await(task);
+            }
+        } finally {
+            for (ForkJoinTask<Long> task : tasks) {
+                task.cancel(true);
+            }
+        }
+        return rows;
+    }
+
+    /** Writes the header and rows to {@code outputFile} as UTF-8 and closes {@code rows}. */
+    private static <T> long writeCsv(Path outputFile,
+                                     boolean gzip,
+                                     List<String> headers,
+                                     Stream<T> rows,
+                                     RowWriter<T> rowWriter) throws IOException {
+
+        try (Stream<T> source = rows;
+             CsvWriter csv = new CsvWriter(new OutputStreamWriter(
+                     openOutput(outputFile, gzip), StandardCharsets.UTF_8))) {
+
+            if (headers != null && !headers.isEmpty()) {
+                csv.writeRow(headers);
+            }
+            long headerRows = csv.getRowCount();
+
+            writeRows(source, rowWriter, csv);
+            return csv.getRowCount() - headerRows;
+        }
+    }
+
+    /** Formats one partition into an in-memory chunk of UTF-8 bytes. */
+    private static <T> Chunk renderChunk(Stream<T> rows, RowWriter<T> rowWriter) throws IOException {
+        Chunk chunk = new Chunk();
+        try (Stream<T> source = rows; CsvWriter csv = chunk.writer()) {
+            writeRows(source, rowWriter, csv);
+            chunk.rows = csv.getRowCount();
+        }
+        return chunk;
+    }
+
+    /**
+     * Writes every value of {@code source} as a row. A database read that
+     * fails part-way is rethrown as an {@code IOException}, so the export
+     * fails instead of ending early with a truncated file.
+     */
+    private static <T> void writeRows(Stream<T> source, RowWriter<T> rowWriter, CsvWriter csv) throws IOException {
+        try {
+            Iterator<T> it = source.iterator();
+            while (it.hasNext()) {
+                rowWriter.write(it.next(), csv);
+                csv.endRow();
+            }
+        } catch (UncheckedSQLException e) {
+            throw new IOException("Reading the exported rows failed", e.getCause());
+        }
+    }
+
+    private static OutputStream openOutput(Path file, boolean gzip) throws IOException {
+        OutputStream out = Files.newOutputStream(file);
+        if (!gzip) {
+            return out;
+        }
+        try {
+            return new GZIPOutputStream(out, GZIP_BUFFER_SIZE);
+        } catch (IOException e) {
+            out.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Runs a partition task on {@code pool}. The pool would wrap a checked
+     * exception in a plain {@code RuntimeException}, so an
+     * {@code IOException} is passed on as an {@code UncheckedIOException}
+     * that {@link #await} can unwrap.
+     */
+    private static <R> ForkJoinTask<R> submit(ForkJoinPool pool, Callable<R> task) {
+        return pool.submit(() -> {
+            try {
+                return task.call();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+    }
+
+    /** Waits for a partition task and rethrows its failure as an {@code IOException}. */
+    private static <R> R await(ForkJoinTask<R> task) throws IOException {
+        try {
+            return task.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Export interrupted");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof UncheckedIOException) {
+                throw ((UncheckedIOException) cause).getCause();
+            }
+            if (cause instanceof UncheckedSQLException) {
+                throw new IOException("Opening the partition's rows failed", cause.getCause());
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new IOException("Partition export failed", cause);
+        }
+    }
+
+    /** The CSV text of one partition, encoded as UTF-8. */
+    private static final class Chunk {
 
-        // Escape double quotes by doubling them
-        String escaped = value.replace("\"", "\"\"");
+        private final ByteArrayOutputStream bytes = new ByteArrayOutputStream(CHUNK_INITIAL_SIZE);
+        private long rows;
 
-        if (mustQuote) {
-            return "\"" + escaped + "\"";
-        } else {
-            return escaped;
+        CsvWriter writer() {
+            return new CsvWriter(new OutputStreamWriter(bytes, StandardCharsets.UTF_8), CHUNK_BUFFER_SIZE);
         }
     }
 }
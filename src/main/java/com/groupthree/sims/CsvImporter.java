@@ -0,0 +1,483 @@
+package com.groupthree.sims;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.function.Function;
+
+/**
+ * Utility class for importing large CSV files.
+ *
+ * This implementation:
+ *  - Reads the file once, cutting it into chunks of whole records; quoted
+ *    fields may contain commas, doubled quotes and line breaks (RFC 4180).
+ *  - Parses and validates chunks in parallel on a fork-join pool.
+ *  - Hands the valid rows of each chunk, in file order, to a
+ *    {@link BatchWriter}, typically one batched database write per chunk.
+ *  - Reports every rejected row with its line number instead of stopping
+ *    at the first bad row.
+ */
+public class CsvImporter {
+
+    /** Characters read from the file at a time. */
+    private static final int READ_BUFFER_SIZE = 64 * 1024;
+
+    /** Errors kept in a {@link Result}; further errors are only counted. */
+    private static final int MAX_REPORTED_ERRORS = 1000;
+
+    /**
+     * Turns the fields of one record into a value.
+     *
+     * @param <T> the type of value produced
+     */
+    @FunctionalInterface
+    public interface RecordParser<T> {
+
+        /**
+         * @param fields the fields of the record, one per header column
+         * @return the parsed value
+         * @throws IllegalArgumentException if the record is invalid; the
+         *         message is reported as the row's error
+         */
+        T parse(String[] fields);
+    }
+
+    /**
+     * Writes the valid rows of one chunk.
+     *
+     * @param <T> the type of value written
+     */
+    @FunctionalInterface
+    public interface BatchWriter<T> {
+
+        /**
+         * @param rows   the parsed rows, in file order
+         * @param lines  the line number of each row
+         * @param errors receives an error for every row that could not be written
+         * @return the number of rows written
+         */
+        int write(List<T> rows, List<Integer> lines, List<RowError> errors);
+    }
+
+    /**
+     * Imports a CSV file whose first record is a header row.
+     *
+     * <p>{@code parserForHeader} receives the header fields and returns the
+     * parser for the data rows; it should throw
+     * {@link IllegalArgumentException} if a required column is missing,
+     * which fails the import with a single error on line 1. Data records
+     * with a different number of fields than the header, and records the
+     * parser rejects, are reported and skipped. Blank lines are ignored.</p>
+     *
+     * <p>At most twice the pool's parallelism chunks are read ahead, so
+     * memory use depends on the chunk size, not the file size. The writer
+     * always runs on the calling thread.</p>
+     *
+     * <p><b>Example Usage:</b></p>
+     * <pre>{@code
+     * CsvImporter.Result result = CsvImporter.importCsv(
+     *         Path.of("catalog.csv"),
+     *         header -> fields -> new Item(Integer.parseInt(fields[0]), fields[1], Double.parseDouble(fields[2])),
+     *         (items, lines, errors) -> saveItems(items),
+     *         1000, ForkJoinPool.commonPool());
+     * System.out.println(result);
+     * }</pre>
+     *
+     * @param file            the CSV file, in UTF-8
+     * @param parserForHeader builds the record parser from the header fields
+     * @param writer          writes each chunk of valid rows
+     * @param chunkRecords    records per chunk
+     * @param pool            runs the chunk parsing
+     * @param <T>             the type of value imported
+     * @return counts and per-row errors
+     * @throws IOException if the file cannot be read
+     */
+    public static <T> Result importCsv(Path file,
+                                       Function<String[], RecordParser<T>> parserForHeader,
+                                       BatchWriter<T> writer,
+                                       int chunkRecords,
+                                       ForkJoinPool pool) throws IOException {
+
+        if (chunkRecords < 1) {
+            throw new IllegalArgumentException("Chunk size must be at least 1.");
+        }
+
+        Result result = new Result();
+        int window = Math.max(2, pool.getParallelism() * 2);
+        Deque<ForkJoinTask<ParsedChunk<T>>> inFlight = new ArrayDeque<>();
+
+        try (Reader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            RecordSplitter splitter = new RecordSplitter(reader);
+
+            Chunk headerChunk = splitter.next(1);
+            if (headerChunk == null) {
+                result.addError(new RowError(1, "The file is empty."));
+                return result.finish();
+            }
+
+            RecordParser<T> parser;
+            int columns;
+            try {
+                String[] header = parseRecords(headerChunk).get(0).fields;
+                header[0] = stripBom(header[0]);
+                for (int i = 0; i < header.length; i++) {
+                    header[i] = header[i].trim();
+                }
+                columns = header.length;
+                parser = parserForHeader.apply(header);
+            } catch (IllegalArgumentException e) {
+                result.addError(new RowError(headerChunk.firstLine, e.getMessage()));
+                return result.finish();
+            }
+
+            Chunk chunk = splitter.next(chunkRecords);
+            while (chunk != null || !inFlight.isEmpty()) {
+                while (chunk != null && inFlight.size() < window) {
+                    Chunk next = chunk;
+                    inFlight.add(pool.submit(() -> parseChunk(next, parser, columns)));
+                    chunk = splitter.next(chunkRecords);
+                }
+
+                ParsedChunk<T> parsed = await(inFlight.removeFirst());
+                result.rowsRead += parsed.records;
+                parsed.errors.forEach(result::addError);
+
+                if (!parsed.rows.isEmpty()) {
+                    List<RowError> writeErrors = new ArrayList<>();
+                    result.rowsImported += writer.write(parsed.rows, parsed.lines, writeErrors);
+                    writeErrors.forEach(result::addError);
+                }
+            }
+        } finally {
+            for (ForkJoinTask<ParsedChunk<T>> task : inFlight) {
+                task.cancel(true);
+            }
+        }
+
+        return result.finish();
+    }
+
+    /** Parses and validates one chunk; runs on the pool. */
+    private static <T> ParsedChunk<T> parseChunk(Chunk chunk, RecordParser<T> parser, int columns) {
+        ParsedChunk<T> parsed = new ParsedChunk<>();
+
+        for (Record record : parseRecords(chunk)) {
+            if (record.fields.length == 1 && record.fields[0].isEmpty()) {
+                continue; // blank line
+            }
+
+            parsed.records++;
+            if (record.fields.length != columns) {
+                parsed.errors.add(new RowError(record.line,
+                        "Expected " + columns + " fields but found " + record.fields.length + "."));
+                continue;
+            }
+
+            try {
+                parsed.rows.add(parser.parse(record.fields));
+                parsed.lines.add(record.line);
+            } catch (IllegalArgumentException e) {
+                parsed.errors.add(new RowError(record.line, e.getMessage()));
+            }
+        }
+        return parsed;
+    }
+
+    /**
+     * Splits the text of a chunk into records and fields, unquoting quoted
+     * fields. A record ends at an unquoted LF or CRLF.
+     */
+    private static List<Record> parseRecords(Chunk chunk) {
+        String text = chunk.text;
+        int len = text.length();
+        List<Record> records = new ArrayList<>();
+        List<String> fields = new ArrayList<>();
+        StringBuilder field = new StringBuilder();
+
+        int line = chunk.firstLine;
+        int recordLine = line;
+        boolean inQuotes = false;
+        boolean fieldStart = true;
+        int i = 0;
+
+        while (i < len) {
+            char c = text.charAt(i);
+
+            if (inQuotes) {
+                if (c == '"') {
+                    if (i + 1 < len && text.charAt(i + 1) == '"') {
+                        field.append('"');
+                        i += 2;
+                        continue;
+                    }
+                    inQuotes = false;
+                } else {
+                    if (c == '\n') {
+                        line++;
+                    }
+                    field.append(c);
+                }
+                i++;
+                continue;
+            }
+
+            if (c == '"' && fieldStart) {
+                inQuotes = true;
+                fieldStart = false;
+            } else if (c == ',') {
+                fields.add(field.toString());
+                field.setLength(0);
+                fieldStart = true;
+            } else if (c == '\n' || (c == '\r' && i + 1 < len && text.charAt(i + 1) == '\n')) {
+                fields.add(field.toString());
+                field.setLength(0);
+                records.add(new Record(recordLine, fields.toArray(new String[0])));
+                fields.clear();
+                fieldStart = true;
+
+                i += c == '\r' ? 2 : 1;
+                line++;
+                recordLine = line;
+                continue;
+            } else {
+                field.append(c);
+                fieldStart = false;
+            }
+            i++;
+        }
+
+        // Last record of the file without a line break
+        if (!fieldStart || !fields.isEmpty()) {
+            fields.add(field.toString());
+            records.add(new Record(recordLine, fields.toArray(new String[0])));
+        }
+        return records;
+    }
+
+    private static String stripBom(String value) {
+        return !value.isEmpty() && value.charAt(0) == '\uFEFF' ? value.substring(1) : value;
+    }
+
+    /** Waits for a parse task and rethrows its failure. */
+    private static <R> R await(ForkJoinTask<R> task) throws IOException {
+        try {
+            return task.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Import interrupted");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IOException("Chunk import failed", cause);
+        }
+    }
+
+    /**
+     * Reads the file and cuts it into chunks of whole records. It tracks
+     * quoting by the same rules as the parser but looks at nothing else, so
+     * it stays cheap enough to keep the parsing threads busy.
+     */
+    private static final class RecordSplitter {
+
+        private final Reader reader;
+        private final char[] buffer = new char[READ_BUFFER_SIZE];
+        private int pos;
+        private int limit;
+        private int nextLine = 1;
+
+        private boolean inQuotes;
+        /** Inside quotes, the previous character was a quote: either a closing or an escaped one. */
+        private boolean quoteSeen;
+        private boolean fieldStart = true;
+
+        RecordSplitter(Reader reader) {
+            this.reader = reader;
+        }
+
+        /** @return the next chunk of up to {@code records} records, or {@code null} at end of file */
+        Chunk next(int records) throws IOException {
+            StringBuilder text = new StringBuilder();
+            int firstLine = nextLine;
+            int found = 0;
+
+            while (found < records) {
+                if (pos == limit) {
+                    limit = reader.read(buffer, 0, buffer.length);
+                    pos = 0;
+                    if (limit <= 0) {
+                        limit = 0;
+                        break;
+                    }
+                }
+
+                int start = pos;
+                while (pos < limit && found < records) {
+                    if (scan(buffer[pos++])) {
+                        found++;
+                    }
+                }
+                text.append(buffer, start, pos - start);
+            }
+
+            return text.length() == 0 ? null : new Chunk(text.toString(), firstLine);
+        }
+
+        /** @return {@code true} if {@code c} ends a record */
+        private boolean scan(char c) {
+            if (inQuotes) {
+                if (quoteSeen) {
+                    quoteSeen = false;
+                    if (c == '"') {
+                        return false;
+                    }
+                    inQuotes = false;
+                } else {
+                    if (c == '"') {
+                        quoteSeen = true;
+                    } else if (c == '\n') {
+                        nextLine++;
+                    }
+                    return false;
+                }
+            }
+
+            if (c == '"' && fieldStart) {
+                inQuotes = true;
+                fieldStart = false;
+            } else if (c == ',') {
+                fieldStart = true;
+            } else if (c == '\n') {
+                nextLine++;
+                fieldStart = true;
+                return true;
+            } else if (c != '\r') {
+                fieldStart = false;
+            }
+            return false;
+        }
+    }
+
+    /** Raw text of whole records, starting at {@code firstLine}. */
+    private static final class Chunk {
+
+        private final String text;
+        private final int firstLine;
+
+        Chunk(String text, int firstLine) {
+            this.text = text;
+            this.firstLine = firstLine;
+        }
+    }
+
+    private static final class Record {
+
+        private final int line;
+        private final String[] fields;
+
+        Record(int line, String[] fields) {
+            this.line = line;
+            this.fields = fields;
+        }
+    }
+
+    private static final class ParsedChunk<T> {
+
+        private final List<T> rows = new ArrayList<>();
+        private final List<Integer> lines = new ArrayList<>();
+        private final List<RowError> errors = new ArrayList<>();
+        private int records;
+    }
+
+    /**
+     * A row that was not imported.
+     */
+    public static final class RowError {
+
+        private final int line;
+        private final String message;
+
+        public RowError(int line, String message) {
+            this.line = line;
+            this.message = message;
+        }
+
+        /** @return the line of the file the row starts on, counting from 1 */
+        public int getLine() {
+            return line;
+        }
+
+        public String getMessage() {
+            return message;
+        }
+
+        @Override
+        public String toString() {
+            return "Line " + line + ": " + message;
+        }
+    }
+
+    /**
+     * Outcome of an import.
+     */
+    public static final class Result {
+
+        private long rowsRead;
+        private long rowsImported;
+        private long errorCount;
+        private List<RowError> errors = new ArrayList<>();
+
+        private void addError(RowError error) {
+            errorCount++;
+            if (errors.size() < MAX_REPORTED_ERRORS) {
+                errors.add(error);
+            }
+        }
+
+        private Result finish() {
+            errors.sort((a, b) -> Integer.compare(a.line, b.line));
+            errors = Collections.unmodifiableList(errors);
+            return this;
+        }
+
+        /** @return data rows read, excluding the header and blank lines */
+        public long getRowsRead() {
+            return rowsRead;
+        }
+
+        /** @return rows written */
+        public long getRowsImported() {
+            return rowsImported;
+        }
+
+        /** @return rows rejected, plus a header error if the import could not start */
+        public long getErrorCount() {
+            return errorCount;
+        }
+
+        /** @return the first 1000 errors, by line */
+        public List<RowError> getErrors() {
+            return errors;
+        }
+
+        @Override
+        public String toString() {
+            return rowsImported + " of " + rowsRead + " rows imported, " + errorCount + " errors";
+        }
+    }
+}
@@ -0,0 +1,397 @@
+package com.groupthree.sims;
+
+import java.io.Closeable;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Locale;
+
+/**
+ * Writes CSV rows field by field through one reusable character buffer.
+ *
+ * <p>Fields are escaped straight into the buffer in a single pass, and
+ * numbers are formatted there digit by digit, so writing a row allocates
+ * nothing. The buffer is handed to the underlying {@link Writer} only when
+ * it is full, so memory use stays the size of the buffer no matter how
+ * many rows are written.</p>
+ *
+ * <p>Escaping follows RFC 4180: a field containing a comma, double quote,
+ * CR or LF is wrapped in double quotes, and quotes inside it are
+ * doubled. Rows end with {@code \n}.</p>
+ *
+ * <p><b>Example Usage:</b></p>
+ * <pre>{@code
+ * try (CsvWriter csv = new CsvWriter(writer, 64 * 1024)) {
+ *     csv.writeRow(List.of("item", "qty"));
+ *     csv.writeField("Smith, John");
+ *     csv.writeField(3);
+ *     csv.endRow();
+ * }
+ * }</pre>
+ */
+public class CsvWriter implements Closeable, Flushable
+{
+    /** Default buffer size in characters. */
+    public static final int DEFAULT_BUFFER_SIZE = 64 * 1024;
+
+    private static final long[] POW10 = {
+            1L, 10L, 100L, 1_000L, 10_000L, 100_000L, 1_000_000L, 10_000_000L, 100_000_000L, 1_000_000_000L
+    };
+
+    /**
+     * Scaled values below this are held to well under a thousandth of the
+     * last written digit, so rounding the exact binary value gives the same
+     * digits as {@link String#format}, which rounds the shortest decimal form.
+     */
+    private static final double MAX_FAST_SCALED = 0x1p42;
+
+    private final Writer out;
+    private final char[] buffer;
+    private int pos;
+
+    /** {@code true} until the first field of the current row is written. */
+    private boolean rowStart = true;
+
+    private long rows;
+
+    public CsvWriter(Writer out)
+    {
+        this(out, DEFAULT_BUFFER_SIZE);
+    }
+
+    /**
+     * @param out        where the CSV text goes; closed by {@link #close()}
+     * @param bufferSize size of the reusable buffer, in characters
+     */
+    public CsvWriter(Writer out, int bufferSize)
+    {
+        if (bufferSize < 32)
+        {
+            throw new IllegalArgumentException("Buffer size too small: " + bufferSize);
+        }
+        this.out = out;
+        this.buffer = new char[bufferSize];
+    }
+
+    /* ===========================================================
+       FIELDS
+       =========================================================== */
+
+    /**
+     * Writes one text field, quoting and escaping it if needed.
+     * {@code null} is written as an empty field.
+     *
+     * <p>The value is inspected and copied into the buffer in a single
+     * pass. Characters are copied as-is until the first one that needs
+     * quoting; only then is the already-copied prefix shifted right by one
+     * to make room for the opening quote. No memory is allocated either
+     * way. Values too long to fit in the buffer twice over are scanned
+     * first and then copied.</p>
+     */
+    public void writeField(CharSequence value) throws IOException
+    {
+        separator();
+        if (value == null)
+        {
+            return;
+        }
+
+        int len = value.length();
+        if (len == 0)
+        {
+            return;
+        }
+
+        // Worst case every character is a quote and is doubled, plus the enclosing quotes
+        int worst = 2 * len + 2;
+        if (worst > buffer.length)
+        {
+            writeLongField(value);
+            return;
+        }
+        if (worst > buffer.length - pos)
+        {
+            drain();
+        }
+
+        char[] buf = buffer;
+        int p = pos;
+        int start = p;
+        boolean quoted = false;
+
+        for (int i = 0; i < len; i++)
+        {
+            char c = value.charAt(i);
+            if (c == '"' || c == ',' || c == '\n' || c == '\r')
+            {
+                if (!quoted)
+                {
+                    System.arraycopy(buf, start, buf, start + 1, p - start);
+                    buf[start] = '"';
+                    p++;
+                    quoted = true;
+                }
+                if (c == '"')
+                {
+                    buf[p++] = '"';
+                }
+            }
+            buf[p++] = c;
+        }
+
+        if (quoted)
+        {
+            buf[p++] = '"';
+        }
+        pos = p;
+    }
+
+    /**
+     * Writes a field that may not fit in the buffer: one pass to decide on
+     * quoting, one to copy.
+     */
+    private void writeLongField(CharSequence value) throws IOException
+    {
+        int len = value.length();
+        boolean quoted = false;
+        for (int i = 0; i < len && !quoted; i++)
+        {
+            char c = value.charAt(i);
+            quoted = c == '"' || c == ',' || c == '\n' || c == '\r';
+        }
+
+        if (quoted)
+        {
+            put('"');
+        }
+        for (int i = 0; i < len; i++)
+        {
+            char c = value.charAt(i);
+            if (c == '"')
+            {
+                put('"');
+            }
+            put(c);
+        }
+        if (quoted)
+        {
+            put('"');
+        }
+    }
+
+    /** Writes one integer field, formatting its digits directly into the buffer. */
+    public void writeField(long value) throws IOException
+    {
+        separator();
+        writeDigits(value);
+    }
+
+    /**
+     * Writes one decimal field using {@link Double#toString(double)}.
+     * Prefer {@link #writeField(double, int)} for amounts; it does not
+     * allocate.
+     */
+    public void writeField(double value) throws IOException
+    {
+        separator();
+        append(Double.toString(value));
+    }
+
+    /**
+     * Writes one decimal field with a fixed number of decimal places, e.g.
+     * {@code writeField(2.5, 2)} writes {@code 2.50}. The output is the same
+     * as {@code String.format(Locale.ROOT, "%.2f", value)}: the decimal
+     * value of the double is rounded half away from zero, so {@code 2.345}
+     * gives {@code 2.35} and {@code -2.345} gives {@code -2.35}, even though
+     * neither is exact in binary. The digits are formatted directly into
+     * the buffer. NaN, infinity and values of more than about 4e12 units
+     * of the last decimal place go through {@code String.format} itself.
+     *
+     * @param value the value to write
+     * @param scale decimal places, from 0 to 9
+     */
+    public void writeField(double value, int scale) throws IOException
+    {
+        if (scale < 0 || scale >= POW10.length)
+        {
+            throw new IllegalArgumentException("Scale must be between 0 and " + (POW10.length - 1));
+        }
+
+        long factor = POW10[scale];
+        double magnitude = Math.abs(value * factor);
+        if (!(magnitude < MAX_FAST_SCALED))
+        {
+            separator();
+            append(String.format(Locale.ROOT, "%." + scale + "f", value));
+            return;
+        }
+
+        separator();
+
+        // Compare with the midpoint in unscaled form, so the rounding error
+        // of value * factor cannot move a value across it
+        long units = (long) magnitude;
+        if (Math.abs(value) >= (units + 0.5) / factor)
+        {
+            units++;
+        }
+
+        if (value < 0 || Double.doubleToRawLongBits(value) == Long.MIN_VALUE)
+        {
+            put('-');
+        }
+
+        writeDigits(units / factor);
+        if (scale > 0)
+        {
+            ensureRoom(scale + 1);
+            buffer[pos++] = '.';
+
+            long fraction = units % factor;
+            for (int i = scale - 1; i >= 0; i--)
+            {
+                buffer[pos + i] = (char) ('0' + fraction % 10);
+                fraction /= 10;
+            }
+            pos += scale;
+        }
+    }
+
+    /** Writes an empty field. */
+    public void writeEmpty() throws IOException
+    {
+        separator();
+    }
+
+    /** Ends the current row. */
+    public void endRow() throws IOException
+    {
+        put('\n');
+        rowStart = true;
+        rows++;
+    }
+
+    /** Writes every value as one text field and ends the row, e.g. for a header. */
+    public void writeRow(Iterable<? extends CharSequence> values) throws IOException
+    {
+        for (CharSequence value : values)
+        {
+            writeField(value);
+        }
+        endRow();
+    }
+
+    /** @return rows written so far */
+    public long getRowCount()
+    {
+        return rows;
+    }
+
+    /* ===========================================================
+       BUFFER
+       =========================================================== */
+
+    /** Formats {@code value} in decimal straight into the buffer. */
+    private void writeDigits(long value) throws IOException
+    {
+        if (value == Long.MIN_VALUE)
+        {
+            append("-9223372036854775808");
+            return;
+        }
+
+        ensureRoom(20);
+        if (value < 0)
+        {
+            buffer[pos++] = '-';
+            value = -value;
+        }
+
+        int digits = 1;
+        for (long v = value; v >= 10; v /= 10)
+        {
+            digits++;
+        }
+
+        for (int i = pos + digits - 1; i >= pos; i--)
+        {
+            buffer[i] = (char) ('0' + value % 10);
+            value /= 10;
+        }
+        pos += digits;
+    }
+
+    private void ensureRoom(int chars) throws IOException
+    {
+        if (buffer.length - pos < chars)
+        {
+            drain();
+        }
+    }
+
+    private void separator() throws IOException
+    {
+        if (rowStart)
+        {
+            rowStart = false;
+        }
+        else
+        {
+            put(',');
+        }
+    }
+
+    private void put(char c) throws IOException
+    {
+        if (pos == buffer.length)
+        {
+            drain();
+        }
+        buffer[pos++] = c;
+    }
+
+    private void append(String s) throws IOException
+    {
+        int len = s.length();
+        int from = 0;
+        while (from < len)
+        {
+            if (pos == buffer.length)
+            {
+                drain();
+            }
+            int n = Math.min(len - from, buffer.length - pos);
+            s.getChars(from, from + n, buffer, pos);
+            pos += n;
+            from += n;
+        }
+    }
+
+    private void drain() throws IOException
+    {
+        out.write(buffer, 0, pos);
+        pos = 0;
+    }
+
+    /** Writes buffered text to the underlying writer and flushes it. */
+    @Override
+    public void flush() throws IOException
+    {
+        drain();
+        out.flush();
+    }
+
+    /** Flushes and closes the underlying writer. */
+    @Override
+    public void close() throws IOException
+    {
+        try
+        {
+            drain();
+        }
+        finally
+        {
+            out.close();
+        }
+    }
+}
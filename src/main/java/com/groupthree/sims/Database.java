@@ -1,14 +1,49 @@
 package com.groupthree.sims;
 
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
 import java.util.*;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 import java.sql.*;
 
 public class Database {
 
-    private static final String URL = "jdbc:mysql://localhost:3306/sims?useSSL=false&serverTimezone=UTC";
+    private static final String URL = "jdbc:mysql://localhost:3306/sims?useSSL=false&serverTimezone=UTC"
+            + "&useServerPrepStmts=true&rewriteBatchedStatements=true&useCursorFetch=true"
+            + "&useLocalSessionState=true";
     private static final String USER = "root";
     private static final String PASSWORD = "Fifa201!";
 
+    // Connection pool settings
+    private static final int POOL_MIN_SIZE = 2;
+    private static final int POOL_MAX_SIZE = 10;
+    private static final long POOL_MAX_IDLE_MILLIS = 5 * 60 * 1000;
+    private static final long POOL_BORROW_TIMEOUT_MILLIS = 10 * 1000;
+    private static final long POOL_LEAK_THRESHOLD_MILLIS = 60 * 1000;
+    private static final int STATEMENT_CACHE_SIZE = 64;
+
+    // Number of generated INSERT/UPDATE statements remembered by SQL_TEXT
+    private static final int SQL_TEXT_CACHE_SIZE = 256;
+
+    // Rows sent per executeBatch() call by insertBatch / insertBatchWithPk
+    private static final int DEFAULT_BATCH_SIZE = 500;
+    private static volatile int batchSize = DEFAULT_BATCH_SIZE;
+
+    // Rows fetched from the server cursor at a time by stream()
+    private static final int STREAM_FETCH_SIZE = 1000;
+
+    // Deadlock / lock-timeout retry policy for inTransaction()
+    private static final int TX_MAX_RETRIES = 3;
+    private static final long TX_BACKOFF_BASE_MILLIS = 20;
+    private static final int MYSQL_ER_LOCK_DEADLOCK = 1213;
+    private static final int MYSQL_ER_LOCK_WAIT_TIMEOUT = 1205;
+
+    /** The transaction bound to the current thread, if any. */
+    private static final ThreadLocal<Transaction> CURRENT_TX = new ThreadLocal<>();
+
     static
     {
         try
@@ -23,9 +58,55 @@ public class Database {
         }
     }
 
+    private static final ConnectionPool POOL = new ConnectionPool(
+            URL, USER, PASSWORD,
+            POOL_MIN_SIZE, POOL_MAX_SIZE,
+            POOL_MAX_IDLE_MILLIS, POOL_BORROW_TIMEOUT_MILLIS, POOL_LEAK_THRESHOLD_MILLIS,
+            STATEMENT_CACHE_SIZE
+    );
+
+    /**
+     * Generated INSERT/UPDATE text keyed by statement kind, table, column list
+     * and WHERE clause, so hot paths do not rebuild the same SQL on every call.
+     */
+    private static final Map<List<Object>, String> SQL_TEXT = Collections.synchronizedMap(
+            new LinkedHashMap<>(64, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<List<Object>, String> eldest)
+                {
+                    return size() > SQL_TEXT_CACHE_SIZE;
+                }
+            });
+
+    /**
+     * Returns the connection of the transaction running on this thread, or
+     * borrows one from the shared pool. Closing the returned connection hands
+     * it back to the pool (or, inside a transaction, does nothing).
+     */
     private static Connection getConnection() throws SQLException
     {
-        return DriverManager.getConnection(URL, USER, PASSWORD);
+        Transaction tx = CURRENT_TX.get();
+        if (tx != null)
+        {
+            return tx.joined;
+        }
+        return POOL.borrow();
+    }
+
+    /**
+     * Returns the shared connection pool, mainly so that callers can read
+     * its statistics (including prepared statement cache hits and misses).
+     *
+     * <p><b>Example Usage:</b></p>
+     * <pre>{@code
+     * System.out.println("DB pool: " + Database.getPool().getStatsSummary());
+     * }</pre>
+     *
+     * @return the connection pool used by every {@code Database} method
+     */
+    public static ConnectionPool getPool()
+    {
+        return POOL;
     }
 
     /**
@@ -80,6 +161,7 @@ public class Database {
         {
             System.err.println("Error executing select query:");
             e.printStackTrace();
+            markFailed(e);
         }
 
         return results;
@@ -117,6 +199,7 @@ public class Database {
         } catch (SQLException e) {
             System.err.println("Error executing parametrized select:");
             e.printStackTrace();
+            markFailed(e);
         }
 
         return results;
@@ -150,6 +233,209 @@ public class Database {
         return select(sql);
     }
 
+    /**
+     * Executes a parameterized query and returns its rows as a lazily
+     * populated stream backed by an open server-side cursor.
+     *
+     * <p>Unlike {@link #select(String, List)}, the result is never loaded into
+     * memory as a whole: rows are fetched from the server
+     * {@value #STREAM_FETCH_SIZE} at a time as the stream is consumed, so
+     * memory use stays constant however many rows match. The stream holds a
+     * pooled connection until it is closed, so it <b>must</b> be closed,
+     * ideally with {@code try-with-resources}.</p>
+     *
+     * <p>If the query fails, or reading fails part-way through, an
+     * {@link UncheckedSQLException} is thrown, from this method or from the
+     * stream operation that was reading, so a failed read is never mistaken
+     * for the end of the results. The connection is released either way.</p>
+     *
+     * <p><b>Example Usage:</b></p>
+     * <pre>{@code
+     * try (Stream<Map<String, Object>> rows =
+     *          Database.stream("SELECT * FROM logs WHERE userID = ?", List.of(3))) {
+     *     rows.forEach(row -> System.out.println(row.get("details")));
+     * }
+     * }</pre>
+     *
+     * @param query  the SQL query, using {@code ?} placeholders
+     * @param params values bound to the placeholders in {@code query}
+     * @return a stream of result rows that must be closed after use
+     * @throws UncheckedSQLException if the query fails
+     */
+    public static Stream<Map<String, Object>> stream(String query, List<Object> params)
+    {
+        System.out.println("Streaming from the database...");
+
+        Connection conn = null;
+        PreparedStatement ps = null;
+        ResultSet rs = null;
+
+        try
+        {
+            conn = getConnection();
+            // Use the cursor-type overload so the statement is not shared through the statement cache
+            ps = conn.prepareStatement(query, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+            ps.setFetchSize(STREAM_FETCH_SIZE);
+
+            for (int i = 0; i < params.size(); i++)
+            {
+                ps.setObject(i + 1, params.get(i));
+            }
+
+            rs = ps.executeQuery();
+
+            RowCursor cursor = new RowCursor(conn, ps, rs);
+            return StreamSupport.stream(cursor, false).onClose(cursor::close);
+        }
+        catch (SQLException e)
+        {
+            System.err.println("Error executing streaming select:");
+            e.printStackTrace();
+            markFailed(e);
+            closeQuietly(rs, ps, conn);
+            throw new UncheckedSQLException("Streaming select failed", e);
+        }
+    }
+
+    /**
+     * Streams every record from the specified table.
+     *
+     * <p>This is the streaming counterpart of {@link #selectAll(String)}; see
+     * {@link #stream(String, List)} for details. The returned stream must be
+     * closed.</p>
+     *
+     * @param tableName the name of the table from which to retrieve records
+     * @return a stream of result rows that must be closed after use
+     * @throws UncheckedSQLException if the query fails
+     */
+    public static Stream<Map<String, Object>> streamAll(String tableName)
+    {
+        return stream("SELECT * FROM " + tableName, List.of());
+    }
+
+    /**
+     * Executes a single schema statement such as {@code CREATE TABLE} or
+     * {@code CREATE INDEX}.
+     *
+     * <p>The statement always runs on its own pooled connection. MySQL
+     * commits implicitly around DDL, so this must not be used for work that
+     * belongs to a transaction.</p>
+     *
+     * <p><b>Example Usage:</b></p>
+     * <pre>{@code
+     * Database.execute("CREATE TABLE IF NOT EXISTS notes (id INT PRIMARY KEY)");
+     * }</pre>
+     *
+     * @param sql the statement to execute
+     * @return {@code true} if the statement succeeded
+     */
+    public static boolean execute(String sql)
+    {
+        System.out.println("Executing schema statement...");
+
+        try (Connection conn = POOL.borrow();
+             Statement stmt = conn.createStatement()) {
+
+            stmt.execute(sql);
+            return true;
+        }
+        catch (SQLException e)
+        {
+            System.err.println("Error executing statement:");
+            e.printStackTrace();
+            return false;
+        }
+    }
+
+    /**
+     * Adds a column to the specified table unless it already exists.
+     *
+     * <p>Used to extend the schema of existing installations in place. Like
+     * {@link #execute(String)}, this must not be called inside a
+     * transaction.</p>
+     *
+     * <p><b>Example Usage:</b></p>
+     * <pre>{@code
+     * Database.ensureColumn("alerts", "occurrences", "INT NOT NULL DEFAULT 1");
+     * }</pre>
+     *
+     * @param tableName  the table to extend
+     * @param columnName the name of the column
+     * @param definition the column type and options, as in {@code ALTER TABLE ... ADD COLUMN}
+     * @return {@code true} if the column exists afterwards
+     */
+    public static boolean ensureColumn(String tableName, String columnName, String definition)
+    {
+        String lookup = "SELECT 1 FROM information_schema.columns"
+                + " WHERE table_schema = DATABASE() AND table_name = ? AND column_name = ? LIMIT 1";
+
+        if (existsInSchema(lookup, tableName, columnName))
+        {
+            return true;
+        }
+
+        System.out.println("Adding column " + columnName + " to " + tableName + "...");
+        return execute("ALTER TABLE " + tableName + " ADD COLUMN " + columnName + " " + definition);
+    }
+
+    /**
+     * Creates an index on the specified table unless an index with the same
+     * name already exists.
+     *
+     * <p>MySQL has no {@code CREATE INDEX IF NOT EXISTS}, so the index is
+     * looked up in {@code information_schema} first. Like
+     * {@link #execute(String)}, this must not be called inside a
+     * transaction.</p>
+     *
+     * <p><b>Example Usage:</b></p>
+     * <pre>{@code
+     * Database.ensureIndex("logs", "idx_logs_time_id", "time", "id");
+     * }</pre>
+     *
+     * @param tableName the table to index
+     * @param indexName the name of the index
+     * @param columns   the indexed columns, in order
+     * @return {@code true} if the index exists afterwards
+     */
+    public static boolean ensureIndex(String tableName, String indexName, String... columns)
+    {
+        String lookup = "SELECT 1 FROM information_schema.statistics"
+                + " WHERE table_schema = DATABASE() AND table_name = ? AND index_name = ? LIMIT 1";
+
+        if (existsInSchema(lookup, tableName, indexName))
+        {
+            return true;
+        }
+
+        System.out.println("Creating index " + indexName + " on " + tableName + "...");
+        return execute("CREATE INDEX " + indexName + " ON " + tableName
+                + " (" + String.join(", ", columns) + ")");
+    }
+
+    /**
+     * Runs an {@code information_schema} lookup taking a table name and an
+     * object name, and reports whether it found a row.
+     */
+    private static boolean existsInSchema(String lookup, String tableName, String name)
+    {
+        try (Connection conn = POOL.borrow();
+             PreparedStatement ps = conn.prepareStatement(lookup)) {
+
+            ps.setString(1, tableName);
+            ps.setString(2, name);
+            try (ResultSet rs = ps.executeQuery())
+            {
+                return rs.next();
+            }
+        }
+        catch (SQLException e)
+        {
+            System.err.println("Error looking up " + name + " on " + tableName + ":");
+            e.printStackTrace();
+            return false;
+        }
+    }
+
     /**
      * Inserts a new record into the specified table.
      *
@@ -186,35 +472,13 @@ public class Database {
 
         System.out.println("Inserting into the database...");
 
-        StringBuilder sql = new StringBuilder("INSERT INTO ");
-        sql.append(tableName).append(" (");
-
-        StringBuilder placeholders = new StringBuilder();
-        List<Object> params = new ArrayList<>();
-
-        // Build column list and placeholders
-        for (String column : values.keySet())
-        {
-            if (!params.isEmpty())
-            {
-                sql.append(", ");
-                placeholders.append(", ");
-            }
-
-            sql.append(column);
-            placeholders.append("?");
-            params.add(values.get(column));
-        }
-
-        sql.append(") VALUES (").append(placeholders).append(")");
+        List<String> columns = new ArrayList<>(values.keySet());
+        String sql = insertSql(tableName, columns);
 
         try (Connection conn = getConnection();
-             PreparedStatement ps = conn.prepareStatement(sql.toString())) {
+             PreparedStatement ps = conn.prepareStatement(sql)) {
 
-            for (int i = 0; i < params.size(); i++)
-            {
-                ps.setObject(i + 1, params.get(i));
-            }
+            bindValues(ps, values, columns, 1);
 
             int affected = ps.executeUpdate();
             System.out.println("Inserted successfully. Rows affected: " + affected);
@@ -223,6 +487,7 @@ public class Database {
         } catch (SQLException e) {
             System.err.println("Error executing insert:");
             e.printStackTrace();
+            markFailed(e);
             return 0;
         }
     }
@@ -249,37 +514,15 @@ public class Database {
 
         System.out.println("Inserting into the database (returning PK)...");
 
-        StringBuilder sql = new StringBuilder("INSERT INTO ");
-        sql.append(tableName).append(" (");
-
-        StringBuilder placeholders = new StringBuilder();
-        List<Object> params = new ArrayList<>();
-
-        // Build column list and placeholders
-        for (String column : values.keySet())
-        {
-            if (!params.isEmpty())
-            {
-                sql.append(", ");
-                placeholders.append(", ");
-            }
-
-            sql.append(column);
-            placeholders.append("?");
-            params.add(values.get(column));
-        }
-
-        sql.append(") VALUES (").append(placeholders).append(")");
+        List<String> columns = new ArrayList<>(values.keySet());
+        String sql = insertSql(tableName, columns);
 
         try (Connection conn = getConnection();
              PreparedStatement ps = conn.prepareStatement(
-                     sql.toString(),
+                     sql,
                      Statement.RETURN_GENERATED_KEYS)) {
 
-            for (int i = 0; i < params.size(); i++)
-            {
-                ps.setObject(i + 1, params.get(i));
-            }
+            bindValues(ps, values, columns, 1);
 
             int affected = ps.executeUpdate();
             if (affected == 0)
@@ -308,113 +551,412 @@ public class Database {
         {
             System.err.println("Error executing insertWithPk:");
             e.printStackTrace();
+            markFailed(e);
             return -1;
         }
     }
 
     /**
-     * Updates existing records in the specified table.
+     * Sets how many rows {@link #insertBatch(String, List)} and
+     * {@link #insertBatchWithPk(String, List)} send per round trip.
      *
-     * <p>The {@code values} map represents the columns to be updated and their
-     * new values. The {@code whereClause} defines which records should be
-     * modified (for example, {@code "id = 5"}).</p>
+     * @param size the number of rows per chunk; must be greater than 0
+     */
+    public static void setBatchSize(int size)
+    {
+        if (size <= 0)
+        {
+            throw new IllegalArgumentException("Batch size must be greater than 0.");
+        }
+        batchSize = size;
+    }
+
+    /** @return the number of rows sent per batch round trip */
+    public static int getBatchSize()
+    {
+        return batchSize;
+    }
+
+    /**
+     * Inserts many records into the specified table using JDBC batching.
      *
-     * <p>The method returns the number of rows modified during the update
-     * operation. A return value of {@code 1} generally indicates that one
-     * record was updated.</p>
+     * <p>The column list is taken from the first row, and every row must use
+     * exactly the same columns; a batch whose rows differ is rejected before
+     * anything is written, rather than silently dropping or nulling values. Rows
+     * are sent in chunks of {@link #getBatchSize()}, and the driver rewrites
+     * each chunk into a single multi-row {@code INSERT ... VALUES (...), (...)}
+     * statement, so a chunk costs one round trip.</p>
+     *
+     * <p>The returned array holds one entry per input row: the number of
+     * rows affected, {@link Statement#SUCCESS_NO_INFO} if the driver merged
+     * the row into a multi-row statement and could not report it
+     * individually, or {@link Statement#EXECUTE_FAILED} if the row was not
+     * written because of an error.</p>
      *
      * <p><b>Example Usage:</b></p>
      * <pre>{@code
-     * Map<String, Object> updates = new HashMap<>();
-     * updates.put("major", "Information Technology");
+     * List<Map<String, Object>> rows = new ArrayList<>();
+     * rows.add(Map.of("userID", 1, "details", "IMPORT: row 1", "time", now));
+     * rows.add(Map.of("userID", 1, "details", "IMPORT: row 2", "time", now));
      *
-     * String where = "id = 5";
+     * int[] counts = Database.insertBatch("logs", rows);
+     * }</pre>
      *
-     * int rowsUpdated = Database.update("students", updates, where);
+     * @param tableName the name of the table into which the records will be inserted
+     * @param rows      the records to insert, each a map of column names to values
+     * @return per-row insert results, in the same order as {@code rows}
+     * @throws IllegalArgumentException if the rows do not all have the same columns
+     */
+    public static int[] insertBatch(String tableName, List<Map<String, Object>> rows)
+    {
+        return executeInsertBatch(tableName, rows, false);
+    }
+
+    /**
+     * Inserts many records into the specified table using JDBC batching and
+     * returns the generated primary key of each one.
      *
-     * if (rowsUpdated > 0) {
-     *     System.out.println("Student record updated.");
-     * }
+     * <p>This is the batched counterpart of
+     * {@link #insertWithPk(String, Map)}; rows are written in the same way as
+     * {@link #insertBatch(String, List)}.</p>
+     *
+     * @param tableName the name of the table into which the records will be inserted
+     * @param rows      the records to insert, each a map of column names to values
+     * @return the generated key of each row in the same order as {@code rows},
+     *         or {@code -1} for rows that were not inserted
+     * @throws IllegalArgumentException if the rows do not all have the same columns
+     */
+    public static int[] insertBatchWithPk(String tableName, List<Map<String, Object>> rows)
+    {
+        return executeInsertBatch(tableName, rows, true);
+    }
+
+    /**
+     * Executes the same parameterized statement once for every parameter row
+     * using JDBC batching, and returns the update count of each execution.
+     *
+     * <p>This suits conditional or computed updates that
+     * {@link #update(String, Map, String, List)} cannot express, such as
+     * {@code UPDATE stock SET stockLevel = stockLevel - ? WHERE id = ?}.
+     * Rows are sent in chunks of {@link #getBatchSize()}.</p>
+     *
+     * <p><b>Example Usage:</b></p>
+     * <pre>{@code
+     * int[] counts = Database.executeBatch(
+     *         "UPDATE stock SET stockLevel = stockLevel + ? WHERE id = ?",
+     *         List.of(List.of(10, 1), List.of(5, 2)));
      * }</pre>
      *
-     * @param tableName the name of the table containing the records to update
-     * @param values a map of column names to their new values
-     * @param whereClause the condition used to select which records to update
-     * @return the number of records updated
+     * @param sql       the statement to execute, using {@code ?} placeholders
+     * @param paramRows one list of parameter values per execution
+     * @return the update count of each execution, in the same order as
+     *         {@code paramRows}; {@link Statement#EXECUTE_FAILED} for rows
+     *         that were not executed because of an error
      */
-    public static int update(String tableName, Map<String, Object> values, String whereClause)
+    public static int[] executeBatch(String sql, List<List<Object>> paramRows)
     {
-        if (values == null || values.isEmpty()) {
-            System.out.println("No values provided for update.");
-            return 0;
+        if (paramRows == null || paramRows.isEmpty())
+        {
+            return new int[0];
         }
 
-        System.out.println("Updating the database...");
+        System.out.println("Executing batch of " + paramRows.size() + " statements...");
 
-        StringBuilder sql = new StringBuilder("UPDATE ");
-        sql.append(tableName).append(" SET ");
+        int[] results = new int[paramRows.size()];
+        Arrays.fill(results, Statement.EXECUTE_FAILED);
+        int chunkSize = batchSize;
 
-        List<Object> params = new ArrayList<>();
-        boolean first = true;
+        try (Connection conn = getConnection();
+             PreparedStatement ps = conn.prepareStatement(sql)) {
 
-        for (String column : values.keySet()) {
-            if (!first) {
-                sql.append(", ");
+            for (int from = 0; from < paramRows.size(); from += chunkSize)
+            {
+                int to = Math.min(from + chunkSize, paramRows.size());
+
+                for (int i = from; i < to; i++)
+                {
+                    List<Object> params = paramRows.get(i);
+                    for (int p = 0; p < params.size(); p++)
+                    {
+                        ps.setObject(p + 1, params.get(p));
+                    }
+                    ps.addBatch();
+                }
+
+                int[] counts = ps.executeBatch();
+                System.arraycopy(counts, 0, results, from, Math.min(counts.length, to - from));
             }
-            sql.append(column).append(" = ?");
-            params.add(values.get(column));
-            first = false;
-        }
 
-        if (whereClause != null && !whereClause.trim().isEmpty()) {
-            sql.append(" WHERE ").append(whereClause);
+            System.out.println("Batch executed successfully.");
+        }
+        catch (SQLException e)
+        {
+            System.err.println("Error executing batch:");
+            e.printStackTrace();
+            markFailed(e);
         }
 
+        return results;
+    }
+
+    /**
+     * Executes one parameterized {@code INSERT}, {@code UPDATE} or
+     * {@code DELETE} and returns its update count.
+     *
+     * <p>Use this for a single conditional or computed statement, such as
+     * {@code UPDATE stock SET stockLevel = stockLevel + ? WHERE id = ?},
+     * rather than sending a batch of one through
+     * {@link #executeBatch(String, List)}.</p>
+     *
+     * <p><b>Example Usage:</b></p>
+     * <pre>{@code
+     * int affected = Database.executeUpdate(
+     *         "UPDATE alerts SET occurrences = occurrences + 1 WHERE id = ?", List.of(4));
+     * }</pre>
+     *
+     * @param sql    the statement to execute, using {@code ?} placeholders
+     * @param params values bound to the placeholders in {@code sql}
+     * @return the number of rows affected, or {@code -1} if the statement failed
+     */
+    public static int executeUpdate(String sql, List<Object> params)
+    {
+        System.out.println("Executing update...");
+
         try (Connection conn = getConnection();
-             PreparedStatement ps = conn.prepareStatement(sql.toString())) {
+             PreparedStatement ps = conn.prepareStatement(sql)) {
 
             for (int i = 0; i < params.size(); i++) {
                 ps.setObject(i + 1, params.get(i));
             }
 
             int affected = ps.executeUpdate();
-            System.out.println("Updated successfully. Rows affected: " + affected);
+            System.out.println("Update executed successfully. Rows affected: " + affected);
             return affected;
         } catch (SQLException e) {
-            System.err.println("Error executing update:");
+            System.err.println("Error executing update statement:");
             e.printStackTrace();
-            return 0;
+            markFailed(e);
+            return -1;
         }
     }
 
     /**
-     * Deletes records from the specified table using the provided condition.
-     *
-     * <p>The {@code whereClause} defines which records should be removed
-     * (for example, {@code "id = 5"}). If the {@code whereClause} is omitted
-     * or too broad, multiple records may be deleted depending on the
-     * underlying implementation and database state.</p>
+     * Inserts many rows, updating the existing row instead wherever a row
+     * with the same primary or unique key is already present.
      *
-     * <p>The method returns the number of rows removed from the database. A
-     * return value of {@code 1} generally indicates that one record was
-     * deleted.</p>
+     * <p>Runs {@code INSERT INTO table (columns) VALUES (...) AS new ON
+     * DUPLICATE KEY UPDATE c = new.c, ...} for {@code updateColumns} through
+     * {@link #executeBatch(String, List)}. The {@code new} row alias needs
+     * MySQL 8.0.19 or later; it replaces the deprecated {@code VALUES(c)}
+     * function. The driver rewrites each chunk of {@link #getBatchSize()}
+     * rows into one multi-row statement, so a chunk costs one round trip
+     * whether its rows are new or not. Columns not listed in
+     * {@code updateColumns} are only written for new rows.</p>
      *
      * <p><b>Example Usage:</b></p>
      * <pre>{@code
-     * String table = "students";
-     * String where = "id = 10";
-     *
-     * int rowsDeleted = Database.delete(table, where);
-     *
-     * if (rowsDeleted > 0) {
-     *     System.out.println("Record deleted successfully.");
-     * } else {
-     *     System.out.println("No records matched the delete criteria.");
-     * }
+     * int[] counts = Database.upsertBatch("Items",
+     *         List.of("id", "name", "price"),
+     *         List.of("name", "price"),
+     *         List.of(List.of(1, "500ml", 1.50), List.of(2, "1L", 2.75)));
      * }</pre>
      *
-     * @param tableName   the name of the table from which records will be deleted
-     * @param whereClause the condition used to select which records to delete
+     * @param tableName     the table to write to
+     * @param columns       the columns of each row, in the order of the row values
+     * @param updateColumns the columns overwritten when the row already exists
+     * @param rows          one list of values per row
+     * @return per-row results as for {@link #executeBatch(String, List)}
+     */
+    public static int[] upsertBatch(String tableName, List<String> columns, List<String> updateColumns,
+                                    List<List<Object>> rows)
+    {
+        return executeBatch(upsertSql(tableName, columns, updateColumns), rows);
+    }
+
+    private static int[] executeInsertBatch(String tableName, List<Map<String, Object>> rows, boolean returnKeys)
+    {
+        if (rows == null || rows.isEmpty() || rows.get(0).isEmpty())
+        {
+            System.out.println("No rows provided for batch insert.");
+            return new int[0];
+        }
+
+        Set<String> columnSet = rows.get(0).keySet();
+        for (int i = 1; i < rows.size(); i++)
+        {
+            if (!rows.get(i).keySet().equals(columnSet))
+            {
+                throw new IllegalArgumentException("Row " + i + " of the batch for " + tableName
+                        + " has columns " + rows.get(i).keySet() + " but row 0 has " + columnSet + ".");
+            }
+        }
+
+        System.out.println("Batch inserting " + rows.size() + " rows into " + tableName + "...");
+
+        int[] results = new int[rows.size()];
+        Arrays.fill(results, returnKeys ? -1 : Statement.EXECUTE_FAILED);
+
+        List<String> columns = new ArrayList<>(columnSet);
+        String sql = insertSql(tableName, columns);
+        int chunkSize = batchSize;
+
+        try (Connection conn = getConnection();
+             PreparedStatement ps = conn.prepareStatement(
+                     sql,
+                     returnKeys ? Statement.RETURN_GENERATED_KEYS : Statement.NO_GENERATED_KEYS)) {
+
+            for (int from = 0; from < rows.size(); from += chunkSize)
+            {
+                int to = Math.min(from + chunkSize, rows.size());
+
+                for (int i = from; i < to; i++)
+                {
+                    bindValues(ps, rows.get(i), columns, 1);
+                    ps.addBatch();
+                }
+
+                int[] counts = ps.executeBatch();
+
+                if (returnKeys)
+                {
+                    try (ResultSet rs = ps.getGeneratedKeys())
+                    {
+                        for (int i = from; i < to && rs.next(); i++)
+                        {
+                            results[i] = rs.getInt(1);
+                        }
+                    }
+                }
+                else
+                {
+                    System.arraycopy(counts, 0, results, from, Math.min(counts.length, to - from));
+                }
+            }
+
+            System.out.println("Batch insert completed. Rows: " + rows.size());
+        }
+        catch (SQLException e)
+        {
+            System.err.println("Error executing batch insert:");
+            e.printStackTrace();
+            markFailed(e);
+        }
+
+        return results;
+    }
+
+    /**
+     * Updates existing records in the specified table.
+     *
+     * <p>The {@code values} map represents the columns to be updated and their
+     * new values. The {@code whereClause} defines which records should be
+     * modified (for example, {@code "id = 5"}).</p>
+     *
+     * <p>The method returns the number of rows modified during the update
+     * operation. A return value of {@code 1} generally indicates that one
+     * record was updated.</p>
+     *
+     * <p><b>Example Usage:</b></p>
+     * <pre>{@code
+     * Map<String, Object> updates = new HashMap<>();
+     * updates.put("major", "Information Technology");
+     *
+     * String where = "id = 5";
+     *
+     * int rowsUpdated = Database.update("students", updates, where);
+     *
+     * if (rowsUpdated > 0) {
+     *     System.out.println("Student record updated.");
+     * }
+     * }</pre>
+     *
+     * @param tableName the name of the table containing the records to update
+     * @param values a map of column names to their new values
+     * @param whereClause the condition used to select which records to update
+     * @return the number of records updated
+     */
+    public static int update(String tableName, Map<String, Object> values, String whereClause)
+    {
+        return update(tableName, values, whereClause, List.of());
+    }
+
+    /**
+     * Updates existing records using a parameterized {@code WHERE} clause.
+     *
+     * <p>Prefer this overload on hot paths: because the SQL text does not
+     * change between calls, both the generated statement and its server-side
+     * prepare are reused from the cache.</p>
+     *
+     * <p><b>Example Usage:</b></p>
+     * <pre>{@code
+     * Database.update("stock", Map.of("stockLevel", 12), "id = ?", List.of(5));
+     * }</pre>
+     *
+     * @param tableName   the name of the table containing the records to update
+     * @param values      a map of column names to their new values
+     * @param whereClause the condition, using {@code ?} placeholders
+     * @param whereParams values bound to the placeholders in {@code whereClause}
+     * @return the number of records updated
+     */
+    public static int update(String tableName, Map<String, Object> values, String whereClause, List<Object> whereParams)
+    {
+        if (values == null || values.isEmpty()) {
+            System.out.println("No values provided for update.");
+            return 0;
+        }
+
+        System.out.println("Updating the database...");
+
+        List<String> columns = new ArrayList<>(values.keySet());
+        String sql = updateSql(tableName, columns, whereClause);
+
+        try (Connection conn = getConnection();
+             PreparedStatement ps = conn.prepareStatement(sql)) {
+
+            int next = bindValues(ps, values, columns, 1);
+            for (Object param : whereParams) {
+                ps.setObject(next++, param);
+            }
+
+            int affected = ps.executeUpdate();
+            System.out.println("Updated successfully. Rows affected: " + affected);
+            return affected;
+        } catch (SQLException e) {
+            System.err.println("Error executing update:");
+            e.printStackTrace();
+            markFailed(e);
+            return 0;
+        }
+    }
+
+    /**
+     * Deletes records from the specified table using the provided condition.
+     *
+     * <p>The {@code whereClause} defines which records should be removed
+     * (for example, {@code "id = 5"}). If the {@code whereClause} is omitted
+     * or too broad, multiple records may be deleted depending on the
+     * underlying implementation and database state.</p>
+     *
+     * <p>The method returns the number of rows removed from the database. A
+     * return value of {@code 1} generally indicates that one record was
+     * deleted.</p>
+     *
+     * <p><b>Example Usage:</b></p>
+     * <pre>{@code
+     * String table = "students";
+     * String where = "id = 10";
+     *
+     * int rowsDeleted = Database.delete(table, where);
+     *
+     * if (rowsDeleted > 0) {
+     *     System.out.println("Record deleted successfully.");
+     * } else {
+     *     System.out.println("No records matched the delete criteria.");
+     * }
+     * }</pre>
+     *
+     * @param tableName   the name of the table from which records will be deleted
+     * @param whereClause the condition used to select which records to delete
      * @return the number of records deleted
      */
     public static int delete(String tableName, String whereClause)
@@ -437,7 +979,609 @@ public class Database {
         } catch (SQLException e) {
             System.err.println("Error executing delete:");
             e.printStackTrace();
+            markFailed(e);
             return 0;
         }
     }
-}
\ No newline at end of file
+
+    /* ===========================================================
+       TRANSACTIONS
+       =========================================================== */
+
+    /**
+     * A unit of work run by {@link #inTransaction(TransactionWork)}.
+     *
+     * @param <T> the type of result produced by the work
+     */
+    @FunctionalInterface
+    public interface TransactionWork<T>
+    {
+        T execute() throws SQLException;
+    }
+
+    /**
+     * Runs {@code work} inside a single database transaction.
+     *
+     * <p>While the work runs, every {@code Database} method called on the same
+     * thread (directly or through {@link InventorySys}, {@link HistorySys},
+     * etc.) joins the transaction automatically: they all share one
+     * connection and nothing is committed until the work returns. The
+     * transaction is rolled back, and the exception rethrown, if:</p>
+     * <ul>
+     *   <li>the work throws an exception, or</li>
+     *   <li>any {@code Database} call inside it failed (those methods normally
+     *       only print the error, so the failure is remembered and rethrown
+     *       here).</li>
+     * </ul>
+     *
+     * <p>If the transaction fails because of a deadlock or lock-wait timeout,
+     * the whole work is retried up to {@value #TX_MAX_RETRIES} times with
+     * jittered exponential backoff. The work should therefore not have side
+     * effects outside the database that cannot safely be repeated.</p>
+     *
+     * <p>Calling {@code inTransaction} while a transaction is already active
+     * on the thread simply runs the work as part of the outer transaction.</p>
+     *
+     * <p><b>Example Usage:</b></p>
+     * <pre>{@code
+     * Database.inTransaction(() -> {
+     *     InventorySys.reduceStock("500ml", 2);
+     *     HistorySys.logSales(user, sale);
+     *     return null;
+     * });
+     * }</pre>
+     *
+     * @param work the work to run
+     * @param <T>  the type of result produced by the work
+     * @return the value returned by {@code work}
+     * @throws SQLException if the transaction could not be committed
+     */
+    public static <T> T inTransaction(TransactionWork<T> work) throws SQLException
+    {
+        return inTransaction(-1, work);
+    }
+
+    /**
+     * Runs {@code work} inside a single database transaction using the given
+     * isolation level. See {@link #inTransaction(TransactionWork)}.
+     *
+     * @param isolationLevel one of the {@code Connection.TRANSACTION_*}
+     *                       constants, or {@code -1} for the server default
+     * @param work           the work to run
+     * @param <T>            the type of result produced by the work
+     * @return the value returned by {@code work}
+     * @throws SQLException if the transaction could not be committed
+     */
+    public static <T> T inTransaction(int isolationLevel, TransactionWork<T> work) throws SQLException
+    {
+        if (CURRENT_TX.get() != null)
+        {
+            // Already inside a transaction: join it.
+            return work.execute();
+        }
+
+        for (int attempt = 1; ; attempt++)
+        {
+            try
+            {
+                return runTransaction(isolationLevel, work);
+            }
+            catch (SQLException e)
+            {
+                if (attempt > TX_MAX_RETRIES || !isRetryable(e))
+                {
+                    throw e;
+                }
+
+                long ceiling = TX_BACKOFF_BASE_MILLIS << attempt;
+                long delay = ceiling / 2 + ThreadLocalRandom.current().nextLong(ceiling / 2 + 1);
+                System.out.println("Transaction aborted by lock conflict, retrying in " + delay + " ms (attempt " + attempt + ").");
+
+                try
+                {
+                    Thread.sleep(delay);
+                }
+                catch (InterruptedException ie)
+                {
+                    Thread.currentThread().interrupt();
+                    throw e;
+                }
+            }
+        }
+    }
+
+    private static <T> T runTransaction(int isolationLevel, TransactionWork<T> work) throws SQLException
+    {
+        try (Connection conn = POOL.borrow())
+        {
+            int previousIsolation = conn.getTransactionIsolation();
+            if (isolationLevel >= 0 && isolationLevel != previousIsolation)
+            {
+                conn.setTransactionIsolation(isolationLevel);
+            }
+            conn.setAutoCommit(false);
+
+            Transaction tx = new Transaction(conn);
+            CURRENT_TX.set(tx);
+
+            try
+            {
+                T result = work.execute();
+
+                if (tx.failure != null)
+                {
+                    throw tx.failure;
+                }
+
+                if (tx.rollbackOnly)
+                {
+                    conn.rollback();
+                }
+                else
+                {
+                    conn.commit();
+                    tx.runAfterCommit();
+                }
+                return result;
+            }
+            catch (SQLException | RuntimeException e)
+            {
+                try
+                {
+                    conn.rollback();
+                }
+                catch (SQLException rollbackError)
+                {
+                    e.addSuppressed(rollbackError);
+                }
+                throw e;
+            }
+            finally
+            {
+                CURRENT_TX.remove();
+                conn.setAutoCommit(true);
+                if (conn.getTransactionIsolation() != previousIsolation)
+                {
+                    conn.setTransactionIsolation(previousIsolation);
+                }
+            }
+        }
+    }
+
+    /**
+     * @return {@code true} if a transaction is active on the current thread
+     */
+    public static boolean isInTransaction()
+    {
+        return CURRENT_TX.get() != null;
+    }
+
+    /**
+     * Marks the current transaction so that it is rolled back instead of
+     * committed when its work returns, without treating it as an error.
+     *
+     * @throws IllegalStateException if no transaction is active on this thread
+     */
+    public static void setRollbackOnly()
+    {
+        requireTransaction().rollbackOnly = true;
+    }
+
+    /**
+     * Runs {@code action} once the current transaction has committed, or
+     * immediately if no transaction is active. If the transaction rolls back,
+     * the action is discarded.
+     *
+     * <p>This is how in-memory caches are kept in step with the database:
+     * they are only updated with values that were actually committed.</p>
+     *
+     * @param action the action to run after a successful commit
+     */
+    public static void afterCommit(Runnable action)
+    {
+        Transaction tx = CURRENT_TX.get();
+        if (tx == null)
+        {
+            action.run();
+        }
+        else
+        {
+            tx.afterCommit.add(action);
+        }
+    }
+
+    /**
+     * Creates a savepoint in the current transaction.
+     *
+     * <p><b>Example Usage:</b></p>
+     * <pre>{@code
+     * Savepoint sp = Database.setSavepoint("beforeLines");
+     * if (!writeLines()) {
+     *     Database.rollbackToSavepoint(sp);
+     * }
+     * }</pre>
+     *
+     * @param name the savepoint name
+     * @return the new savepoint
+     * @throws SQLException          if the savepoint could not be created
+     * @throws IllegalStateException if no transaction is active on this thread
+     */
+    public static Savepoint setSavepoint(String name) throws SQLException
+    {
+        Transaction tx = requireTransaction();
+        Savepoint savepoint = tx.joined.setSavepoint(name);
+        tx.afterCommitMarks.put(savepoint, tx.afterCommit.size());
+        return savepoint;
+    }
+
+    /**
+     * Undoes all work done in the current transaction since {@code savepoint}
+     * was created. Failures recorded after the savepoint are forgotten, so
+     * the transaction can still commit, and {@link #afterCommit(Runnable)}
+     * actions registered after it are discarded.
+     *
+     * <p>A deadlock or lock-wait timeout is not rolled back to the savepoint
+     * but rethrown, see {@link #rethrowRetryableFailure()}, so the whole
+     * transaction is retried instead of committing without the lost work.</p>
+     *
+     * @param savepoint a savepoint returned by {@link #setSavepoint(String)}
+     * @throws SQLException          if the rollback failed, or the recorded
+     *                               failure is a deadlock or lock-wait timeout
+     * @throws IllegalStateException if no transaction is active on this thread
+     */
+    public static void rollbackToSavepoint(Savepoint savepoint) throws SQLException
+    {
+        rethrowRetryableFailure();
+
+        Transaction tx = requireTransaction();
+        tx.joined.rollback(savepoint);
+        tx.failure = null;
+
+        Integer mark = tx.afterCommitMarks.get(savepoint);
+        if (mark != null && mark < tx.afterCommit.size())
+        {
+            tx.afterCommit.subList(mark, tx.afterCommit.size()).clear();
+        }
+    }
+
+    /**
+     * Releases a savepoint in the current transaction.
+     *
+     * @param savepoint a savepoint returned by {@link #setSavepoint(String)}
+     * @throws SQLException          if the savepoint could not be released
+     * @throws IllegalStateException if no transaction is active on this thread
+     */
+    public static void releaseSavepoint(Savepoint savepoint) throws SQLException
+    {
+        Transaction tx = requireTransaction();
+        tx.joined.releaseSavepoint(savepoint);
+        tx.afterCommitMarks.remove(savepoint);
+    }
+
+    /**
+     * Reports whether a {@code Database} call in the current transaction has
+     * failed. Work that uses savepoints can check this to roll back just its
+     * own part instead of letting the whole transaction fail.
+     *
+     * @return {@code true} if a statement failed since the transaction began
+     *         (or since the last {@link #rollbackToSavepoint(Savepoint)})
+     * @throws IllegalStateException if no transaction is active on this thread
+     */
+    public static boolean hasFailedStatement()
+    {
+        return requireTransaction().failure != null;
+    }
+
+    /**
+     * Rethrows the failure recorded in the current transaction if it is a
+     * deadlock or lock-wait timeout.
+     *
+     * <p>Such a failure cannot be handled inside the transaction: a deadlock
+     * rolls the whole transaction back, savepoints included, and after a
+     * lock-wait timeout the work would commit without the statement that
+     * timed out. Work that checks its own results, or rolls back to a
+     * savepoint on failure, calls this first so the failure reaches
+     * {@link #inTransaction(TransactionWork)}, which retries the whole
+     * transaction.</p>
+     *
+     * @throws SQLException          the recorded failure, if it is retryable
+     * @throws IllegalStateException if no transaction is active on this thread
+     */
+    public static void rethrowRetryableFailure() throws SQLException
+    {
+        SQLException failure = requireTransaction().failure;
+        if (failure != null && isRetryable(failure))
+        {
+            throw failure;
+        }
+    }
+
+    private static Transaction requireTransaction()
+    {
+        Transaction tx = CURRENT_TX.get();
+        if (tx == null)
+        {
+            throw new IllegalStateException("No transaction is active on this thread.");
+        }
+        return tx;
+    }
+
+    /**
+     * Remembers a failed statement so that the surrounding transaction, if
+     * any, is rolled back rather than committed with missing writes.
+     */
+    private static void markFailed(SQLException e)
+    {
+        Transaction tx = CURRENT_TX.get();
+        if (tx != null && tx.failure == null)
+        {
+            tx.failure = e;
+        }
+    }
+
+    private static boolean isRetryable(SQLException e)
+    {
+        for (Throwable t = e; t != null; t = t.getCause())
+        {
+            if (t instanceof SQLException)
+            {
+                SQLException sql = (SQLException) t;
+                if ("40001".equals(sql.getSQLState())
+                        || sql.getErrorCode() == MYSQL_ER_LOCK_DEADLOCK
+                        || sql.getErrorCode() == MYSQL_ER_LOCK_WAIT_TIMEOUT)
+                {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * State of the transaction bound to one thread. {@code joined} wraps the
+     * transaction's connection so that the {@code close()} calls made by the
+     * individual helpers do not hand it back to the pool mid-transaction.
+     */
+    private static final class Transaction
+    {
+        private final Connection joined;
+        private final List<Runnable> afterCommit = new ArrayList<>();
+        private final Map<Savepoint, Integer> afterCommitMarks = new IdentityHashMap<>();
+        private SQLException failure;
+        private boolean rollbackOnly;
+
+        private Transaction(Connection conn)
+        {
+            this.joined = (Connection) Proxy.newProxyInstance(
+                    Connection.class.getClassLoader(),
+                    new Class<?>[] { Connection.class },
+                    (proxy, method, args) -> {
+                        switch (method.getName())
+                        {
+                            case "close":
+                                return null;
+                            case "equals":
+                                return proxy == args[0];
+                            case "hashCode":
+                                return System.identityHashCode(proxy);
+                            default:
+                                try
+                                {
+                                    return method.invoke(conn, args);
+                                }
+                                catch (InvocationTargetException e)
+                                {
+                                    throw e.getCause();
+                                }
+                        }
+                    });
+        }
+
+        private void runAfterCommit()
+        {
+            for (Runnable action : afterCommit)
+            {
+                try
+                {
+                    action.run();
+                }
+                catch (RuntimeException e)
+                {
+                    System.err.println("Error running after-commit action:");
+                    e.printStackTrace();
+                }
+            }
+        }
+    }
+
+    /* ===========================================================
+       SQL GENERATION HELPERS
+       =========================================================== */
+
+    /**
+     * Returns {@code INSERT INTO table (c1, c2, ...) VALUES (?, ?, ...)} for
+     * the given columns, building it only the first time it is requested.
+     */
+    private static String insertSql(String tableName, List<String> columns)
+    {
+        return SQL_TEXT.computeIfAbsent(List.of("INSERT", tableName, columns), key -> {
+            StringBuilder sql = new StringBuilder("INSERT INTO ");
+            sql.append(tableName).append(" (");
+            sql.append(String.join(", ", columns));
+            sql.append(") VALUES (");
+            appendPlaceholders(sql, columns.size());
+            sql.append(")");
+            return sql.toString();
+        });
+    }
+
+    /**
+     * Returns {@code INSERT ... AS new ON DUPLICATE KEY UPDATE c = new.c, ...}
+     * for the given columns, building it only the first time it is requested.
+     */
+    private static String upsertSql(String tableName, List<String> columns, List<String> updateColumns)
+    {
+        // Built outside computeIfAbsent: the mapping function must not modify SQL_TEXT itself
+        String insert = insertSql(tableName, columns);
+
+        return SQL_TEXT.computeIfAbsent(List.of("UPSERT", tableName, columns, updateColumns), key -> {
+            StringBuilder sql = new StringBuilder(insert);
+            sql.append(" AS new ON DUPLICATE KEY UPDATE ");
+
+            for (int i = 0; i < updateColumns.size(); i++) {
+                if (i > 0) {
+                    sql.append(", ");
+                }
+                String column = updateColumns.get(i);
+                sql.append(column).append(" = new.").append(column);
+            }
+            return sql.toString();
+        });
+    }
+
+    /**
+     * Returns {@code UPDATE table SET c1 = ?, ... [WHERE whereClause]} for
+     * the given columns, building it only the first time it is requested.
+     */
+    private static String updateSql(String tableName, List<String> columns, String whereClause)
+    {
+        String where = whereClause == null ? "" : whereClause.trim();
+
+        return SQL_TEXT.computeIfAbsent(List.of("UPDATE", tableName, columns, where), key -> {
+            StringBuilder sql = new StringBuilder("UPDATE ");
+            sql.append(tableName).append(" SET ");
+
+            for (int i = 0; i < columns.size(); i++) {
+                if (i > 0) {
+                    sql.append(", ");
+                }
+                sql.append(columns.get(i)).append(" = ?");
+            }
+
+            if (!where.isEmpty()) {
+                sql.append(" WHERE ").append(where);
+            }
+            return sql.toString();
+        });
+    }
+
+    private static void appendPlaceholders(StringBuilder sql, int count)
+    {
+        for (int i = 0; i < count; i++)
+        {
+            if (i > 0)
+            {
+                sql.append(", ");
+            }
+            sql.append("?");
+        }
+    }
+
+    /**
+     * Binds {@code values} in {@code columns} order, starting at parameter
+     * index {@code start}.
+     *
+     * @return the next unused parameter index
+     */
+    private static int bindValues(PreparedStatement ps, Map<String, Object> values, List<String> columns, int start)
+            throws SQLException
+    {
+        int index = start;
+        for (String column : columns)
+        {
+            ps.setObject(index++, values.get(column));
+        }
+        return index;
+    }
+
+    private static void closeQuietly(AutoCloseable... resources)
+    {
+        for (AutoCloseable resource : resources)
+        {
+            if (resource == null)
+            {
+                continue;
+            }
+
+            try
+            {
+                resource.close();
+            }
+            catch (Exception e)
+            {
+                // Nothing useful can be done while cleaning up.
+            }
+        }
+    }
+
+    /**
+     * Adapts an open {@link ResultSet} to a {@link Spliterator} of row maps,
+     * owning the statement and connection until it is closed.
+     */
+    private static final class RowCursor extends Spliterators.AbstractSpliterator<Map<String, Object>>
+    {
+        private final Connection conn;
+        private final PreparedStatement ps;
+        private final ResultSet rs;
+        private final String[] labels;
+        private boolean closed;
+
+        private RowCursor(Connection conn, PreparedStatement ps, ResultSet rs) throws SQLException
+        {
+            super(Long.MAX_VALUE, Spliterator.ORDERED | Spliterator.NONNULL);
+            this.conn = conn;
+            this.ps = ps;
+            this.rs = rs;
+
+            ResultSetMetaData meta = rs.getMetaData();
+            this.labels = new String[meta.getColumnCount()];
+            for (int i = 0; i < labels.length; i++)
+            {
+                labels[i] = meta.getColumnLabel(i + 1);
+            }
+        }
+
+        @Override
+        public boolean tryAdvance(Consumer<? super Map<String, Object>> action)
+        {
+            if (closed)
+            {
+                return false;
+            }
+
+            try
+            {
+                if (!rs.next())
+                {
+                    close();
+                    return false;
+                }
+
+                Map<String, Object> row = new HashMap<>();
+                for (int i = 0; i < labels.length; i++)
+                {
+                    row.put(labels[i], rs.getObject(i + 1));
+                }
+                action.accept(row);
+                return true;
+            }
+            catch (SQLException e)
+            {
+                System.err.println("Error reading streamed rows:");
+                e.printStackTrace();
+                markFailed(e);
+                close();
+                throw new UncheckedSQLException("Reading streamed rows failed", e);
+            }
+        }
+
+        private void close()
+        {
+            if (!closed)
+            {
+                closed = true;
+                closeQuietly(rs, ps, conn);
+            }
+        }
+    }
+}
@@ -0,0 +1,390 @@
+package com.groupthree.sims;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Streaming defect-rate statistics per item and per machine.
+ *
+ * <p>Every production batch (and every defect report) is fed in with
+ * {@link #record(int, String, int, int)}. For each item and each machine
+ * the monitor keeps a sliding window of the last {@code windowSize}
+ * batches in primitive ring buffers, together with running totals and an
+ * exponentially weighted moving average (EWMA) of the batch defect rate.
+ * Adding a batch is O(1); rolling percentiles are computed only when a
+ * {@link Snapshot} is requested.</p>
+ *
+ * <p>After each batch the window rate and the EWMA are compared with the
+ * configured thresholds. When either goes over, a {@code DEFECT_THRESHOLD}
+ * alert is raised through {@link AlertSys}. The alert is raised once per
+ * breach: it is raised again only after the rate has fallen back below
+ * 80% of the threshold and then exceeded it again. None of this reads
+ * from the database.</p>
+ *
+ * <p><b>Example Usage:</b></p>
+ * <pre>{@code
+ * DefectRateMonitor monitor = ProductionSys.getDefectMonitor();
+ * monitor.setThresholds(0.05, 0.08, 200);
+ * monitor.setItemThreshold(7, 0.02);
+ *
+ * DefectRateMonitor.Snapshot s = monitor.getItemStats(7);
+ * System.out.println(s);
+ * }</pre>
+ */
+public class DefectRateMonitor
+{
+    /** Fraction of the threshold the rate must fall below before a new alert can be raised. */
+    private static final double REARM_FRACTION = 0.8;
+
+    /**
+     * Called once per breach with the rate and limit in percent; raises
+     * the alert through {@link AlertSys} unless a test supplies its own.
+     */
+    @FunctionalInterface
+    interface BreachHandler
+    {
+        void breached(String label, String entity, double ratePercent, double limitPercent);
+    }
+
+    private final int windowSize;
+    private final double ewmaAlpha;
+    private final BreachHandler onBreach;
+
+    private volatile double maxWindowRate;
+    private volatile double maxEwmaRate;
+    private volatile int minUnits;
+
+    private final ConcurrentHashMap<Integer, Double> itemThresholds = new ConcurrentHashMap<>();
+
+    private final ConcurrentHashMap<Integer, Window> byItem = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, Window> byMachine = new ConcurrentHashMap<>();
+
+    /**
+     * @param windowSize    number of recent batches kept per item and machine
+     * @param ewmaAlpha     weight of the newest batch in the EWMA, between 0 and 1
+     * @param maxWindowRate defect rate over the window that raises an alert (e.g. 0.05 for 5%)
+     * @param maxEwmaRate   EWMA defect rate that raises an alert
+     * @param minUnits      units that must be in the window before thresholds are checked
+     */
+    public DefectRateMonitor(int windowSize, double ewmaAlpha, double maxWindowRate, double maxEwmaRate, int minUnits)
+    {
+        this(windowSize, ewmaAlpha, maxWindowRate, maxEwmaRate, minUnits, AlertSys::raiseDefectRateAlert);
+    }
+
+    DefectRateMonitor(int windowSize, double ewmaAlpha, double maxWindowRate, double maxEwmaRate, int minUnits,
+                      BreachHandler onBreach)
+    {
+        if (windowSize < 1 || ewmaAlpha <= 0 || ewmaAlpha > 1)
+        {
+            throw new IllegalArgumentException("Invalid defect monitor settings.");
+        }
+
+        this.windowSize = windowSize;
+        this.ewmaAlpha = ewmaAlpha;
+        this.onBreach = onBreach;
+        setThresholds(maxWindowRate, maxEwmaRate, minUnits);
+    }
+
+    /* ===========================================================
+       CONFIGURATION
+       =========================================================== */
+
+    /**
+     * Sets the thresholds used for every item and machine.
+     *
+     * @param maxWindowRate defect rate over the window that raises an alert
+     * @param maxEwmaRate   EWMA defect rate that raises an alert
+     * @param minUnits      units that must be in the window before thresholds are checked
+     */
+    public void setThresholds(double maxWindowRate, double maxEwmaRate, int minUnits)
+    {
+        this.maxWindowRate = maxWindowRate;
+        this.maxEwmaRate = maxEwmaRate;
+        this.minUnits = minUnits;
+    }
+
+    /**
+     * Overrides both rate thresholds for one item.
+     *
+     * @param itemId  the item
+     * @param maxRate the window and EWMA rate that raises an alert for it
+     */
+    public void setItemThreshold(int itemId, double maxRate)
+    {
+        itemThresholds.put(itemId, maxRate);
+    }
+
+    /* ===========================================================
+       RECORDING
+       =========================================================== */
+
+    /**
+     * Adds one batch to the statistics of its item and machine and raises
+     * an alert if a threshold is now exceeded.
+     *
+     * <p>A defect report with no produced units ({@code produced == 0}) is
+     * counted against the most recent batch, since the defective units were
+     * already produced. A report for an item or machine with no recorded
+     * batch is ignored: there are no units to charge it to, and counting it
+     * as a batch of only defective units would read as a 100% defect
+     * rate.</p>
+     *
+     * @param itemId    the item produced
+     * @param machineId the machine that produced it, or {@code null} if unknown
+     * @param produced  units produced in the batch, good and defective
+     * @param defective defective units in the batch
+     */
+    public void record(int itemId, String machineId, int produced, int defective)
+    {
+        if (produced < 0 || defective < 0)
+        {
+            return;
+        }
+
+        Double override = itemThresholds.get(itemId);
+        double windowLimit = override != null ? override : maxWindowRate;
+        double ewmaLimit = override != null ? override : maxEwmaRate;
+
+        Window item = byItem.computeIfAbsent(itemId, id -> new Window());
+        evaluate(item, item.add(produced, defective), "Item " + itemId, "item:" + itemId, windowLimit, ewmaLimit);
+
+        if (machineId != null && !machineId.isEmpty())
+        {
+            Window machine = byMachine.computeIfAbsent(machineId, id -> new Window());
+            evaluate(machine, machine.add(produced, defective), "Machine " + machineId, "machine:" + machineId,
+                    maxWindowRate, maxEwmaRate);
+        }
+    }
+
+    /**
+     * Checks one window against its thresholds and raises an alert on a new
+     * breach.
+     */
+    private void evaluate(Window window, Snapshot stats, String label, String entity,
+                          double windowLimit, double ewmaLimit)
+    {
+        if (stats.units < minUnits)
+        {
+            return;
+        }
+
+        boolean overWindow = stats.windowRate > windowLimit;
+        boolean overEwma = stats.ewma > ewmaLimit;
+
+        if (overWindow || overEwma)
+        {
+            if (window.arm(false))
+            {
+                double rate = overWindow ? stats.windowRate : stats.ewma;
+                double limit = overWindow ? windowLimit : ewmaLimit;
+                onBreach.breached(label, entity, rate * 100, limit * 100);
+            }
+        }
+        else if (stats.windowRate < windowLimit * REARM_FRACTION && stats.ewma < ewmaLimit * REARM_FRACTION)
+        {
+            window.arm(true);
+        }
+    }
+
+    /* ===========================================================
+       QUERIES
+       =========================================================== */
+
+    /**
+     * @param itemId the item
+     * @return the current statistics for the item, or {@code null} if none recorded
+     */
+    public Snapshot getItemStats(int itemId)
+    {
+        Window window = byItem.get(itemId);
+        return window != null ? window.snapshot(true) : null;
+    }
+
+    /**
+     * @param machineId the machine
+     * @return the current statistics for the machine, or {@code null} if none recorded
+     */
+    public Snapshot getMachineStats(String machineId)
+    {
+        Window window = byMachine.get(machineId);
+        return window != null ? window.snapshot(true) : null;
+    }
+
+    /**
+     * Sliding-window statistics for one item or machine, held in primitive
+     * ring buffers.
+     */
+    private final class Window
+    {
+        private final int[] produced = new int[windowSize];
+        private final int[] defective = new int[windowSize];
+        private final double[] rates = new double[windowSize];
+
+        /** Slot of the newest batch. */
+        private int newest = -1;
+        private int count;
+
+        private long unitSum;
+        private long defectSum;
+        private double ewma;
+        private long total;
+
+        /** {@code true} while no alert is outstanding for the current breach. */
+        private boolean armed = true;
+
+        synchronized Snapshot add(int units, int defects)
+        {
+            if (units == 0)
+            {
+                if (count == 0)
+                {
+                    // No batch yet to charge the defects to
+                    return snapshot(false);
+                }
+                else
+                {
+                    // Late defect report: charge it to the newest batch
+                    total++;
+                    defective[newest] += defects;
+                    defectSum += defects;
+
+                    // The newest rate entered the EWMA with weight alpha, or as the whole
+                    // EWMA if it was the only batch; apply the same weight to its change
+                    double oldRate = rates[newest];
+                    rates[newest] = rate(produced[newest], defective[newest]);
+                    ewma += (count == 1 ? 1 : ewmaAlpha) * (rates[newest] - oldRate);
+                    return snapshot(false);
+                }
+            }
+
+            total++;
+            newest = (newest + 1) % windowSize;
+            if (count == windowSize)
+            {
+                unitSum -= produced[newest];
+                defectSum -= defective[newest];
+            }
+            else
+            {
+                count++;
+            }
+
+            produced[newest] = units;
+            defective[newest] = defects;
+            rates[newest] = rate(units, defects);
+            unitSum += units;
+            defectSum += defects;
+
+            ewma = count == 1 ? rates[newest] : ewmaAlpha * rates[newest] + (1 - ewmaAlpha) * ewma;
+            return snapshot(false);
+        }
+
+        /**
+         * Sets the armed flag.
+         *
+         * @return the previous value
+         */
+        synchronized boolean arm(boolean value)
+        {
+            boolean previous = armed;
+            armed = value;
+            return previous;
+        }
+
+        synchronized Snapshot snapshot(boolean withPercentiles)
+        {
+            double p50 = Double.NaN;
+            double p90 = Double.NaN;
+            double p99 = Double.NaN;
+
+            if (withPercentiles && count > 0)
+            {
+                double[] sorted = Arrays.copyOf(rates, count);
+                Arrays.sort(sorted);
+                p50 = percentile(sorted, 0.50);
+                p90 = percentile(sorted, 0.90);
+                p99 = percentile(sorted, 0.99);
+            }
+
+            return new Snapshot(total, count, unitSum, defectSum,
+                    rate(unitSum, defectSum), ewma, p50, p90, p99);
+        }
+
+        private double rate(long units, long defects)
+        {
+            return units > 0 ? Math.min(1.0, defects / (double) units) : 0.0;
+        }
+
+        private double percentile(double[] sorted, double p)
+        {
+            int index = (int) Math.ceil(p * sorted.length) - 1;
+            return sorted[Math.max(0, Math.min(index, sorted.length - 1))];
+        }
+    }
+
+    /**
+     * Point-in-time statistics for one item or machine. Rates are fractions
+     * between 0 and 1; percentiles are {@code NaN} when not computed.
+     */
+    public static final class Snapshot
+    {
+        private final long totalBatches;
+        private final int batches;
+        private final long units;
+        private final long defects;
+        private final double windowRate;
+        private final double ewma;
+        private final double p50;
+        private final double p90;
+        private final double p99;
+
+        private Snapshot(long totalBatches, int batches, long units, long defects,
+                         double windowRate, double ewma, double p50, double p90, double p99)
+        {
+            this.totalBatches = totalBatches;
+            this.batches = batches;
+            this.units = units;
+            this.defects = defects;
+            this.windowRate = windowRate;
+            this.ewma = ewma;
+            this.p50 = p50;
+            this.p90 = p90;
+            this.p99 = p99;
+        }
+
+        /** @return batches and defect reports ever recorded */
+        public long getTotalBatches() { return totalBatches; }
+
+        /** @return batches currently in the window */
+        public int getBatches() { return batches; }
+
+        /** @return units produced within the window */
+        public long getUnits() { return units; }
+
+        /** @return defective units within the window */
+        public long getDefects() { return defects; }
+
+        /** @return defects divided by units within the window */
+        public double getWindowRate() { return windowRate; }
+
+        /** @return exponentially weighted moving average of the batch defect rate */
+        public double getEwma() { return ewma; }
+
+        /** @return median batch defect rate within the window */
+        public double getP50() { return p50; }
+
+        /** @return 90th percentile batch defect rate within the window */
+        public double getP90() { return p90; }
+
+        /** @return 99th percentile batch defect rate within the window */
+        public double getP99() { return p99; }
+
+        @Override
+        public String toString()
+        {
+            return String.format(
+                    "batches=%d units=%d defects=%d rate=%.2f%% ewma=%.2f%% p50=%.2f%% p90=%.2f%% p99=%.2f%%",
+                    batches, units, defects, windowRate * 100, ewma * 100, p50 * 100, p90 * 100, p99 * 100);
+        }
+    }
+}
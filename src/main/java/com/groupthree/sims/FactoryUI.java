@@ -16,46 +16,27 @@ import java.awt.event.ActionListener;
  *   +showResults()
  *
  * NOTE:
- *   All calls to ProductionSys and InventorySys are COMMENTED OUT.
- *   UNCOMMENT LINES LATER
+ *   Production is recorded through ProductionSys, which also updates
+ *   inventory and history. Staff log in once; later records reuse the
+ *   login session instead of looking the user up again.
  */
 public class FactoryUI extends JFrame {
 
-    private JTextField employeeIdField;
+    private JTextField usernameField;
+    private JPasswordField passwordField;
     private JTextField bottleTypeField;
     private JTextField quantityField;
     private JTextField machineIdField;
 
     private JTextArea outputArea;
 
-    /*
-     * ================== BACKEND HOOKS (for later) ==================
-     *
-     * When your group members implement the system classes, you can:
-     *
-     * // Fields:
-     * private ProductionSys productionSys;
-     * private InventorySys inventorySys;
-     *
-     * // Constructor for full integration:
-     * public FactoryUI(ProductionSys ps, InventorySys inv) {
-     *     this();
-     *     this.productionSys = ps;
-     *     this.inventorySys = inv;
-     * }
-     *
-     * // Inside enterData():
-     * if (productionSys != null) {
-     *     productionSys.recordProduction(bottleType, quantity, machineId, empId);
-     * }
-     * if (inventorySys != null) {
-     *     inventorySys.updateStock(bottleType, quantity);
-     * }
-     */
+    private final ProductionSys productionSys = new ProductionSys();
+
+    /** Session of the logged-in operator; records after the first skip the user lookup. */
+    private String sessionToken;
 
     /**
      * Default constructor – builds the GUI.
-     * (No backend objects wired in yet.)
      */
     public FactoryUI() {
         super("Sweetcraft - Factory Records");
@@ -68,13 +49,18 @@ public class FactoryUI extends JFrame {
         setLocationRelativeTo(null);  // centre
         setLayout(new BorderLayout());
 
-        // ===== Top: input form (4 rows x 2 columns) =====
-        JPanel formPanel = new JPanel(new GridLayout(4, 2, 5, 5));
+        // ===== Top: input form (5 rows x 2 columns) =====
+        JPanel formPanel = new JPanel(new GridLayout(5, 2, 5, 5));
         formPanel.setBorder(BorderFactory.createEmptyBorder(8, 10, 8, 10));
 
-        formPanel.add(new JLabel("Employee ID:"));
-        employeeIdField = new JTextField();
-        formPanel.add(employeeIdField);
+        formPanel.add(new JLabel("Username:"));
+        usernameField = new JTextField();
+        formPanel.add(usernameField);
+
+        // Only needed to log in; the session is reused after that
+        formPanel.add(new JLabel("Password:"));
+        passwordField = new JPasswordField();
+        formPanel.add(passwordField);
 
         formPanel.add(new JLabel("Bottle type (e.g. 500ml, 1L):"));
         bottleTypeField = new JTextField();
@@ -127,7 +113,10 @@ public class FactoryUI extends JFrame {
         });
 
         clearButton.addActionListener(e -> outputArea.setText(""));
-        exitButton.addActionListener(e -> dispose());
+        exitButton.addActionListener(e -> {
+            SecuritySys.logout(sessionToken);
+            dispose();
+        });
     }
 
     // ================= UML METHODS =================
@@ -142,12 +131,11 @@ public class FactoryUI extends JFrame {
 
     /**
      * UML: +enterData()
-     * Reads the form, validates it, and (in the real system) would
-     * send data to ProductionSys and InventorySys.
-     * For now, it uses hard-coded demo behaviour.
+     * Reads the form, validates it, and records the batch with
+     * ProductionSys on behalf of the logged-in user.
      */
     public void enterData() {
-        String empId      = employeeIdField.getText().trim();
+        String empId      = usernameField.getText().trim();
         String bottleType = bottleTypeField.getText().trim();
         String qtyText    = quantityField.getText().trim();
         String machineId  = machineIdField.getText().trim();
@@ -173,6 +161,28 @@ public class FactoryUI extends JFrame {
             return;
         }
 
+        User user = currentUser(empId);
+        if (user == null) {
+            showResults("Invalid username or password.");
+            showResults("---------------------------------------------");
+            return;
+        }
+        if (!SecuritySys.canAccessFactoryUI(user)) {
+            showResults("User does not have factory privileges.");
+            showResults("---------------------------------------------");
+            return;
+        }
+
+        Item bottle = InventorySys.getItemByName(bottleType);
+        if (bottle == null) {
+            showResults("Unknown bottle type: " + bottleType);
+            showResults("---------------------------------------------");
+            return;
+        }
+
+        String batchId = machineId + "-" + System.currentTimeMillis();
+        productionSys.recordProduction(batchId, bottle.getId(), quantity, 0, user, machineId);
+
         // ========== HARD-CODED DEMO LOGIC ==========
         // This is just to show something sensible on screen.
         String sizeNote;
@@ -187,6 +197,7 @@ public class FactoryUI extends JFrame {
         StringBuilder sb = new StringBuilder();
         sb.append("The following was recorded:" + "\n");
         sb.append("  Employee: ").append(empId).append("\n");
+        sb.append("  Batch:    ").append(batchId).append("\n");
         sb.append("  Bottle:   ").append(bottleType).append("\n");
         sb.append("  Quantity: ").append(quantity).append("\n");
         sb.append("  Machine:  ").append(machineId).append("\n");
@@ -195,20 +206,23 @@ public class FactoryUI extends JFrame {
         sb.append("---------------------------------------------");
 
         showResults(sb.toString());
+    }
 
-        /*
-         * ========== REAL SYSTEM CALLS GO HERE (LATER) ==========
-         *
-         * // 1. Record production in ProductionSys
-         * if (productionSys != null) {
-         *     productionSys.recordProduction(bottleType, quantity, machineId, empId);
-         * }
-         *
-         * // 2. Update inventory in InventorySys
-         * if (inventorySys != null) {
-         *     inventorySys.updateStock(bottleType, quantity);
-         * }
-         */
+    /**
+     * Returns the operator for this record from the session, logging in
+     * with the entered password only when there is no session for
+     * {@code username} or it has expired or been revoked.
+     */
+    private User currentUser(String username) {
+        User user = SecuritySys.resolveSession(sessionToken);
+        if (user != null && user.getUsername().equals(username)) {
+            return user;
+        }
+
+        SecuritySys.logout(sessionToken);
+        sessionToken = SecuritySys.login(username, new String(passwordField.getPassword()));
+        passwordField.setText("");
+        return SecuritySys.resolveSession(sessionToken);
     }
 
     /**
@@ -231,6 +245,13 @@ public class FactoryUI extends JFrame {
      * Simple main so you can run FactoryUI directly.
      */
     public static void main(String[] args) {
+        // Load stock levels once up front so stock checks are memory reads
+        InventorySys.warmStockCache();
+
+        // Write audit logs in the background; drain them when the JVM exits
+        HistorySys.startAsyncLogging(4096, 250, 500, LogOverflowPolicy.SPILL);
+        Runtime.getRuntime().addShutdownHook(new Thread(HistorySys::stopAsyncLogging));
+
         SwingUtilities.invokeLater(() -> {
             FactoryUI ui = new FactoryUI();
             ui.displayScreen();
@@ -0,0 +1,40 @@
+package com.groupthree.sims;
+
+import java.util.List;
+
+/**
+ * One page of results from {@link HistorySys#queryHistory(HistoryQuery)}.
+ */
+public class HistoryPage {
+
+    private final List<Log> logs;
+    private final boolean hasMore;
+    private final HistoryQuery query;
+
+    public HistoryPage(List<Log> logs, boolean hasMore, HistoryQuery query) {
+        this.logs = logs;
+        this.hasMore = hasMore;
+        this.query = query;
+    }
+
+    /** @return the logs on this page, newest first */
+    public List<Log> getLogs() {
+        return logs;
+    }
+
+    /** @return {@code true} if more logs match after this page */
+    public boolean hasMore() {
+        return hasMore;
+    }
+
+    /**
+     * @return the query for the following page, or {@code null} if this is
+     *         the last page
+     */
+    public HistoryQuery nextQuery() {
+        if (!hasMore) {
+            return null;
+        }
+        return query.copy().after(logs.get(logs.size() - 1));
+    }
+}
@@ -0,0 +1,161 @@
+package com.groupthree.sims;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * Filters and paging for {@link HistorySys#queryHistory(HistoryQuery)}.
+ *
+ * <p>Every filter is compiled into the {@code WHERE} clause of one
+ * parameterized query, so the database only returns matching rows instead
+ * of the whole {@code logs} table. Results come newest first, ordered by
+ * {@code (time, id)}, and are paged with a keyset cursor: the next page
+ * starts strictly after the last row of the previous one, so paging stays
+ * cheap however deep it goes. Logs without a time sort last, as MySQL
+ * orders {@code NULL} in a descending sort, and are paged by id.</p>
+ *
+ * <p><b>Example Usage:</b></p>
+ * <pre>{@code
+ * HistoryPage page = HistorySys.queryHistory(
+ *         HistoryQuery.create()
+ *                 .userId(3)
+ *                 .titlePrefix("SALES")
+ *                 .between(LocalDateTime.now().minusDays(7), LocalDateTime.now())
+ *                 .pageSize(50));
+ *
+ * while (page.hasMore()) {
+ *     page = HistorySys.queryHistory(page.nextQuery());
+ * }
+ * }</pre>
+ */
+public class HistoryQuery {
+
+    public static final int DEFAULT_PAGE_SIZE = 100;
+
+    private Integer userId;
+    private Integer logId;
+    private LocalDateTime from;
+    private LocalDateTime to;
+    private String titlePrefix;
+    private int pageSize = DEFAULT_PAGE_SIZE;
+
+    // Keyset cursor: only rows strictly before (afterTime, afterId) are returned
+    private boolean hasCursor;
+    private LocalDateTime afterTime;
+    private int afterId;
+
+    public static HistoryQuery create() {
+        return new HistoryQuery();
+    }
+
+    /** Only logs written by this user. */
+    public HistoryQuery userId(int userId) {
+        this.userId = userId;
+        return this;
+    }
+
+    /** Only the log with this id. */
+    public HistoryQuery logId(int logId) {
+        this.logId = logId;
+        return this;
+    }
+
+    /** Only logs at or after {@code from} and before {@code to}; either may be {@code null}. */
+    public HistoryQuery between(LocalDateTime from, LocalDateTime to) {
+        this.from = from;
+        this.to = to;
+        return this;
+    }
+
+    /** Only logs whose title (the text before {@code ": "}) starts with {@code prefix}. */
+    public HistoryQuery titlePrefix(String prefix) {
+        this.titlePrefix = prefix;
+        return this;
+    }
+
+    /** Most logs returned per page. */
+    public HistoryQuery pageSize(int pageSize) {
+        if (pageSize < 1) {
+            throw new IllegalArgumentException("Page size must be positive.");
+        }
+        this.pageSize = pageSize;
+        return this;
+    }
+
+    /** Continues after the given log, i.e. returns the page that follows it. */
+    public HistoryQuery after(Log last) {
+        this.hasCursor = true;
+        this.afterTime = last.getTime();
+        this.afterId = last.getID();
+        return this;
+    }
+
+    public int getPageSize() {
+        return pageSize;
+    }
+
+    /** @return a copy of this query with the same filters and no cursor */
+    public HistoryQuery copy() {
+        HistoryQuery copy = new HistoryQuery();
+        copy.userId = userId;
+        copy.logId = logId;
+        copy.from = from;
+        copy.to = to;
+        copy.titlePrefix = titlePrefix;
+        copy.pageSize = pageSize;
+        return copy;
+    }
+
+    /**
+     * Builds the SQL for one page. One extra row is requested so the caller
+     * can tell whether another page follows.
+     *
+     * @param params receives the bind values, in order
+     */
+    String toSql(List<Object> params) {
+        StringBuilder sql = new StringBuilder("SELECT id, userID, details, time FROM logs WHERE 1 = 1");
+
+        if (logId != null) {
+            sql.append(" AND id = ?");
+            params.add(logId);
+        }
+        if (userId != null) {
+            sql.append(" AND userID = ?");
+            params.add(userId);
+        }
+        if (from != null) {
+            sql.append(" AND time >= ?");
+            params.add(Timestamp.valueOf(from));
+        }
+        if (to != null) {
+            sql.append(" AND time < ?");
+            params.add(Timestamp.valueOf(to));
+        }
+        if (titlePrefix != null && !titlePrefix.isEmpty()) {
+            sql.append(" AND details LIKE ?");
+            params.add(escapeLike(titlePrefix.toUpperCase()) + "%");
+        }
+        if (hasCursor && afterTime != null) {
+            // Expanded form of (time, id) < (?, ?) so MySQL can range-scan the index;
+            // rows without a time sort after every timed row
+            Timestamp t = Timestamp.valueOf(afterTime);
+            sql.append(" AND (time < ? OR (time = ? AND id < ?) OR time IS NULL)");
+            params.add(t);
+            params.add(t);
+            params.add(afterId);
+        } else if (hasCursor) {
+            // The last row had no time, so only untimed rows with a lower id follow
+            sql.append(" AND time IS NULL AND id < ?");
+            params.add(afterId);
+        }
+
+        sql.append(" ORDER BY time DESC, id DESC LIMIT ?");
+        params.add(pageSize + 1);
+        return sql.toString();
+    }
+
+    private static String escapeLike(String s) {
+        return s.replace("\\", "\\\\").replace("%", "\\%").replace("_", "\\_");
+    }
+}
@@ -3,7 +3,7 @@ package com.groupthree.sims;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
-import java.util.stream.Collectors;
+import java.util.stream.Stream;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.sql.Timestamp;
@@ -16,6 +16,73 @@ public class HistorySys {
     public static final DateTimeFormatter timeForm =
             DateTimeFormatter.ofPattern("MM-dd-yyyy hh:mm:ss");
 
+    // ============================================================
+    // ASYNC AUDIT WRITER (optional)
+    // ============================================================
+    private static volatile AsyncLogWriter asyncWriter;
+
+    /**
+     * Switches {@link #logSales} and {@link #logAny} to background writing.
+     *
+     * <p>Log rows are handed to an {@link AsyncLogWriter} instead of being
+     * inserted on the caller's thread, so audit writes no longer add latency
+     * to sales and production records. Rows logged inside a transaction are
+     * only queued once that transaction commits.</p>
+     *
+     * <p><b>Example Usage:</b></p>
+     * <pre>{@code
+     * HistorySys.startAsyncLogging(4096, 250, 500, LogOverflowPolicy.SPILL);
+     * ...
+     * HistorySys.stopAsyncLogging(); // writes everything still queued
+     * }</pre>
+     *
+     * @param capacity            rows the buffer can hold
+     * @param flushIntervalMillis longest time a row waits before it is written
+     * @param maxBatchSize        most rows sent in one batch insert
+     * @param policy              what to do when the buffer is full
+     */
+    public static synchronized void startAsyncLogging(int capacity, long flushIntervalMillis,
+                                                      int maxBatchSize, LogOverflowPolicy policy)
+    {
+        if (asyncWriter != null) {
+            return;
+        }
+
+        AsyncLogWriter writer = new AsyncLogWriter(capacity, flushIntervalMillis, maxBatchSize, policy);
+        writer.start();
+        asyncWriter = writer;
+    }
+
+    /**
+     * Writes every queued log row and switches back to synchronous logging.
+     */
+    public static synchronized void stopAsyncLogging()
+    {
+        if (asyncWriter != null) {
+            AsyncLogWriter writer = asyncWriter;
+            asyncWriter = null;
+            writer.shutdown();
+        }
+    }
+
+    /**
+     * Waits until every log row queued so far has been written. Does nothing
+     * when asynchronous logging is off.
+     */
+    public static void flushLogs()
+    {
+        AsyncLogWriter writer = asyncWriter;
+        if (writer != null) {
+            writer.flush();
+        }
+    }
+
+    /** @return the active background writer (for metrics), or {@code null} */
+    public static AsyncLogWriter getAsyncLogWriter()
+    {
+        return asyncWriter;
+    }
+
     // ============================================================
     // LOG SALES  (Sale temporarily disabled until group classes added)
     // ============================================================
@@ -24,14 +91,7 @@ public class HistorySys {
         String details = "SALES: " + sale.toString();
         Log log = new Log(details);
 
-        Map<String, Object> values = new HashMap<>();
-        values.put("userID", user.getId());
-        values.put("details", log.getDetails());
-        values.put("time", java.sql.Timestamp.valueOf(LocalDateTime.now()));
-
-        int logId = Database.insertWithPk("logs", values);
-
-        return new Log(logId, log.getUserID(), log.getDetails(), log.getTime());
+        return writeLog(user.getId(), log.getDetails());
     }
 
     // ============================================================
@@ -41,14 +101,73 @@ public class HistorySys {
     {
         Log log = new Log(title.toUpperCase() + ": " + details, user.getId());
 
+        return writeLog(log.getUserID(), log.getDetails());
+    }
+
+    // ============================================================
+    // LOG MANY (one batch insert)
+    // ============================================================
+    /**
+     * Logs many entries at once, e.g. for a bulk upload. Each entry's title
+     * is upper-cased and prefixed to its details, as in {@link #logAny}.
+     * The rows are written with one batch insert, or queued on the
+     * background writer when asynchronous logging is on.
+     *
+     * @param userIDs the user of each entry
+     * @param title   the title shared by all entries
+     * @param details the details of each entry, in the same order as {@code userIDs}
+     */
+    public static void logAnyBatch(List<Integer> userIDs, String title, List<String> details)
+    {
+        Timestamp time = Timestamp.valueOf(LocalDateTime.now());
+        String prefix = title.toUpperCase() + ": ";
+
+        AsyncLogWriter writer = asyncWriter;
+        if (writer != null) {
+            Database.afterCommit(() -> {
+                for (int i = 0; i < details.size(); i++) {
+                    writer.append(userIDs.get(i), prefix + details.get(i), time);
+                }
+            });
+            return;
+        }
+
+        List<Map<String, Object>> rows = new ArrayList<>(details.size());
+        for (int i = 0; i < details.size(); i++) {
+            Map<String, Object> values = new HashMap<>();
+            values.put("userID", userIDs.get(i));
+            values.put("details", prefix + details.get(i));
+            values.put("time", time);
+            rows.add(values);
+        }
+
+        Database.insertBatch("logs", rows);
+    }
+
+    /**
+     * Inserts one row into {@code logs}, or queues it on the background
+     * writer when asynchronous logging is on. Queued rows have no id yet,
+     * so the returned log has id {@code 0} in that case.
+     */
+    private static Log writeLog(int userID, String details)
+    {
+        LocalDateTime now = LocalDateTime.now();
+        Timestamp time = Timestamp.valueOf(now);
+
+        AsyncLogWriter writer = asyncWriter;
+        if (writer != null) {
+            Database.afterCommit(() -> writer.append(userID, details, time));
+            return new Log(0, userID, details, now);
+        }
+
         Map<String, Object> values = new HashMap<>();
-        values.put("userID", user.getId());
-        values.put("details", log.getDetails());
-        values.put("time", java.sql.Timestamp.valueOf(LocalDateTime.now()));
+        values.put("userID", userID);
+        values.put("details", details);
+        values.put("time", time);
 
         int logId = Database.insertWithPk("logs", values);
 
-        return new Log(logId, log.getUserID(), log.getDetails(), log.getTime());
+        return new Log(logId, userID, details, now);
     }
 
     public static List<Log> getAllHistory()
@@ -57,29 +176,94 @@ public class HistorySys {
         List<Log> logs = new ArrayList<>();
 
         for (Map<String, Object> record : records) {
-            int id = (int) record.get("id");
-            int userID = (int) record.get("userID");
-            String details = (String) record.get("details");
-            LocalDateTime logTime = null;
-
-            Object logTimeObj = record.get("time");
-            if (logTimeObj != null)
-            {
-                if (logTimeObj instanceof Timestamp) {
-                    logTime = ((Timestamp) logTimeObj).toLocalDateTime();
-                } else if (logTimeObj instanceof LocalDateTime) {
-                    logTime = (LocalDateTime) logTimeObj;
-                } else if (logTimeObj instanceof String) {
-                    // Fallback if driver returns a String
-                    logTime = LocalDateTime.parse((String) logTimeObj);
-                }
+            logs.add(mapRowToLog(record));
+        }
+
+        return logs;
+    }
+
+    // ============================================================
+    // STREAM HISTORY (constant memory, must be closed)
+    // ============================================================
+    /**
+     * Streams every log entry from a database cursor instead of loading the
+     * whole audit table into memory. The returned stream holds a database
+     * connection and must be closed, e.g. with {@code try-with-resources}.
+     * A failed read throws {@link UncheckedSQLException} rather than ending
+     * the stream early.
+     */
+    public static Stream<Log> streamAllHistory()
+    {
+        return Database.streamAll("logs").map(HistorySys::mapRowToLog);
+    }
+
+    private static Log mapRowToLog(Map<String, Object> record)
+    {
+        int id = (int) record.get("id");
+        int userID = (int) record.get("userID");
+        String details = (String) record.get("details");
+        LocalDateTime logTime = null;
+
+        Object logTimeObj = record.get("time");
+        if (logTimeObj != null)
+        {
+            if (logTimeObj instanceof Timestamp) {
+                logTime = ((Timestamp) logTimeObj).toLocalDateTime();
+            } else if (logTimeObj instanceof LocalDateTime) {
+                logTime = (LocalDateTime) logTimeObj;
+            } else if (logTimeObj instanceof String) {
+                // Fallback if driver returns a String
+                logTime = LocalDateTime.parse((String) logTimeObj);
             }
+        }
+
+        return new Log(id, userID, details, logTime);
+    }
 
-            Log log = new Log(id, userID, details, logTime);
-            logs.add(log);
+    // ============================================================
+    // QUERY HISTORY (filters pushed down to SQL, keyset paging)
+    // ============================================================
+    private static volatile boolean indexesReady;
+
+    /**
+     * Creates the indexes that history queries rely on, once per run.
+     */
+    static void ensureIndexes()
+    {
+        if (!indexesReady) {
+            indexesReady = Database.ensureIndex("logs", "idx_logs_time_id", "time", "id")
+                    & Database.ensureIndex("logs", "idx_logs_user_time_id", "userID", "time", "id");
         }
+    }
 
-        return logs;
+    /**
+     * Runs a filtered history query and returns one page of results.
+     *
+     * <p>All filters in the {@link HistoryQuery} become parameterized
+     * conditions in SQL, so only matching rows leave the database. Use
+     * {@link HistoryPage#nextQuery()} to fetch the page that follows.</p>
+     *
+     * @param query the filters, page size and cursor
+     * @return the matching logs, newest first
+     */
+    public static HistoryPage queryHistory(HistoryQuery query)
+    {
+        ensureIndexes();
+
+        List<Object> params = new ArrayList<>();
+        String sql = query.toSql(params);
+
+        List<Log> logs = new ArrayList<>();
+        for (Map<String, Object> record : Database.select(sql, params)) {
+            logs.add(mapRowToLog(record));
+        }
+
+        boolean hasMore = logs.size() > query.getPageSize();
+        if (hasMore) {
+            logs.remove(logs.size() - 1);
+        }
+
+        return new HistoryPage(logs, hasMore, query);
     }
 
     // ============================================================
@@ -93,18 +277,25 @@ public class HistorySys {
 
         int useriD = Integer.parseInt(filterUserID);
 
-        return getAllHistory().stream()
-                .filter(log -> log.getUserID() == useriD)
-                .collect(Collectors.toList());
+        List<Log> logs = new ArrayList<>();
+        HistoryQuery query = HistoryQuery.create().userId(useriD).pageSize(500);
+        while (query != null) {
+            HistoryPage page = queryHistory(query);
+            logs.addAll(page.getLogs());
+            query = page.nextQuery();
+        }
+
+        return logs;
     }
 
     // ============================================================
-    // SEARCH LOG BY ID
+    // SEARCH LOG BY ID (primary key lookup)
     // ============================================================
     public Optional<Log> searchLog(int logID) {
-        return getAllHistory().stream()
-                .filter(log -> log.getID() == logID)
-                .findFirst();
+        List<Map<String, Object>> records = Database.select(
+                "SELECT id, userID, details, time FROM logs WHERE id = ?", List.of(logID));
+
+        return records.isEmpty() ? Optional.empty() : Optional.of(mapRowToLog(records.get(0)));
     }
 
     // ============================================================
@@ -159,13 +350,13 @@ public class HistorySys {
     public String toString() {
         StringBuilder sb = new StringBuilder();
 
-        for (Log log : getAllHistory()) {
-            sb.append("[")
+        try (Stream<Log> logs = streamAllHistory()) {
+            logs.forEach(log -> sb.append("[")
                     .append(log.getTime())
                     .append("] User: ").append(log.getUserID())
                     .append(" | ").append(log.getDetails())
                     .append(" (ID: ").append(log.getID()).append(")")
-                    .append("\n");
+                    .append("\n"));
         }
 
         return sb.toString();
@@ -1,11 +1,92 @@
 package com.groupthree.sims;
 
+import java.io.IOException;
+import java.nio.file.Path;
+import java.sql.SQLException;
+import java.sql.Savepoint;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
 
 public class InventorySys
 {
+    /** Decrements a stock row only if it still holds enough units. */
+    private static final String RESERVE_SQL =
+            "UPDATE stock SET stockLevel = stockLevel - ? WHERE name = ? AND stockLevel >= ?";
+
+    private static final String DELTA_SQL =
+            "UPDATE stock SET stockLevel = stockLevel + ? WHERE id = ?";
+
+    private static final String FLOORED_DELTA_SQL =
+            "UPDATE stock SET stockLevel = GREATEST(0, stockLevel + ?) WHERE id = ?";
+
+    /** How long a cached stock row is trusted before it is re-read from the database. */
+    private static final long STOCK_CACHE_TTL_MILLIS = 30 * 1000;
+
+    private static final StockCache STOCK_CACHE = new StockCache(
+            InventorySys::loadStockById,
+            InventorySys::loadStockByName,
+            STOCK_CACHE_TTL_MILLIS
+    );
+
+    /** Cached items are reloaded in the background after this age ... */
+    private static final long ITEM_REFRESH_AHEAD_MILLIS = 60 * 1000;
+
+    /** ... and synchronously once they reach this age. */
+    private static final long ITEM_CACHE_TTL_MILLIS = 5 * 60 * 1000;
+
+    /** Maximum number of ids sent in one {@code IN (...)} list. */
+    private static final int ITEM_IN_LIST_LIMIT = 1000;
+
+    private static final ItemCatalog ITEM_CATALOG = new ItemCatalog(
+            InventorySys::loadItemsByIds,
+            InventorySys::loadItemByName,
+            ITEM_REFRESH_AHEAD_MILLIS,
+            ITEM_CACHE_TTL_MILLIS
+    );
+
+    /**
+     * Loads every stock record into the in-memory stock cache with a single
+     * query. Call this once at startup so that the first sales do not have
+     * to load rows one at a time.
+     */
+    public static void warmStockCache()
+    {
+        int count = STOCK_CACHE.warm(() -> {
+            List<Stock> all = new ArrayList<>();
+            for (Map<String, Object> row : Database.selectAll("stock"))
+            {
+                all.add(mapRowToStock(row));
+            }
+            return all;
+        });
+        System.out.println("Stock cache warmed with " + count + " records.");
+    }
+
+    /**
+     * @return the in-memory stock cache, e.g. to read its hit/miss metrics
+     */
+    public static StockCache getStockCache()
+    {
+        return STOCK_CACHE;
+    }
+
+    /**
+     * @return the in-memory item catalog, e.g. to read its hit/miss metrics
+     */
+    public static ItemCatalog getItemCatalog()
+    {
+        return ITEM_CATALOG;
+    }
+
     /**
      * Validates whether there is enough stock for the specified item name
      * to satisfy the requested quantity.
@@ -56,6 +137,10 @@ public class InventorySys
      * the stock level is clamped to {@code 0}. If the item cannot be
      * found or the arguments are invalid, no change is made.</p>
      *
+     * <p>The level is reduced on the server with
+     * {@link #adjustStockLevels(Map)}, so a concurrent sale or production
+     * update is never overwritten.</p>
+     *
      * <p><b>Example Usage:</b></p>
      * <pre>{@code
      * // Reduce stock of "500ml" by 2 units
@@ -73,7 +158,7 @@ public class InventorySys
             return;
         }
 
-        // Fetch the current stock record
+        // Only the id is needed; the level itself is changed on the server
         Stock stock = findStockByName(name);
         if (stock == null)
         {
@@ -81,29 +166,159 @@ public class InventorySys
             return;
         }
 
-        // Compute the new stock level (do not allow negative values)
-        int newLevel = stock.getStockLevel() - quantity;
-        if (newLevel < 0)
+        // Subtract on the server, never going below zero
+        applyDeltas(Map.of(stock.getId(), -quantity), true);
+    }
+
+    /**
+     * Atomically reserves (decrements) stock for every line of a sale.
+     *
+     * <p>Each line is applied as a conditional
+     * {@code UPDATE stock SET stockLevel = stockLevel - ? WHERE ... AND stockLevel >= ?},
+     * so the check and the decrement happen in one statement on the server
+     * and two tills selling the same item concurrently cannot oversell it.
+     * All lines are sent as one JDBC batch inside a transaction (joining the
+     * caller's transaction if there is one). If any line is short, every line
+     * is rolled back to a savepoint and the stock is left unchanged.</p>
+     *
+     * <p>This replaces a separate validate pass: a successful reservation
+     * both proves the stock was available and removes it.</p>
+     *
+     * <p>Inside a caller's transaction, database errors are not turned into
+     * {@link ReservationStatus#ERROR} lines but thrown, so that a deadlock or
+     * lock-wait timeout makes {@link Database#inTransaction} retry the whole
+     * transaction.</p>
+     *
+     * <p><b>Example Usage:</b></p>
+     * <pre>{@code
+     * StockReservation reservation = InventorySys.reserveStock(sale);
+     * if (!reservation.isSuccessful()) {
+     *     System.out.println(reservation);
+     * }
+     * }</pre>
+     *
+     * @param sale the sale whose lines should be reserved
+     * @return the per-line outcome of the reservation
+     * @throws SQLException if the reservation failed inside the caller's transaction
+     */
+    public static StockReservation reserveStock(Sale sale) throws SQLException
+    {
+        List<Item> items = new ArrayList<>(sale.getItems().keySet());
+        List<List<Object>> paramRows = new ArrayList<>();
+
+        for (Item item : items)
+        {
+            int quantity = sale.getItems().get(item);
+            paramRows.add(List.of(quantity, item.getName(), quantity));
+        }
+
+        try
         {
-            newLevel = 0;
+            return Database.inTransaction(() -> {
+                Savepoint beforeReservation = Database.setSavepoint("reserve_stock");
+                long cacheStamp = STOCK_CACHE.beginWrite();
+                int[] counts = Database.executeBatch(RESERVE_SQL, paramRows);
+                Database.rethrowRetryableFailure();
+
+                Map<Item, ReservationStatus> lines = new LinkedHashMap<>();
+                boolean allReserved = true;
+
+                for (int i = 0; i < items.size(); i++)
+                {
+                    // SUCCESS_NO_INFO does not say whether stockLevel >= ? matched,
+                    // so such a line cannot be counted as reserved
+                    ReservationStatus status;
+                    if (counts[i] > 0)
+                        status = ReservationStatus.RESERVED;
+                    else if (counts[i] == Statement.EXECUTE_FAILED || counts[i] == Statement.SUCCESS_NO_INFO)
+                        status = ReservationStatus.ERROR;
+                    else
+                        status = ReservationStatus.INSUFFICIENT_STOCK;
+
+                    lines.put(items.get(i), status);
+                    allReserved &= status == ReservationStatus.RESERVED;
+                }
+
+                if (!allReserved)
+                {
+                    Database.rollbackToSavepoint(beforeReservation);
+                    markUnknownItems(lines);
+                }
+                else
+                {
+                    Database.releaseSavepoint(beforeReservation);
+                    Database.afterCommit(() -> {
+                        for (Map.Entry<Item, Integer> line : sale.getItems().entrySet())
+                        {
+                            STOCK_CACHE.adjust(line.getKey().getName(), -line.getValue(), cacheStamp);
+                        }
+                    });
+                }
+
+                return new StockReservation(lines);
+            });
         }
+        catch (SQLException e)
+        {
+            if (Database.isInTransaction())
+            {
+                // Let the caller's transaction roll back, and retry if it can
+                throw e;
+            }
 
-        // Prepare the update values
-        Map<String, Object> updates = new HashMap<>();
-        updates.put("stockLevel", newLevel);
+            System.err.println("reserveStock: reservation failed.");
+            e.printStackTrace();
 
-        // Use the ID for the WHERE clause (more reliable than name)
-        String where = "id = " + stock.getId();
+            Map<Item, ReservationStatus> lines = new LinkedHashMap<>();
+            for (Item item : items)
+            {
+                lines.put(item, ReservationStatus.ERROR);
+            }
+            return new StockReservation(lines);
+        }
+    }
+
+    /**
+     * Distinguishes lines that failed because the item has no stock record
+     * from lines that were merely short. Only runs on the failure path.
+     */
+    private static void markUnknownItems(Map<Item, ReservationStatus> lines)
+    {
+        List<Object> names = new ArrayList<>();
+        StringBuilder placeholders = new StringBuilder();
 
-        // Apply the update in the database
-        Database.update("stock", updates, where);
+        for (Map.Entry<Item, ReservationStatus> line : lines.entrySet())
+        {
+            if (line.getValue() != ReservationStatus.RESERVED)
+            {
+                placeholders.append(names.isEmpty() ? "?" : ", ?");
+                names.add(line.getKey().getName());
+            }
+        }
+
+        Set<String> known = new HashSet<>();
+        for (Map<String, Object> row :
+                Database.select("SELECT name FROM stock WHERE name IN (" + placeholders + ")", names))
+        {
+            known.add((String) row.get("name"));
+        }
+
+        for (Map.Entry<Item, ReservationStatus> line : lines.entrySet())
+        {
+            if (line.getValue() == ReservationStatus.INSUFFICIENT_STOCK && !known.contains(line.getKey().getName()))
+            {
+                line.setValue(ReservationStatus.UNKNOWN_ITEM);
+            }
+        }
     }
 
     /**
      * Increases the stock level of the specified item by the given quantity.
      *
      * <p>If the item cannot be found or the arguments are invalid,
-     * no change is made.</p>
+     * no change is made. The level is increased on the server with
+     * {@link #adjustStockLevels(Map)}, so a concurrent sale or production
+     * update is never overwritten.</p>
      *
      * <p><b>Example Usage:</b></p>
      * <pre>{@code
@@ -122,7 +337,7 @@ public class InventorySys
             return;
         }
 
-        // Fetch the current stock record
+        // Only the id is needed; the level itself is changed on the server
         Stock stock = findStockByName(name);
         if (stock == null)
         {
@@ -130,17 +345,182 @@ public class InventorySys
             return;
         }
 
-        // Compute the new stock level
-        int newLevel = stock.getStockLevel() + quantity;
+        adjustStockLevels(Map.of(stock.getId(), quantity));
+    }
 
-        // Prepare the update values
-        Map<String, Object> updates = new HashMap<>();
-        updates.put("stockLevel", newLevel);
+    /**
+     * Atomically adds an amount to one item's stock and returns the new level.
+     *
+     * <p>See {@link #adjustStockLevels(Map)}; the level is changed on the
+     * server without reading it first, so concurrent sales are never lost.</p>
+     *
+     * <p><b>Example Usage:</b></p>
+     * <pre>{@code
+     * // 120 good units came off the line
+     * int level = InventorySys.addStock(1, 120);
+     * }</pre>
+     *
+     * @param id    the stock id
+     * @param delta the amount to add (negative to remove)
+     * @return the stock level after the change, or {@code -1} if there is
+     *         no such stock record or the update failed
+     */
+    public static int addStock(int id, int delta)
+    {
+        Stock updated = adjustStockLevels(Map.of(id, delta)).get(id);
+        return updated != null ? updated.getStockLevel() : -1;
+    }
 
-        String where = "id = " + stock.getId();
+    /**
+     * Adds many amounts to stock at once, e.g. the goods produced in a
+     * whole shift.
+     *
+     * <p>Same as {@link #adjustStockLevels(Map)}, for callers that only need
+     * to know which rows were updated.</p>
+     *
+     * @param deltas amount to add per stock id
+     * @return the ids whose stock row was updated; ids with no stock row are absent
+     */
+    public static Set<Integer> addStockBatch(Map<Integer, Integer> deltas)
+    {
+        return new HashSet<>(adjustStockLevels(deltas).keySet());
+    }
 
-        // Apply the update in the database
-        Database.update("stock", updates, where);
+    /**
+     * Atomically applies many stock changes and returns the resulting
+     * levels.
+     *
+     * <p>All changes are applied with one JDBC batch of
+     * {@code UPDATE stock SET stockLevel = stockLevel + ? WHERE id = ?},
+     * so the server does the arithmetic and no row is read first. Two
+     * writers changing the same item (production adding, tills selling)
+     * cannot overwrite each other. The new levels are then read back with
+     * one {@code SELECT ... WHERE id IN (...)} in the same transaction,
+     * while the updated rows are still locked, so they are exactly the
+     * levels this call produced.</p>
+     *
+     * <p>That makes one batch and one query for any number of items (per
+     * 1000 ids), rather than a read and a write per item. The update text
+     * never changes and the {@code IN} list is padded to a few fixed sizes,
+     * so the prepared statements are reused however many items are passed.
+     * MySQL cannot return updated rows from an {@code UPDATE}, and
+     * multi-statement queries stay disabled on the connection. The deltas
+     * are applied to the stock cache once the transaction commits.</p>
+     *
+     * <p>Negative deltas are applied as given; use
+     * {@link #reserveStock(Sale)} when a decrement must not go below zero.</p>
+     *
+     * <p><b>Example Usage:</b></p>
+     * <pre>{@code
+     * Map<Integer, Integer> deltas = new LinkedHashMap<>();
+     * deltas.put(1, 120);
+     * deltas.put(2, 80);
+     * Map<Integer, Stock> levels = InventorySys.adjustStockLevels(deltas);
+     * }</pre>
+     *
+     * @param deltas amount to add per stock id
+     * @return the updated stock record per id; ids with no stock row are absent
+     */
+    public static Map<Integer, Stock> adjustStockLevels(Map<Integer, Integer> deltas)
+    {
+        return applyDeltas(deltas, false);
+    }
+
+    /**
+     * Implements {@link #adjustStockLevels(Map)}. With {@code floorAtZero}
+     * a level that would go negative is set to {@code 0} instead; such a
+     * row is evicted from the stock cache rather than adjusted, since the
+     * amount actually removed is not known.
+     */
+    private static Map<Integer, Stock> applyDeltas(Map<Integer, Integer> deltas, boolean floorAtZero)
+    {
+        if (deltas == null || deltas.isEmpty())
+        {
+            return new HashMap<>();
+        }
+
+        List<Integer> ids = new ArrayList<>(deltas.keySet());
+        List<List<Object>> paramRows = new ArrayList<>();
+
+        for (Integer id : ids)
+        {
+            paramRows.add(Arrays.asList(deltas.get(id), id));
+        }
+
+        try
+        {
+            return Database.inTransaction(() -> {
+                Map<Integer, Stock> updated = new HashMap<>();
+                long cacheStamp = STOCK_CACHE.beginWrite();
+
+                // One statement text whatever the number of ids, so its prepare is reused
+                int[] counts = Database.executeBatch(floorAtZero ? FLOORED_DELTA_SQL : DELTA_SQL, paramRows);
+                Database.rethrowRetryableFailure();
+                for (int count : counts)
+                {
+                    if (count == Statement.EXECUTE_FAILED)
+                    {
+                        throw new SQLException("Stock delta update failed.");
+                    }
+                }
+
+                for (int from = 0; from < ids.size(); from += ITEM_IN_LIST_LIMIT)
+                {
+                    List<Integer> chunk = ids.subList(from, Math.min(from + ITEM_IN_LIST_LIMIT, ids.size()));
+                    loadStockChunk(chunk, updated);
+                }
+
+                Database.afterCommit(() -> {
+                    for (Stock stock : updated.values())
+                    {
+                        if (floorAtZero && stock.getStockLevel() == 0)
+                        {
+                            STOCK_CACHE.invalidate(stock.getId());
+                        }
+                        else
+                        {
+                            STOCK_CACHE.adjust(stock.getName(), deltas.get(stock.getId()), cacheStamp);
+                        }
+                    }
+                });
+                return updated;
+            });
+        }
+        catch (SQLException e)
+        {
+            System.err.println("adjustStockLevels: update failed.");
+            e.printStackTrace();
+            return new HashMap<>();
+        }
+    }
+
+    /**
+     * Reads the stock rows for one chunk of ids into {@code into}. The
+     * {@code IN} list is padded to a power of two (at most
+     * {@link #ITEM_IN_LIST_LIMIT}) by repeating the last id, so only a few
+     * statement texts are ever prepared.
+     */
+    private static void loadStockChunk(List<Integer> ids, Map<Integer, Stock> into)
+    {
+        int size = Math.min(Math.max(1, Integer.highestOneBit(ids.size() - 1) << 1), ITEM_IN_LIST_LIMIT);
+        StringBuilder sql = new StringBuilder("SELECT * FROM stock WHERE id IN (");
+        List<Object> params = new ArrayList<>(ids);
+
+        while (params.size() < size)
+        {
+            params.add(ids.get(ids.size() - 1));
+        }
+        for (int i = 0; i < params.size(); i++)
+        {
+            sql.append(i == 0 ? "?" : ", ?");
+        }
+        sql.append(")");
+
+        for (Map<String, Object> row : Database.select(sql.toString(), params))
+        {
+            Stock stock = mapRowToStock(row);
+            into.put(stock.getId(), stock);
+        }
     }
 
     /**
@@ -166,8 +546,9 @@ public class InventorySys
             return;
         }
 
-        // Try to find an existing stock record
-        Stock stock = findStockByName(name);
+        // Only the id is needed, but read it fresh so a renamed or deleted
+        // row is not written from a stale cache entry
+        Stock stock = loadStockByName(name);
 
         if (stock == null)
         {
@@ -179,8 +560,7 @@ public class InventorySys
             Map<String, Object> updates = new HashMap<>();
             updates.put("stockLevel", quantity);
 
-            String where = "id = " + stock.getId();
-            Database.update("stock", updates, where);
+            writeStockLevel(stock, updates);
         }
     }
 
@@ -192,7 +572,7 @@ public class InventorySys
         }
 
         // Try to find an existing stock record
-        Stock stock = findStockById(userId);
+        Stock stock = loadStockById(userId);
 
         if (stock == null)
         {
@@ -204,20 +584,20 @@ public class InventorySys
             Map<String, Object> updates = new HashMap<>();
             updates.put("stockLevel", quantity);
 
-            String where = "id = " + stock.getId();
-            Database.update("stock", updates, where);
+            writeStockLevel(stock, updates);
         }
     }
 
     /**
-     * Retrieves an item from the database using its unique identifier.
+     * Retrieves an item using its unique identifier.
      *
-     * <p>This method performs a lookup query and returns a fully constructed
-     * {@code Item} instance based on the result.</p>
+     * <p>The item is served from the in-memory item catalog and only loaded
+     * from the database on a miss. The same {@code Item} instance is returned
+     * for the same item until its data changes.</p>
      *
      * <p><b>Example Usage:</b></p>
      * <pre>{@code
-     * Item item = Item.getItemById("I001");
+     * Item item = InventorySys.getItemById(1);
      * System.out.println(item.getName());
      * }</pre>
      *
@@ -225,31 +605,38 @@ public class InventorySys
      * @return the matching item, or {@code null} if no item is found
      */
     public static Item getItemById(int id) {
-        List<Map<String, Object>> results =
-            Database.select("SELECT * FROM Items WHERE id = '" + id + "'");
-
-        if (results.isEmpty()) {
-            return null;
-        }
-
-        Map<String, Object> row = results.get(0);
+        return ITEM_CATALOG.get(id);
+    }
 
-        return new Item(
-            (int) row.get("id"),
-            (String) row.get("name"),
-            (double) row.get("price")  // correct type
-        );
+    /**
+     * Retrieves many items by id at once.
+     *
+     * <p>Items already in the catalog are served from memory; all the others
+     * are fetched together with a single {@code SELECT ... WHERE id IN (...)}
+     * query, so building a report over thousands of sales does not issue one
+     * query per row.</p>
+     *
+     * <p><b>Example Usage:</b></p>
+     * <pre>{@code
+     * Map<Integer, Item> items = InventorySys.getItemsByIds(List.of(1, 2, 3));
+     * }</pre>
+     *
+     * @param ids the identifiers of the items to retrieve
+     * @return a map from id to item; ids with no matching item are absent
+     */
+    public static Map<Integer, Item> getItemsByIds(Collection<Integer> ids) {
+        return ITEM_CATALOG.getAll(ids);
     }
 
     /**
-     * Retrieves an item from the database using its name.
+     * Retrieves an item using its name.
      *
-     * <p>This method performs a lookup query and returns a fully constructed
-     * {@code Item} instance based on the result.</p>
+     * <p>The item is served from the in-memory item catalog and only loaded
+     * from the database on a miss.</p>
      *
      * <p><b>Example Usage:</b></p>
      * <pre>{@code
-     * Item item = Item.getItemByName("Widget");
+     * Item item = InventorySys.getItemByName("Widget");
      * System.out.println(item.getId());
      * }</pre>
      *
@@ -257,27 +644,109 @@ public class InventorySys
      * @return the matching item, or {@code null} if no item is found
      */
     public static Item getItemByName(String name) {
+        if (name == null || name.isEmpty()) {
+            return null;
+        }
+        return ITEM_CATALOG.getByName(name);
+    }
+
+    /**
+     * Changes the price of an item and refreshes its catalog entry once the
+     * change is committed.
+     *
+     * @param id    the identifier of the item
+     * @param price the new price; must not be negative
+     * @return {@code true} if the item was updated
+     */
+    public static boolean updateItemPrice(int id, double price) {
+        if (price < 0) {
+            return false;
+        }
+
+        Map<String, Object> updates = new HashMap<>();
+        updates.put("price", price);
+
+        int affected = Database.update("Items", updates, "id = ?", List.of(id));
+        if (affected <= 0) {
+            return false;
+        }
+
+        Database.afterCommit(() -> ITEM_CATALOG.refresh(id));
+        return true;
+    }
+
+    private static List<Item> loadItemsByIds(Collection<Integer> ids) {
+        List<Item> items = new ArrayList<>();
+        List<Object> chunk = new ArrayList<>();
+
+        for (Integer id : ids) {
+            chunk.add(id);
+            if (chunk.size() == ITEM_IN_LIST_LIMIT) {
+                loadItemChunk(chunk, items);
+                chunk.clear();
+            }
+        }
+        if (!chunk.isEmpty()) {
+            loadItemChunk(chunk, items);
+        }
+
+        return items;
+    }
+
+    private static void loadItemChunk(List<Object> ids, List<Item> into) {
+        StringBuilder sql = new StringBuilder("SELECT * FROM Items WHERE id IN (");
+        for (int i = 0; i < ids.size(); i++) {
+            sql.append(i == 0 ? "?" : ", ?");
+        }
+        sql.append(")");
+
+        for (Map<String, Object> row : Database.select(sql.toString(), ids)) {
+            into.add(mapRowToItem(row));
+        }
+    }
+
+    private static Item loadItemByName(String name) {
         List<Map<String, Object>> results =
-            Database.select("SELECT * FROM Items WHERE name = '" + name + "'");
+            Database.select("SELECT * FROM Items WHERE name = ?", List.of(name));
 
         if (results.isEmpty()) {
             return null;
         }
 
-        Map<String, Object> row = results.get(0);
+        return mapRowToItem(results.get(0));
+    }
 
+    private static Item mapRowToItem(Map<String, Object> row) {
         return new Item(
-            (int) row.get("id"),
+            ((Number) row.get("id")).intValue(),
             (String) row.get("name"),
-            (double) row.get("price")  // correct type
+            ((Number) row.get("price")).doubleValue()
         );
     }
 
+    /**
+     * Writes a new stock level for {@code stock} and, once the change is
+     * committed, evicts the record from the stock cache. The cache is not
+     * given the new level, since a delta committed by another writer in the
+     * meantime would make it wrong; the next read loads the row instead.
+     */
+    private static void writeStockLevel(Stock stock, Map<String, Object> updates)
+    {
+        int affected = Database.update("stock", updates, "id = ?", List.of(stock.getId()));
+        if (affected <= 0)
+        {
+            return;
+        }
+
+        Database.afterCommit(() -> STOCK_CACHE.invalidate(stock.getId()));
+    }
+
     /**
      * Finds a {@link Stock} record by its name.
      *
-     * <p>This method performs a lookup on the {@code stock} table using the
-     * provided name and returns a {@link Stock} object if found.</p>
+     * <p>The record is served from the in-memory stock cache; it is loaded
+     * from the {@code stock} table only on a cache miss or once the cached
+     * copy has expired.</p>
      *
      * @param name the name of the stock item
      * @return the corresponding {@code Stock} instance,
@@ -290,11 +759,13 @@ public class InventorySys
             return null;
         }
 
-        // Escape single quotes to avoid breaking the SQL string
-        String safeName = escapeSql(name);
+        return STOCK_CACHE.getByName(name);
+    }
 
+    private static Stock loadStockByName(String name)
+    {
         List<Map<String, Object>> results =
-            Database.select("SELECT * FROM stock WHERE name = '" + safeName + "'");
+            Database.select("SELECT * FROM stock WHERE name = ?", List.of(name));
 
         if (results.isEmpty())
         {
@@ -307,17 +778,23 @@ public class InventorySys
     /**
      * Finds a {@link Stock} record by its unique identifier.
      *
-     * <p>This method performs a lookup on the {@code stock} table using the
-     * provided ID and returns a {@link Stock} object if found.</p>
+     * <p>The record is served from the in-memory stock cache; it is loaded
+     * from the {@code stock} table only on a cache miss or once the cached
+     * copy has expired.</p>
      *
      * @param id the primary key of the stock record
      * @return the corresponding {@code Stock} instance,
      *         or {@code null} if no matching record is found
      */
     public static Stock findStockById(int id)
+    {
+        return STOCK_CACHE.getById(id);
+    }
+
+    private static Stock loadStockById(int id)
     {
         List<Map<String, Object>> results =
-            Database.select("SELECT * FROM stock WHERE id = " + id);
+            Database.select("SELECT * FROM stock WHERE id = ?", List.of(id));
 
         if (results.isEmpty())
         {
@@ -327,6 +804,273 @@ public class InventorySys
         return mapRowToStock(results.get(0));
     }
 
+    /* ===========================================================
+       CATALOG IMPORT
+       =========================================================== */
+
+    /**
+     * Loads items and stock levels from a CSV file, inserting new rows and
+     * updating existing ones.
+     *
+     * <p>The first row is a header. Columns are matched by name, ignoring
+     * case, and may come in any order; other columns are ignored:</p>
+     * <ul>
+     *   <li>{@code id} (required) - the item id, which is also its stock id</li>
+     *   <li>{@code name} (required)</li>
+     *   <li>{@code price} - if present, the {@code Items} table is written</li>
+     *   <li>{@code stockLevel} - if present, the {@code stock} table is written</li>
+     *   <li>{@code minimumStockLevel} - optional with {@code stockLevel};
+     *       new stock rows get {@code 0} when it is missing</li>
+     * </ul>
+     *
+     * <p>The file is parsed and validated in parallel chunks by
+     * {@link CsvImporter}. Each chunk of {@link Database#getBatchSize()}
+     * rows is then written in one transaction with batched
+     * {@code INSERT ... ON DUPLICATE KEY UPDATE} statements, a round trip
+     * per table per chunk. If the database rejects a chunk, its rows are
+     * retried one at a time so that only the offending rows are reported.
+     * Imported items and stock records are evicted from the caches once
+     * their chunk commits.</p>
+     *
+     * <p><b>Example Usage:</b></p>
+     * <pre>{@code
+     * CsvImporter.Result result = InventorySys.importCatalog(Path.of("catalog.csv"));
+     * System.out.println(result);
+     * result.getErrors().forEach(System.out::println);
+     * }</pre>
+     *
+     * @param file the CSV file, in UTF-8
+     * @return the import counts and per-row errors, or {@code null} if the file could not be read
+     */
+    public static CsvImporter.Result importCatalog(Path file)
+    {
+        System.out.println("Importing catalog from " + file + "...");
+
+        try
+        {
+            CsvImporter.Result result = CsvImporter.importCsv(file, InventorySys::catalogParser,
+                    InventorySys::writeCatalogChunk, Database.getBatchSize(), ForkJoinPool.commonPool());
+
+            System.out.println("Catalog import finished: " + result);
+            return result;
+        }
+        catch (IOException e)
+        {
+            System.err.println("Failed to read catalog file " + file);
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    /**
+     * Positions of the catalog columns in an import file; {@code -1} if the
+     * column is absent.
+     */
+    private static final class CatalogLayout
+    {
+        int id = -1;
+        int name = -1;
+        int price = -1;
+        int stockLevel = -1;
+        int minimumStockLevel = -1;
+    }
+
+    /** One validated row of a catalog import. */
+    private static final class CatalogRow
+    {
+        final CatalogLayout layout;
+        final int id;
+        final String name;
+        final double price;
+        final int stockLevel;
+        final int minimumStockLevel;
+
+        CatalogRow(CatalogLayout layout, int id, String name, double price, int stockLevel, int minimumStockLevel)
+        {
+            this.layout = layout;
+            this.id = id;
+            this.name = name;
+            this.price = price;
+            this.stockLevel = stockLevel;
+            this.minimumStockLevel = minimumStockLevel;
+        }
+    }
+
+    private static CsvImporter.RecordParser<CatalogRow> catalogParser(String[] header)
+    {
+        CatalogLayout layout = new CatalogLayout();
+
+        for (int i = 0; i < header.length; i++)
+        {
+            String column = header[i].toLowerCase();
+            switch (column)
+            {
+                case "id":                layout.id = checkUnique(layout.id, i, column); break;
+                case "name":              layout.name = checkUnique(layout.name, i, column); break;
+                case "price":             layout.price = checkUnique(layout.price, i, column); break;
+                case "stocklevel":        layout.stockLevel = checkUnique(layout.stockLevel, i, column); break;
+                case "minimumstocklevel": layout.minimumStockLevel = checkUnique(layout.minimumStockLevel, i, column); break;
+                default:                  break;
+            }
+        }
+
+        if (layout.id < 0 || layout.name < 0)
+        {
+            throw new IllegalArgumentException("The header must have 'id' and 'name' columns.");
+        }
+        if (layout.price < 0 && layout.stockLevel < 0)
+        {
+            throw new IllegalArgumentException("The header must have a 'price' or 'stockLevel' column.");
+        }
+        if (layout.minimumStockLevel >= 0 && layout.stockLevel < 0)
+        {
+            throw new IllegalArgumentException("'minimumStockLevel' requires a 'stockLevel' column.");
+        }
+
+        return fields -> parseCatalogRow(layout, fields);
+    }
+
+    private static int checkUnique(int current, int index, String column)
+    {
+        if (current >= 0)
+        {
+            throw new IllegalArgumentException("Column '" + column + "' appears more than once.");
+        }
+        return index;
+    }
+
+    private static CatalogRow parseCatalogRow(CatalogLayout layout, String[] fields)
+    {
+        int id = parseCatalogInt(fields[layout.id], "id");
+        if (id <= 0)
+        {
+            throw new IllegalArgumentException("id must be greater than 0.");
+        }
+
+        String name = fields[layout.name].trim();
+        if (name.isEmpty())
+        {
+            throw new IllegalArgumentException("name is required.");
+        }
+
+        double price = 0;
+        if (layout.price >= 0)
+        {
+            String value = fields[layout.price].trim();
+            try
+            {
+                price = Double.parseDouble(value);
+            }
+            catch (NumberFormatException e)
+            {
+                throw new IllegalArgumentException("price is not a number: '" + value + "'.");
+            }
+            if (!(price >= 0) || Double.isInfinite(price))
+            {
+                throw new IllegalArgumentException("price must be 0 or greater.");
+            }
+        }
+
+        int stockLevel = layout.stockLevel >= 0 ? parseCatalogInt(fields[layout.stockLevel], "stockLevel") : 0;
+        int minimum = layout.minimumStockLevel >= 0
+                ? parseCatalogInt(fields[layout.minimumStockLevel], "minimumStockLevel") : 0;
+        if (stockLevel < 0 || minimum < 0)
+        {
+            throw new IllegalArgumentException("Stock levels must be 0 or greater.");
+        }
+
+        return new CatalogRow(layout, id, name, price, stockLevel, minimum);
+    }
+
+    private static int parseCatalogInt(String value, String column)
+    {
+        try
+        {
+            return Integer.parseInt(value.trim());
+        }
+        catch (NumberFormatException e)
+        {
+            throw new IllegalArgumentException(column + " is not a whole number: '" + value + "'.");
+        }
+    }
+
+    /**
+     * Writes one chunk of catalog rows in a single transaction, or row by
+     * row if the chunk is rejected.
+     */
+    private static int writeCatalogChunk(List<CatalogRow> rows, List<Integer> lines,
+                                         List<CsvImporter.RowError> errors)
+    {
+        try
+        {
+            Database.inTransaction(() -> upsertCatalogRows(rows));
+            return rows.size();
+        }
+        catch (SQLException e)
+        {
+            System.err.println("Catalog rows from line " + lines.get(0) + " were rejected; retrying them one by one.");
+        }
+
+        int written = 0;
+        for (int i = 0; i < rows.size(); i++)
+        {
+            List<CatalogRow> single = List.of(rows.get(i));
+            try
+            {
+                Database.inTransaction(() -> upsertCatalogRows(single));
+                written++;
+            }
+            catch (SQLException e)
+            {
+                errors.add(new CsvImporter.RowError(lines.get(i), "Rejected by the database: " + e.getMessage()));
+            }
+        }
+        return written;
+    }
+
+    /**
+     * Upserts the {@code Items} and/or {@code stock} rows of a chunk and
+     * evicts them from the caches once the transaction commits.
+     */
+    private static Void upsertCatalogRows(List<CatalogRow> rows)
+    {
+        CatalogLayout layout = rows.get(0).layout;
+
+        if (layout.price >= 0)
+        {
+            List<List<Object>> items = new ArrayList<>(rows.size());
+            for (CatalogRow row : rows)
+            {
+                items.add(List.of(row.id, row.name, row.price));
+            }
+            Database.upsertBatch("Items", List.of("id", "name", "price"), List.of("name", "price"), items);
+        }
+
+        if (layout.stockLevel >= 0)
+        {
+            List<List<Object>> stock = new ArrayList<>(rows.size());
+            for (CatalogRow row : rows)
+            {
+                stock.add(List.of(row.id, row.name, row.stockLevel, row.minimumStockLevel));
+            }
+            Database.upsertBatch("stock",
+                    List.of("id", "name", "stockLevel", "minimumStockLevel"),
+                    layout.minimumStockLevel >= 0
+                            ? List.of("name", "stockLevel", "minimumStockLevel")
+                            : List.of("name", "stockLevel"),
+                    stock);
+        }
+
+        Database.afterCommit(() -> {
+            for (CatalogRow row : rows)
+            {
+                ITEM_CATALOG.invalidate(row.id);
+                STOCK_CACHE.invalidate(row.id);
+            }
+        });
+        return null;
+    }
+
     /**
      * Converts a database row into a {@link Stock} object.
      *
@@ -356,20 +1100,4 @@ public class InventorySys
 
         return new Stock(id, name, stockLevel, minimumStockLevel);
     }
-
-    /**
-     * Escapes single quotes in a string so that it can be safely injected
-     * into a simple SQL literal.
-     *
-     * <p><b>Note:</b> This is a minimal helper for this project. In a real
-     * application, you should strongly prefer prepared statements with
-     * {@link java.sql.PreparedStatement} to avoid SQL injection.</p>
-     *
-     * @param value the original string value
-     * @return the escaped value, or {@code null} if {@code value} is {@code null}
-     */
-    private static String escapeSql(String value)
-    {
-        return value == null ? null : value.replace("'", "''");
-    }
 }
\ No newline at end of file
@@ -36,4 +36,24 @@ public class Item {
     public double getPrice() {
         return price;
     }
+
+    /**
+     * Two items are equal when they have the same identifier, so an item
+     * loaded twice still counts as the same line in a {@link Sale}.
+     */
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof Item)) {
+            return false;
+        }
+        return id == ((Item) o).id;
+    }
+
+    @Override
+    public int hashCode() {
+        return Integer.hashCode(id);
+    }
 }
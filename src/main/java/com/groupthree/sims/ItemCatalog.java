@@ -0,0 +1,307 @@
+package com.groupthree.sims;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * An in-process catalog of {@link Item}s indexed by id and name.
+ *
+ * <p>The catalog hands out one canonical {@code Item} instance per item: a
+ * reload that finds the same name and price keeps the existing instance, so
+ * callers can share and compare items cheaply. Lookups of many ids at once
+ * ({@link #getAll(Collection)}) fetch every missing item with a single
+ * bulk query instead of one query per id.</p>
+ *
+ * <p>Entries are refreshed ahead of expiry: once an entry is older than the
+ * refresh-ahead age it is still served from memory, but a background reload
+ * is started so that price changes made elsewhere are picked up without the
+ * caller ever waiting on the database. Entries older than the full
+ * time-to-live are reloaded synchronously.</p>
+ *
+ * <p>Like {@link StockCache}, every load notes a write stamp before it
+ * reads, and {@link #refresh(int)}, {@link #invalidate(int)} and
+ * {@link #invalidateAll()} advance it. A load that started before the last
+ * of those is returned to its caller but not cached, so a slow background
+ * refresh can never put back a price that an update has since replaced.</p>
+ */
+public class ItemCatalog
+{
+    private final Function<Collection<Integer>, List<Item>> loadByIds;
+    private final Function<String, Item> loadByName;
+    private final long refreshAheadMillis;
+    private final long ttlMillis;
+
+    private final ConcurrentHashMap<Integer, Entry> byId = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, Integer> idByName = new ConcurrentHashMap<>();
+    private final Set<Integer> refreshing = ConcurrentHashMap.newKeySet();
+
+    private final ExecutorService refresher = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "sims-item-refresh");
+        t.setDaemon(true);
+        return t;
+    });
+
+    /** Advanced by every explicit refresh and invalidation; loads started before the latest are not cached. */
+    private final AtomicLong writes = new AtomicLong();
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong refreshes = new AtomicLong();
+
+    /**
+     * @param loadByIds          loads the items with the given ids in one query
+     * @param loadByName         loads one item by name, or returns {@code null}
+     * @param refreshAheadMillis age after which an entry is reloaded in the background
+     * @param ttlMillis          age after which an entry must be reloaded before use
+     */
+    public ItemCatalog(Function<Collection<Integer>, List<Item>> loadByIds,
+                       Function<String, Item> loadByName,
+                       long refreshAheadMillis,
+                       long ttlMillis)
+    {
+        this.loadByIds = loadByIds;
+        this.loadByName = loadByName;
+        this.refreshAheadMillis = refreshAheadMillis;
+        this.ttlMillis = ttlMillis;
+    }
+
+    /* ===========================================================
+       LOOKUPS
+       =========================================================== */
+
+    /**
+     * @param id the item id
+     * @return the canonical item, or {@code null} if it does not exist
+     */
+    public Item get(int id)
+    {
+        return getAll(List.of(id)).get(id);
+    }
+
+    /**
+     * @param name the item name
+     * @return the canonical item, or {@code null} if it does not exist
+     */
+    public Item getByName(String name)
+    {
+        Integer id = idByName.get(name);
+        if (id != null)
+        {
+            Entry entry = usable(id);
+            if (entry != null && entry.item.getName().equals(name))
+            {
+                hits.incrementAndGet();
+                return entry.item;
+            }
+        }
+
+        misses.incrementAndGet();
+        long stamp = writes.get();
+        Item loaded = loadByName.apply(name);
+        return loaded != null ? intern(loaded, stamp) : null;
+    }
+
+    /**
+     * Looks up many items at once. Items that are not cached (or have
+     * expired) are fetched together with one bulk query.
+     *
+     * @param ids the item ids to look up
+     * @return a map from id to canonical item; ids that do not exist are absent
+     */
+    public Map<Integer, Item> getAll(Collection<Integer> ids)
+    {
+        Map<Integer, Item> result = new HashMap<>();
+        Set<Integer> missing = new LinkedHashSet<>();
+
+        for (Integer id : ids)
+        {
+            if (id == null || result.containsKey(id))
+            {
+                continue;
+            }
+
+            Entry entry = usable(id);
+            if (entry != null)
+            {
+                hits.incrementAndGet();
+                result.put(id, entry.item);
+            }
+            else
+            {
+                missing.add(id);
+            }
+        }
+
+        if (!missing.isEmpty())
+        {
+            misses.addAndGet(missing.size());
+            long stamp = writes.get();
+            for (Item loaded : loadByIds.apply(missing))
+            {
+                result.put(loaded.getId(), intern(loaded, stamp));
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * Returns the entry for {@code id} if it may be served, scheduling a
+     * background refresh when it is past the refresh-ahead age.
+     */
+    private Entry usable(int id)
+    {
+        Entry entry = byId.get(id);
+        if (entry == null)
+        {
+            return null;
+        }
+
+        long age = System.currentTimeMillis() - entry.loadedAt;
+        if (age >= ttlMillis)
+        {
+            return null;
+        }
+        if (age >= refreshAheadMillis && refreshing.add(id))
+        {
+            refresher.execute(() -> {
+                try
+                {
+                    reload(id, writes.get());
+                }
+                finally
+                {
+                    refreshing.remove(id);
+                }
+            });
+        }
+        return entry;
+    }
+
+    /* ===========================================================
+       UPDATES
+       =========================================================== */
+
+    /**
+     * Reloads one item from the database, e.g. after its price changed.
+     * Loads of any item that started before this call are not cached.
+     *
+     * @param id the item id
+     */
+    public void refresh(int id)
+    {
+        reload(id, writes.incrementAndGet());
+    }
+
+    /**
+     * Removes one item so that the next lookup reloads it.
+     *
+     * @param id the item id
+     */
+    public void invalidate(int id)
+    {
+        writes.incrementAndGet();
+        Entry removed = byId.remove(id);
+        if (removed != null)
+        {
+            idByName.remove(removed.item.getName(), id);
+        }
+    }
+
+    /**
+     * Removes every item from the catalog.
+     */
+    public void invalidateAll()
+    {
+        writes.incrementAndGet();
+        byId.clear();
+        idByName.clear();
+    }
+
+    private void reload(int id, long stamp)
+    {
+        refreshes.incrementAndGet();
+        List<Item> loaded = loadByIds.apply(List.of(id));
+        if (loaded.isEmpty())
+        {
+            invalidate(id);
+        }
+        else
+        {
+            intern(loaded.get(0), stamp);
+        }
+    }
+
+    /**
+     * Stores a freshly loaded item and returns the canonical instance: the
+     * already cached one if nothing changed, otherwise {@code loaded}. If a
+     * refresh or invalidation has started since the load read {@code stamp},
+     * the catalog is left as it is and {@code loaded} is returned.
+     */
+    private Item intern(Item loaded, long stamp)
+    {
+        long now = System.currentTimeMillis();
+        boolean[] stored = new boolean[1];
+
+        // Checked under the entry's lock, so a refresh cannot slip between the check and the put
+        Entry entry = byId.compute(loaded.getId(), (id, current) -> {
+            if (writes.get() != stamp)
+            {
+                return current;
+            }
+            stored[0] = true;
+            if (current != null
+                    && current.item.getName().equals(loaded.getName())
+                    && current.item.getPrice() == loaded.getPrice())
+            {
+                return new Entry(current.item, now);
+            }
+            return new Entry(loaded, now);
+        });
+
+        if (!stored[0])
+        {
+            return loaded;
+        }
+        idByName.put(entry.item.getName(), entry.item.getId());
+        return entry.item;
+    }
+
+    /* ===========================================================
+       METRICS
+       =========================================================== */
+
+    /** @return lookups served from memory */
+    public long getHitCount() { return hits.get(); }
+
+    /** @return items that had to be loaded from the database on lookup */
+    public long getMissCount() { return misses.get(); }
+
+    /** @return items reloaded by refresh-ahead or an explicit refresh */
+    public long getRefreshCount() { return refreshes.get(); }
+
+    /** @return number of cached items */
+    public int getSize() { return byId.size(); }
+
+    /** A cached item and when it was loaded. */
+    private static final class Entry
+    {
+        private final Item item;
+        private final long loadedAt;
+
+        private Entry(Item item, long loadedAt)
+        {
+            this.item = item;
+            this.loadedAt = loadedAt;
+        }
+    }
+}
@@ -0,0 +1,7 @@
+package com.groupthree.sims;
+
+public enum LogOverflowPolicy {
+    BLOCK,
+    DROP,
+    SPILL
+}
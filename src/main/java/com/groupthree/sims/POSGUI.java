@@ -23,12 +23,16 @@ import java.util.Date;
 public class POSGUI extends JFrame
 {
     private JTextField usernameField;
+    private JPasswordField passwordField;
     private JTextField customerField;
     private JTextField bottleTypeField;
     private JTextField quantityField;
 
     private JTextArea outputArea;
 
+    /** Session of the logged-in cashier; sales after the first skip the user lookup. */
+    private String sessionToken;
+
     /**
      * Default constructor: builds the POS screen.
      */
@@ -51,17 +55,22 @@ public class POSGUI extends JFrame
         usernameField = new JTextField();
         formPanel.add(usernameField);
 
-        // Row 2: Customer name
+        // Row 2: Password (only needed to log in; the session is reused after that)
+        formPanel.add(new JLabel("Password:"));
+        passwordField = new JPasswordField();
+        formPanel.add(passwordField);
+
+        // Row 3: Customer name
         formPanel.add(new JLabel("Customer name:"));
         customerField = new JTextField();
         formPanel.add(customerField);
 
-        // Row 3: Bottle type
+        // Row 4: Bottle type
         formPanel.add(new JLabel("Bottle type (e.g. 500ml, 1L):"));
         bottleTypeField = new JTextField();
         formPanel.add(bottleTypeField);
 
-        // Row 4: Quantity
+        // Row 5: Quantity
         formPanel.add(new JLabel("Quantity:"));
         quantityField = new JTextField();
         formPanel.add(quantityField);
@@ -107,7 +116,10 @@ public class POSGUI extends JFrame
         });
 
         clearButton.addActionListener(e -> outputArea.setText(""));
-        exitButton.addActionListener(e -> dispose());
+        exitButton.addActionListener(e -> {
+            SecuritySys.logout(sessionToken);
+            dispose();
+        });
     }
 
     public void displayScreen()
@@ -130,11 +142,11 @@ public class POSGUI extends JFrame
         Item bottle = InventorySys.getItemByName(bottleType);
         sale.addItem(bottle, quantity);
 
-        User user = SecuritySys.findUserByUsername(username);
+        User user = currentUser(username);
 
         if (user == null)
         {
-            display("User does not exist");
+            display("Invalid username or password");
             return;
         }
 
@@ -161,6 +173,25 @@ public class POSGUI extends JFrame
         }
     }
 
+    /**
+     * Returns the cashier for this sale from the session, logging in with
+     * the entered password only when there is no session for
+     * {@code username} or it has expired or been revoked.
+     */
+    private User currentUser(String username)
+    {
+        User user = SecuritySys.resolveSession(sessionToken);
+        if (user != null && user.getUsername().equals(username))
+        {
+            return user;
+        }
+
+        SecuritySys.logout(sessionToken);
+        sessionToken = SecuritySys.login(username, new String(passwordField.getPassword()));
+        passwordField.setText("");
+        return SecuritySys.resolveSession(sessionToken);
+    }
+
     private void display(String text)
     {
         outputArea.append(text + "\n");
@@ -168,6 +199,13 @@ public class POSGUI extends JFrame
 
     public static void main(String[] args)
     {
+        // Load stock levels once up front so stock checks are memory reads
+        InventorySys.warmStockCache();
+
+        // Write audit logs in the background; drain them when the JVM exits
+        HistorySys.startAsyncLogging(4096, 250, 500, LogOverflowPolicy.SPILL);
+        Runtime.getRuntime().addShutdownHook(new Thread(HistorySys::stopAsyncLogging));
+
         SwingUtilities.invokeLater(() -> {
             POSGUI gui = new POSGUI();
             gui.displayScreen();
@@ -0,0 +1,278 @@
+package com.groupthree.sims;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+
+/**
+ * Decides which {@link Capability capabilities} a user has.
+ *
+ * <p>Role-to-capability grants are compiled once into a table holding one
+ * {@code long} bit mask per {@link Role}. A check reads the mask of the
+ * user's current role from the table and tests a single bit, however many
+ * capabilities a role has. Nothing is cached per user, so a role change
+ * applies to the very next check.</p>
+ *
+ * <p>Grants come from the built-in defaults, a properties file or the
+ * {@code role_capabilities} table. Loading new grants swaps the compiled
+ * table in one step, so no check ever sees a half-updated table.</p>
+ *
+ * <p>Properties files have one entry per role, listing capability names
+ * separated by commas, or {@code *} for every capability:</p>
+ * <pre>
+ * role.ADMIN = *
+ * role.SALES = SALES_ACTIONS, ACCESS_POS_UI
+ * </pre>
+ *
+ * <p><b>Example Usage:</b></p>
+ * <pre>{@code
+ * PermissionEngine engine = PermissionEngine.withDefaults();
+ * if (engine.check(user, Capability.ACCESS_POS_UI)) {
+ *     new POSGUI().displayScreen();
+ * }
+ * }</pre>
+ */
+public class PermissionEngine
+{
+    /** Classpath resource read by {@link #fromClasspath()}. */
+    public static final String GRANTS_RESOURCE = "/permissions.properties";
+
+    /** Table read by {@link #loadFromTable()}: one row per granted capability. */
+    private static final String GRANTS_TABLE_DDL =
+            "CREATE TABLE IF NOT EXISTS role_capabilities (" +
+            "role VARCHAR(32) NOT NULL, " +
+            "capability VARCHAR(64) NOT NULL, " +
+            "PRIMARY KEY (role, capability))";
+
+    static
+    {
+        if (Capability.values().length > Long.SIZE)
+        {
+            throw new IllegalStateException("At most " + Long.SIZE + " capabilities fit in a mask.");
+        }
+    }
+
+    /** Compiled grants, indexed by {@link Role#ordinal()}; replaced as a whole, never modified. */
+    private volatile long[] roleMasks;
+
+    private PermissionEngine(Map<Role, Set<Capability>> grants)
+    {
+        this.roleMasks = compile(grants);
+    }
+
+    /* ===========================================================
+       LOADING GRANTS
+       =========================================================== */
+
+    /**
+     * @return an engine with the built-in grants, see {@link #defaultGrants()}
+     */
+    public static PermissionEngine withDefaults()
+    {
+        return new PermissionEngine(defaultGrants());
+    }
+
+    /**
+     * @return an engine with the grants of {@value #GRANTS_RESOURCE} if it
+     *         is on the classpath, otherwise the built-in grants
+     */
+    public static PermissionEngine fromClasspath()
+    {
+        try (InputStream in = PermissionEngine.class.getResourceAsStream(GRANTS_RESOURCE))
+        {
+            if (in == null)
+            {
+                return withDefaults();
+            }
+
+            Properties properties = new Properties();
+            properties.load(in);
+            return new PermissionEngine(parseGrants(properties));
+        }
+        catch (IOException e)
+        {
+            System.err.println("Failed to read " + GRANTS_RESOURCE + "; using the default permissions.");
+            e.printStackTrace();
+            return withDefaults();
+        }
+    }
+
+    /**
+     * The grants used when nothing else is configured: administrators can
+     * do everything, managers everything except administrator actions,
+     * sales staff can sell and production staff can record production.
+     */
+    public static Map<Role, Set<Capability>> defaultGrants()
+    {
+        Map<Role, Set<Capability>> grants = new EnumMap<>(Role.class);
+        grants.put(Role.ADMIN, EnumSet.allOf(Capability.class));
+        grants.put(Role.MANAGER, EnumSet.complementOf(EnumSet.of(Capability.ADMIN_ACTIONS)));
+        grants.put(Role.SALES, EnumSet.of(Capability.SALES_ACTIONS, Capability.ACCESS_POS_UI));
+        grants.put(Role.PRODUCTION, EnumSet.of(Capability.PRODUCTION_ACTIONS, Capability.ACCESS_FACTORY_UI));
+        return grants;
+    }
+
+    /**
+     * Reads grants in the {@code role.<ROLE> = CAP, CAP} format. Unknown
+     * roles and capabilities are reported and skipped; roles without an
+     * entry get no capabilities.
+     */
+    public static Map<Role, Set<Capability>> parseGrants(Properties properties)
+    {
+        Map<Role, Set<Capability>> grants = new EnumMap<>(Role.class);
+
+        for (String key : properties.stringPropertyNames())
+        {
+            if (!key.startsWith("role."))
+            {
+                continue;
+            }
+
+            Role role = parseEnum(Role.class, key.substring("role.".length()));
+            if (role == null)
+            {
+                continue;
+            }
+
+            Set<Capability> capabilities = grants.computeIfAbsent(role, r -> EnumSet.noneOf(Capability.class));
+            for (String name : properties.getProperty(key).split(","))
+            {
+                name = name.trim();
+                if (name.equals("*"))
+                {
+                    capabilities.addAll(EnumSet.allOf(Capability.class));
+                }
+                else if (!name.isEmpty())
+                {
+                    Capability capability = parseEnum(Capability.class, name);
+                    if (capability != null)
+                    {
+                        capabilities.add(capability);
+                    }
+                }
+            }
+        }
+        return grants;
+    }
+
+    /**
+     * Replaces the grants with those in the {@code role_capabilities}
+     * table, creating the table if needed. An empty table leaves the
+     * current grants in place, so a fresh database keeps the defaults.
+     *
+     * @return {@code true} if grants were loaded from the table
+     */
+    public boolean loadFromTable()
+    {
+        if (!Database.execute(GRANTS_TABLE_DDL))
+        {
+            return false;
+        }
+
+        List<Map<String, Object>> rows = Database.select("SELECT role, capability FROM role_capabilities");
+        if (rows.isEmpty())
+        {
+            return false;
+        }
+
+        Map<Role, Set<Capability>> grants = new EnumMap<>(Role.class);
+        for (Map<String, Object> row : rows)
+        {
+            Role role = parseEnum(Role.class, (String) row.get("role"));
+            Capability capability = parseEnum(Capability.class, (String) row.get("capability"));
+            if (role != null && capability != null)
+            {
+                grants.computeIfAbsent(role, r -> EnumSet.noneOf(Capability.class)).add(capability);
+            }
+        }
+
+        load(grants);
+        System.out.println("Loaded " + rows.size() + " capability grants from role_capabilities.");
+        return true;
+    }
+
+    /**
+     * Replaces every grant; the next check of any user uses the new grants.
+     */
+    public void load(Map<Role, Set<Capability>> grants)
+    {
+        roleMasks = compile(grants);
+    }
+
+    /* ===========================================================
+       CHECKS
+       =========================================================== */
+
+    /**
+     * @return {@code true} if {@code user} is active and has {@code capability}
+     */
+    public boolean check(User user, Capability capability)
+    {
+        if (user == null || !user.isActive())
+        {
+            return false;
+        }
+        return (maskOf(user) & capability.bit()) != 0;
+    }
+
+    /**
+     * @return the capability mask of {@code user}'s role
+     */
+    public long maskOf(User user)
+    {
+        return roleMask(roleMasks, user.getRole());
+    }
+
+    /**
+     * @return the capabilities granted to {@code role}
+     */
+    public Set<Capability> capabilitiesOf(Role role)
+    {
+        long mask = roleMask(roleMasks, role);
+        Set<Capability> capabilities = EnumSet.noneOf(Capability.class);
+        for (Capability capability : Capability.values())
+        {
+            if ((mask & capability.bit()) != 0)
+            {
+                capabilities.add(capability);
+            }
+        }
+        return capabilities;
+    }
+
+    private static long[] compile(Map<Role, Set<Capability>> grants)
+    {
+        long[] masks = new long[Role.values().length];
+        for (Map.Entry<Role, Set<Capability>> grant : grants.entrySet())
+        {
+            for (Capability capability : grant.getValue())
+            {
+                masks[grant.getKey().ordinal()] |= capability.bit();
+            }
+        }
+        return masks;
+    }
+
+    private static long roleMask(long[] table, Role role)
+    {
+        return role == null ? 0L : table[role.ordinal()];
+    }
+
+    private static <E extends Enum<E>> E parseEnum(Class<E> type, String name)
+    {
+        try
+        {
+            return Enum.valueOf(type, name.trim().toUpperCase());
+        }
+        catch (IllegalArgumentException | NullPointerException e)
+        {
+            System.err.println("Ignoring unknown " + type.getSimpleName() + " in permissions: " + name);
+            return null;
+        }
+    }
+}
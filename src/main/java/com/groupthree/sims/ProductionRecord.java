@@ -0,0 +1,74 @@
+package com.groupthree.sims;
+
+/**
+ * One production batch as entered on the factory floor, for use with
+ * {@link ProductionSys#recordProductionBatch(java.util.List)}.
+ */
+public class ProductionRecord
+{
+    private final String batchId;
+    private final int itemId;
+    private final int goodQty;
+    private final int defectiveQty;
+    private final int userId;
+    private final String machineId;
+
+    /**
+     * @param batchId      identifier of the production batch
+     * @param itemId       the item produced
+     * @param goodQty      units that passed inspection and go into stock
+     * @param defectiveQty units that failed inspection
+     * @param userId       the user recording the batch
+     * @param machineId    the machine that produced it, or {@code null}
+     */
+    public ProductionRecord(String batchId, int itemId, int goodQty, int defectiveQty, int userId, String machineId)
+    {
+        this.batchId = batchId;
+        this.itemId = itemId;
+        this.goodQty = goodQty;
+        this.defectiveQty = defectiveQty;
+        this.userId = userId;
+        this.machineId = machineId;
+    }
+
+    public String getBatchId()
+    {
+        return batchId;
+    }
+
+    public int getItemId()
+    {
+        return itemId;
+    }
+
+    public int getGoodQty()
+    {
+        return goodQty;
+    }
+
+    public int getDefectiveQty()
+    {
+        return defectiveQty;
+    }
+
+    public int getUserId()
+    {
+        return userId;
+    }
+
+    public String getMachineId()
+    {
+        return machineId;
+    }
+
+    /**
+     * @return the history log text for this batch
+     */
+    public String toLogDetails()
+    {
+        return "Batch " + batchId +
+                " | Item " + itemId +
+                " | Good=" + goodQty +
+                " | Defective=" + defectiveQty;
+    }
+}
@@ -1,22 +1,77 @@
 package com.groupthree.sims;
 
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
 public class ProductionSys
 {
+    // Defect-rate statistics: last 50 batches, alert above 5% (window) or 8% (EWMA)
+    // once at least 100 units are in the window
+    private static final DefectRateMonitor DEFECTS = new DefectRateMonitor(50, 0.2, 0.05, 0.08, 100);
+
+    /**
+     * @return the defect-rate monitor fed by every production and defect record
+     */
+    public static DefectRateMonitor getDefectMonitor()
+    {
+        return DEFECTS;
+    }
+
     public void recordProduction(String batchId,
                                  int itemId,
                                  int goodQty,
                                  int defectiveQty,
                                  int userId) {
 
+        recordProduction(batchId, itemId, goodQty, defectiveQty, userId, null);
+    }
+
+    /**
+     * Records a batch for a user known only by id; the user is loaded from
+     * the database. Screens with a login session should pass the session's
+     * user to {@link #recordProduction(String, int, int, int, User, String)}
+     * instead.
+     */
+    public void recordProduction(String batchId,
+                                 int itemId,
+                                 int goodQty,
+                                 int defectiveQty,
+                                 int userId,
+                                 String machineId) {
+
+        recordProduction(batchId, itemId, goodQty, defectiveQty, SecuritySys.findUserById(userId), machineId);
+    }
+
+    /**
+     * Records a batch on behalf of an already resolved user, e.g. from
+     * {@link SecuritySys#resolveSession(String)}, so no user lookup is made.
+     */
+    public void recordProduction(String batchId,
+                                 int itemId,
+                                 int goodQty,
+                                 int defectiveQty,
+                                 User user,
+                                 String machineId) {
+
         System.out.println("=== Production Recorded ===");
         System.out.println("Batch ID: " + batchId);
         System.out.println("Item ID: " + itemId);
+        System.out.println("Machine ID: " + machineId);
         System.out.println("Good Quantity: " + goodQty);
         System.out.println("Defective Quantity: " + defectiveQty);
-        System.out.println("Recorded by user: " + userId);
+        System.out.println("Recorded by user: " + (user != null ? user.getId() : null));
 
-        // Update inventory for good items
-        InventorySys.updateStock(itemId, goodQty);
+        // Add the good items to inventory; the server applies the increment,
+        // so sales of the same item running at the same time are not lost
+        int level = InventorySys.addStock(itemId, goodQty);
+        if (level < 0) {
+            System.out.println("No stock record for item " + itemId + "; inventory not updated.");
+        }
 
         // Log to history
         String details = "Batch " + batchId +
@@ -24,27 +79,138 @@ public class ProductionSys
                 " | Good=" + goodQty +
                 " | Defective=" + defectiveQty;
 
-        HistorySys.logAny(SecuritySys.findUserById(userId), "Production Recorded", details);
+        HistorySys.logAny(user, "Production Recorded", details);
 
         // check thresholds
         AlertSys.checkLowStockThreshold(itemId);
+        DEFECTS.record(itemId, machineId, goodQty + defectiveQty, defectiveQty);
 
         System.out.println("Production saved.\n");
     }
 
-    
+    /**
+     * Records many production batches at once, e.g. an end-of-shift upload.
+     *
+     * <p>Instead of the per-batch queries of
+     * {@link #recordProduction(String, int, int, int, int, String)}, the
+     * whole upload:</p>
+     * <ul>
+     *   <li>resolves every recording user with one query</li>
+     *   <li>adds the good quantities to stock with one server-side
+     *       increment covering every item</li>
+     *   <li>writes all history rows with one batch insert</li>
+     *   <li>checks the low-stock threshold once per affected item</li>
+     * </ul>
+     *
+     * <p>Stock and history are written in one transaction. Records from
+     * unknown or inactive users, or with negative quantities, are skipped.</p>
+     *
+     * @param records the batches to record
+     * @return the number of batches recorded
+     */
+    public int recordProductionBatch(List<ProductionRecord> records)
+    {
+        if (records == null || records.isEmpty()) {
+            return 0;
+        }
+
+        Set<Integer> userIds = new HashSet<>();
+        for (ProductionRecord record : records) {
+            userIds.add(record.getUserId());
+        }
+        Map<Integer, User> users = SecuritySys.findUsersByIds(userIds);
+
+        List<ProductionRecord> accepted = new ArrayList<>(records.size());
+        Map<Integer, Integer> deltas = new LinkedHashMap<>();
+        List<Integer> logUsers = new ArrayList<>(records.size());
+        List<String> logDetails = new ArrayList<>(records.size());
+
+        for (ProductionRecord record : records) {
+            User user = users.get(record.getUserId());
+            if (user == null || !user.isActive() || record.getGoodQty() < 0 || record.getDefectiveQty() < 0) {
+                System.out.println("Skipping batch " + record.getBatchId() + ": invalid user or quantities.");
+                continue;
+            }
+
+            accepted.add(record);
+            deltas.merge(record.getItemId(), record.getGoodQty(), Integer::sum);
+            logUsers.add(record.getUserId());
+            logDetails.add(record.toLogDetails());
+        }
+
+        if (accepted.isEmpty()) {
+            return 0;
+        }
+
+        try {
+            Database.inTransaction(() -> {
+                Set<Integer> updated = InventorySys.addStockBatch(deltas);
+                if (updated.size() != deltas.size()) {
+                    System.out.println("No stock record for items: " + difference(deltas.keySet(), updated));
+                }
+
+                HistorySys.logAnyBatch(logUsers, "Production Recorded", logDetails);
+                return null;
+            });
+        }
+        catch (SQLException e) {
+            System.err.println("Production upload failed; nothing was recorded.");
+            e.printStackTrace();
+            return 0;
+        }
+
+        for (ProductionRecord record : accepted) {
+            DEFECTS.record(record.getItemId(), record.getMachineId(),
+                    record.getGoodQty() + record.getDefectiveQty(), record.getDefectiveQty());
+        }
+
+        // Stock levels are in the cache after commit, so these are memory reads
+        for (Integer itemId : deltas.keySet()) {
+            AlertSys.checkLowStockThreshold(itemId);
+        }
+
+        System.out.println("Production upload saved: " + accepted.size() + " batches, "
+                + deltas.size() + " items.");
+        return accepted.size();
+    }
+
+    private static Set<Integer> difference(Set<Integer> all, Set<Integer> found)
+    {
+        Set<Integer> missing = new HashSet<>(all);
+        missing.removeAll(found);
+        return missing;
+    }
+
+    /**
+     * Records late defects for a user known only by id; the user is loaded
+     * from the database. Screens with a login session should use
+     * {@link #recordDefects(String, int, int, String, User)} instead.
+     */
     public void recordDefects(String batchId,
                               int itemId,
                               int defectiveQty,
                               String reason,
                               int userId) {
 
+        recordDefects(batchId, itemId, defectiveQty, reason, SecuritySys.findUserById(userId));
+    }
+
+    /**
+     * Records late defects on behalf of an already resolved user, so no
+     * user lookup is made.
+     */
+    public void recordDefects(String batchId,
+                              int itemId,
+                              int defectiveQty,
+                              String reason,
+                              User user) {
+
         System.out.println("=== Defect Recorded ===");
         System.out.println("Batch ID: " + batchId);
         System.out.println("Item ID: " + itemId);
         System.out.println("Defective Quantity: " + defectiveQty);
         System.out.println("Reason: " + reason);
-        System.out.println("Recorded by user: " + userId);
+        System.out.println("Recorded by user: " + (user != null ? user.getId() : null));
 
         // Log defect in history
         String details = "Batch " + batchId +
@@ -52,22 +218,11 @@ public class ProductionSys
                 " | Defective=" + defectiveQty +
                 " | Reason=" + reason;
                 
-        HistorySys.logAny(SecuritySys.findUserById(userId), "DEFECT", details);
-
-        // Get threshold from AlertSys 
-        //int threshold = AlertSys.getDefectThreshold();
-        int threshold = 10; // Example threshold
-
-        // Check if this defect count passes the threshold
-        if (defectiveQty >= threshold) {
-            String msg = "Defect threshold exceeded for item " + itemId +
-                    " in batch " + batchId +
-                    ". Defective quantity: " + defectiveQty +
-                    " (threshold: " + threshold + ")";
-            //AlertSys.sendAlert(msg);
-        } else {
-            System.out.println("Defects are below threshold (" + threshold + "). No alert sent.");
-        }
+        HistorySys.logAny(user, "DEFECT", details);
+
+        // Late defects count against the item's most recent batch; the
+        // monitor raises a DEFECT_THRESHOLD alert if the rate is now too high
+        DEFECTS.record(itemId, null, 0, defectiveQty);
 
         System.out.println("Defect saved.\n");
     }
@@ -0,0 +1,97 @@
+package com.groupthree.sims;
+
+import java.time.Duration;
+
+/**
+ * Settings for a partitioned report export, see
+ * {@link SaleSys#exportSummaryReport(java.util.Date, java.util.Date, java.nio.file.Path, ReportOptions)}.
+ *
+ * <p>The report period is split into partitions of {@link #partitionBy}
+ * length, which are queried and formatted in parallel. By default the
+ * partitions are written, in date order, into the one output file; with
+ * {@link #filePerPartition} each partition gets its own file instead.</p>
+ *
+ * <p><b>Example Usage:</b></p>
+ * <pre>{@code
+ * SaleSys.exportSummaryReport(from, to, Path.of("sales_2024_03.csv.gz"),
+ *         ReportOptions.create()
+ *                 .partitionBy(Duration.ofDays(1))
+ *                 .parallelism(4)
+ *                 .gzip(true));
+ * }</pre>
+ */
+public class ReportOptions {
+
+    private Duration partition = Duration.ofDays(1);
+    /** Zero until set, meaning the default is resolved when first asked for. */
+    private int parallelism;
+    private boolean gzip;
+    private boolean filePerPartition;
+
+    public static ReportOptions create() {
+        return new ReportOptions();
+    }
+
+    /** Length of one partition of the report period; one day by default. */
+    public ReportOptions partitionBy(Duration partition) {
+        if (partition == null || partition.isNegative() || partition.toMillis() < 1) {
+            throw new IllegalArgumentException("Partition length must be at least one millisecond.");
+        }
+        this.partition = partition;
+        return this;
+    }
+
+    /**
+     * Partitions queried at once. Defaults to the number of cores, capped
+     * at half the database connection pool so the rest of the application
+     * can still get a connection; {@code 1} exports sequentially.
+     */
+    public ReportOptions parallelism(int parallelism) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("Parallelism must be at least 1.");
+        }
+        this.parallelism = parallelism;
+        return this;
+    }
+
+    /** Compress the output with gzip while it is written. */
+    public ReportOptions gzip(boolean gzip) {
+        this.gzip = gzip;
+        return this;
+    }
+
+    /**
+     * Write each partition to its own file, named after the output file
+     * with the partition's start date appended, instead of into one file.
+     */
+    public ReportOptions filePerPartition(boolean filePerPartition) {
+        this.filePerPartition = filePerPartition;
+        return this;
+    }
+
+    public Duration getPartition() {
+        return partition;
+    }
+
+    /**
+     * @return the configured parallelism, or the default if none was set;
+     *         the default reads the database pool size, so it is only
+     *         resolved here rather than when the options are created
+     */
+    public int getParallelism() {
+        return parallelism > 0 ? parallelism : defaultParallelism();
+    }
+
+    public boolean isGzip() {
+        return gzip;
+    }
+
+    public boolean isFilePerPartition() {
+        return filePerPartition;
+    }
+
+    private static int defaultParallelism() {
+        int cores = Runtime.getRuntime().availableProcessors();
+        return Math.max(1, Math.min(cores, Database.getPool().getMaxSize() / 2));
+    }
+}
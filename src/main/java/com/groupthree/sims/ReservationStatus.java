@@ -0,0 +1,8 @@
+package com.groupthree.sims;
+
+public enum ReservationStatus {
+    RESERVED,
+    INSUFFICIENT_STOCK,
+    UNKNOWN_ITEM,
+    ERROR
+}
@@ -2,7 +2,7 @@ package com.groupthree.sims;
 
 import java.time.LocalDateTime;
 import java.util.Collections;
-import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.Map;
 
 /**
@@ -20,17 +20,31 @@ class Sale
     /** 
      * Stores the items included in the sale along with their quantities.
      * The key represents the item, and the value represents the quantity.
+     * Lines keep the order in which they were added.
      */
     private Map<Item, Integer> items;
     private String customerName;
     private LocalDateTime saleTime;
 
+    /** Primary key of the saved sales header row, or -1 if not yet saved */
+    private int id = -1;
+
     /**
      * Constructs a new, empty sale.
      */
     public Sale()
     {
-        this.items = new HashMap<>();
+        this.items = new LinkedHashMap<>();
+    }
+
+    public int getId()
+    {
+        return id;
+    }
+
+    public void setId(int id)
+    {
+        this.id = id;
     }
 
     public String getCustomerName()
@@ -64,19 +78,14 @@ class Sale
 
     /**
      * Adds an item and its quantity to the sale. If the item already exists
-     * in the sale, its quantity will be replaced with the new value.
+     * in the sale, its quantity will be replaced with the new value. A sale
+     * may contain any number of different items.
      *
      * @param item     the item being added
      * @param quantity the quantity of the item
      */
     public void addItem(Item item, int quantity)
     {
-        if (items.size() > 1)
-        {
-            System.out.println("Cannot add more than two different items to a single sale.");
-            return;
-        }
-
         items.put(item, quantity);
     }
 
@@ -164,6 +173,9 @@ class Sale
  *
  * Example output:
  * Customer: John Doe | Date: 2025-01-10 14:23 | Item: Chips | Qty: 3 | Price: 250.0 | Total: 750.0
+ *
+ * Sales with several lines list each item, quantity and price in turn,
+ * followed by the total of the whole sale.
  */
 public String toSummaryString()
 {
@@ -187,16 +199,14 @@ public String toSummaryString()
         return sb.toString();
     }
 
-    // Since your system restricts to 1 item per sale:
-    Item item = getSingleItem();
-    int qty = getSingleItemQuantity();
-    double price = item.getPrice();
-    double total = price * qty;
+    for (Map.Entry<Item, Integer> entry : items.entrySet())
+    {
+        sb.append(" | Item: ").append(entry.getKey().getName());
+        sb.append(" | Qty: ").append(entry.getValue());
+        sb.append(" | Price: ").append(entry.getKey().getPrice());
+    }
 
-    sb.append(" | Item: ").append(item.getName());
-    sb.append(" | Qty: ").append(qty);
-    sb.append(" | Price: ").append(price);
-    sb.append(" | Total: ").append(total);
+    sb.append(" | Total: ").append(getTotalAmount());
 
     return sb.toString();
 }
@@ -0,0 +1,259 @@
+package com.groupthree.sims;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Group-commit ingestion of sales from many POS terminals.
+ *
+ * <p>Instead of each till paying for its own transaction commit, sales are
+ * submitted to a bounded queue. A single committer thread drains the queue
+ * whenever {@code maxBatchSize} sales are waiting or {@code maxDelayMillis}
+ * has passed since the first one arrived, and applies the whole group (stock
+ * reservations, sale rows and history logs) in one database transaction.</p>
+ *
+ * <p>Each sale keeps its own outcome: every sale runs behind its own
+ * savepoint (see {@link SaleSys#applySale}), so an out-of-stock or failed
+ * sale is rolled back on its own without affecting the rest of the group.
+ * When the group has committed, each caller's future is completed with that
+ * sale's {@link SaleResultStatus}. If the group transaction itself fails,
+ * the sales are retried one by one with {@link SaleSys#processSale}.</p>
+ *
+ * <p>Use it through {@link SaleSys#startIngestion(int, long, int)} and
+ * {@link SaleSys#submitSale(User, String, Date, Sale)}.</p>
+ */
+public class SaleIngestionPipeline
+{
+    /** How often an idle committer checks whether it has been shut down. */
+    private static final long IDLE_POLL_MILLIS = 100;
+
+    private final int maxBatchSize;
+    private final long maxDelayMillis;
+    private final BlockingQueue<PendingSale> queue;
+    private final Thread committer;
+
+    private volatile boolean running;
+
+    /**
+     * @param maxBatchSize   most sales committed in one transaction
+     * @param maxDelayMillis longest time the first sale of a group waits for others
+     * @param queueCapacity  number of sales that may wait; submitters block when full
+     */
+    public SaleIngestionPipeline(int maxBatchSize, long maxDelayMillis, int queueCapacity)
+    {
+        if (maxBatchSize < 1 || maxDelayMillis < 0 || queueCapacity < 1)
+        {
+            throw new IllegalArgumentException("Invalid ingestion settings.");
+        }
+
+        this.maxBatchSize = maxBatchSize;
+        this.maxDelayMillis = maxDelayMillis;
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+        this.committer = new Thread(this::run, "sims-sale-committer");
+        this.committer.setDaemon(true);
+    }
+
+    /**
+     * Starts the committer thread.
+     */
+    public void start()
+    {
+        running = true;
+        committer.start();
+    }
+
+    /**
+     * Queues a sale for the next group commit.
+     *
+     * <p>The privilege check happens immediately on the caller's thread, so
+     * a user without POS access is rejected without waiting for a commit.</p>
+     *
+     * @return a future completed with the outcome of the sale once its group
+     *         has been committed
+     */
+    public CompletableFuture<SaleResultStatus> submit(User user, String customerName, Date date, Sale sale)
+    {
+        CompletableFuture<SaleResultStatus> result = new CompletableFuture<>();
+
+        SaleResultStatus denied = SaleSys.checkPrivileges(user);
+        if (denied != null)
+        {
+            result.complete(denied);
+            return result;
+        }
+
+        if (!running)
+        {
+            result.complete(SaleSys.processSale(user, customerName, date, sale));
+            return result;
+        }
+
+        try
+        {
+            queue.put(new PendingSale(user, customerName, date, sale, result));
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            result.complete(SaleResultStatus.ERROR);
+        }
+
+        return result;
+    }
+
+    /**
+     * Stops accepting sales, commits everything already queued and waits for
+     * the committer thread to finish.
+     *
+     * <p>The committer notices the cleared flag within
+     * {@value #IDLE_POLL_MILLIS} ms. It is deliberately not interrupted: an
+     * interrupt that lands during a commit would stay set and make every
+     * later connection borrow fail.</p>
+     */
+    public void shutdown()
+    {
+        running = false;
+
+        try
+        {
+            committer.join();
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+        }
+
+        // Sales queued while the committer was exiting are processed directly.
+        PendingSale late;
+        while ((late = queue.poll()) != null)
+        {
+            late.result.complete(SaleSys.processSale(late.user, late.customerName, late.date, late.sale));
+        }
+    }
+
+    /** @return number of sales waiting for the next group commit */
+    public int getQueueDepth()
+    {
+        return queue.size();
+    }
+
+    /* ===========================================================
+       COMMITTER
+       =========================================================== */
+
+    private void run()
+    {
+        List<PendingSale> group = new ArrayList<>(maxBatchSize);
+
+        while (running || !queue.isEmpty())
+        {
+            try
+            {
+                collectGroup(group);
+            }
+            catch (InterruptedException e)
+            {
+                // Not expected; the exception has cleared the flag, so commit what was collected.
+            }
+
+            if (!group.isEmpty())
+            {
+                commitGroup(group);
+                group.clear();
+            }
+        }
+    }
+
+    /**
+     * Waits for the first sale, then keeps collecting until the group is
+     * full or the delay since the first sale has passed. Returns with an
+     * empty group if no sale arrives within {@value #IDLE_POLL_MILLIS} ms.
+     */
+    private void collectGroup(List<PendingSale> group) throws InterruptedException
+    {
+        PendingSale first = running ? queue.poll(IDLE_POLL_MILLIS, TimeUnit.MILLISECONDS) : queue.poll();
+        if (first == null)
+        {
+            return;
+        }
+        group.add(first);
+
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(maxDelayMillis);
+        while (group.size() < maxBatchSize)
+        {
+            queue.drainTo(group, maxBatchSize - group.size());
+            long remaining = deadline - System.nanoTime();
+            if (group.size() >= maxBatchSize || remaining <= 0)
+            {
+                break;
+            }
+
+            PendingSale next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+            if (next == null)
+            {
+                break;
+            }
+            group.add(next);
+        }
+    }
+
+    private void commitGroup(List<PendingSale> group)
+    {
+        SaleSys.ensureSchema();
+
+        try
+        {
+            SaleResultStatus[] results = Database.inTransaction(() -> {
+                SaleResultStatus[] statuses = new SaleResultStatus[group.size()];
+                for (int i = 0; i < group.size(); i++)
+                {
+                    PendingSale pending = group.get(i);
+                    statuses[i] = SaleSys.applySale(pending.user, pending.customerName, pending.sale);
+                }
+                return statuses;
+            });
+
+            System.out.println("Group commit: " + group.size() + " sales in one transaction.");
+            for (int i = 0; i < group.size(); i++)
+            {
+                group.get(i).result.complete(results[i]);
+            }
+        }
+        catch (SQLException | RuntimeException e)
+        {
+            System.err.println("Group commit failed; processing " + group.size() + " sales individually.");
+            e.printStackTrace();
+
+            for (PendingSale pending : group)
+            {
+                pending.result.complete(SaleSys.processSale(pending.user, pending.customerName, pending.date, pending.sale));
+            }
+        }
+    }
+
+    /** A submitted sale waiting for its group to commit. */
+    private static final class PendingSale
+    {
+        private final User user;
+        private final String customerName;
+        private final Date date;
+        private final Sale sale;
+        private final CompletableFuture<SaleResultStatus> result;
+
+        private PendingSale(User user, String customerName, Date date, Sale sale,
+                            CompletableFuture<SaleResultStatus> result)
+        {
+            this.user = user;
+            this.customerName = customerName;
+            this.date = date;
+            this.sale = sale;
+            this.result = result;
+        }
+    }
+}
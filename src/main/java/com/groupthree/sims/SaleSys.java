@@ -2,13 +2,22 @@ package com.groupthree.sims;
 
 import java.io.IOException;
 import java.nio.file.Path;
+import java.sql.SQLException;
+import java.sql.Savepoint;
 import java.sql.Timestamp;
+import java.time.Duration;
 import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Stream;
 
 /**
  * Coordinates the processing of sales within the SIMS application.
@@ -20,20 +29,115 @@ import java.util.Map;
  */
 public class SaleSys
 {
+    /** Child table holding one row per line of a sale. */
+    private static final String SALE_LINES_DDL =
+            "CREATE TABLE IF NOT EXISTS sale_lines (" +
+            "id INT AUTO_INCREMENT PRIMARY KEY, " +
+            "sale_id INT NOT NULL, " +
+            "item_id INT NOT NULL, " +
+            "quantity INT NOT NULL, " +
+            "unit_price DOUBLE NOT NULL, " +
+            "INDEX idx_sale_lines_sale (sale_id))";
+
+    private static volatile boolean schemaReady;
+
+    /**
+     * Creates the {@code sale_lines} table the first time it is needed.
+     * Runs outside any transaction because MySQL commits around DDL.
+     */
+    static void ensureSchema()
+    {
+        if (!schemaReady)
+        {
+            // The date index serves both the whole-range and the partitioned report queries
+            schemaReady = Database.execute(SALE_LINES_DDL)
+                    && Database.ensureIndex("sales", "idx_sales_sale_date", "sale_date", "id");
+        }
+    }
+
+    private static volatile SaleIngestionPipeline ingestion;
+
+    /**
+     * Switches on group-commit ingestion for {@link #submitSale}.
+     *
+     * <p>Sales submitted while ingestion is running are queued and committed
+     * in groups of up to {@code maxBatchSize}, at least every
+     * {@code maxDelayMillis} milliseconds, so many terminals share each
+     * database commit. See {@link SaleIngestionPipeline}.</p>
+     *
+     * <p><b>Example Usage:</b></p>
+     * <pre>{@code
+     * SaleSys.startIngestion(50, 5, 1000);
+     * SaleResultStatus status = SaleSys.submitSale(user, "Walk-in", new Date(), sale).join();
+     * }</pre>
+     *
+     * @param maxBatchSize   most sales committed in one transaction
+     * @param maxDelayMillis longest time a sale waits for others to join its group
+     * @param queueCapacity  number of sales that may wait before submitters block
+     */
+    public static synchronized void startIngestion(int maxBatchSize, long maxDelayMillis, int queueCapacity)
+    {
+        if (ingestion != null)
+        {
+            return;
+        }
+
+        SaleIngestionPipeline pipeline = new SaleIngestionPipeline(maxBatchSize, maxDelayMillis, queueCapacity);
+        pipeline.start();
+        ingestion = pipeline;
+    }
+
+    /**
+     * Commits all queued sales and switches group-commit ingestion off.
+     */
+    public static synchronized void stopIngestion()
+    {
+        if (ingestion != null)
+        {
+            ingestion.shutdown();
+            ingestion = null;
+        }
+    }
+
+    /**
+     * Submits a sale for processing.
+     *
+     * <p>When ingestion has been started with
+     * {@link #startIngestion(int, long, int)}, the sale joins the next group
+     * commit and the returned future completes once that group has been
+     * written. Otherwise the sale is processed immediately with
+     * {@link #processSale} and the future is already complete.</p>
+     *
+     * @return a future completed with the outcome of this sale
+     */
+    public static CompletableFuture<SaleResultStatus> submitSale(User user, String customerName, Date date, Sale sale)
+    {
+        SaleIngestionPipeline pipeline = ingestion;
+        if (pipeline == null)
+        {
+            return CompletableFuture.completedFuture(processSale(user, customerName, date, sale));
+        }
+        return pipeline.submit(user, customerName, date, sale);
+    }
+
     /**
      * Processes a sale for the specified customer on the given date.
      *
      * <p>The method performs the following steps:</p>
      * <ol>
-     *     <li>Validates the sale using {@link #validateSale(Sale)}.</li>
-     *     <li>If validation succeeds, reduces stock for each item in the sale
-     *         by updating the inventory system.</li>
-     *     <li>Records the sale in the history and database modules (to be
-     *         implemented).</li>
+     *     <li>Reserves stock for every item in the sale using
+     *         {@link InventorySys#reserveStock(Sale)}, which checks and
+     *         decrements each line atomically.</li>
+     *     <li>Records the sale in the history and database modules.</li>
      * </ol>
      *
-     * <p>If validation fails, the method returns {@code false} and no changes
-     * are made to inventory.</p>
+     * <p>The stock updates, history entry and sale record are written in a
+     * single database transaction (see {@link Database#inTransaction}): they
+     * are committed together, or not at all if any step fails.</p>
+     *
+     * <p>If any item is short, the method returns
+     * {@link SaleResultStatus#OUT_OF_STOCK} and no changes are made to
+     * inventory.</p>
      *
      * @param customerName the name of the customer making the purchase
      * @param date         the date of the sale
@@ -45,6 +149,32 @@ public class SaleSys
     {
         System.out.println("Processing sale...");
 
+        SaleResultStatus denied = checkPrivileges(user);
+        if (denied != null)
+        {
+            return denied;
+        }
+
+        ensureSchema();
+
+        try
+        {
+            return Database.inTransaction(() -> applySale(user, customerName, sale));
+        }
+        catch (Exception e)
+        {
+            e.printStackTrace();
+            return SaleResultStatus.ERROR;
+        }
+    }
+
+    /**
+     * Checks that the user may record sales.
+     *
+     * @return {@link SaleResultStatus#NO_PRIVILEGE} if not, otherwise {@code null}
+     */
+    static SaleResultStatus checkPrivileges(User user)
+    {
         // Check for user role / privileges
         if (user == null || !user.isActive())
         {
@@ -58,51 +188,101 @@ public class SaleSys
             return SaleResultStatus.NO_PRIVILEGE;
         }
 
-        // check for stock availability
-        if (!validateSale(sale))
+        return null;
+    }
+
+    /**
+     * Applies one sale inside the current transaction: reserves its stock,
+     * records it in the history module and saves it.
+     *
+     * <p>Everything the sale wrote is rolled back to a savepoint if it cannot
+     * complete, so other work in the same transaction (such as the other
+     * sales of a group commit) is unaffected. A deadlock or lock-wait
+     * timeout is thrown instead, so the caller's
+     * {@link Database#inTransaction} retries the whole transaction.</p>
+     */
+    static SaleResultStatus applySale(User user, String customerName, Sale sale) throws SQLException
+    {
+        Savepoint start = Database.setSavepoint("sale");
+
+        sale.completeSale();
+        if (sale.getCustomerName() == null)
         {
-            System.out.println("Sale validation failed. Cannot process sale.");
-            return SaleResultStatus.OUT_OF_STOCK;
+            sale.setCustomerName(customerName);
         }
 
-        try
+        // check and reduce stock in one step
+        StockReservation reservation = InventorySys.reserveStock(sale);
+        if (!reservation.isSuccessful())
         {
-            // reduce stock
-            for (Map.Entry<Item, Integer> entry : sale.getItems().entrySet())
-            {
-                Item item = entry.getKey();
-                int quantity = entry.getValue();
-
-                InventorySys.reduceStock(item.getName(), quantity);
-            }
-
-            // record sale in history module
-            HistorySys.logSales(user, sale);
+            System.out.println("Sale validation failed. Cannot process sale. " + reservation);
+            Database.rollbackToSavepoint(start);
+            return reservation.hasErrors() ? SaleResultStatus.ERROR : SaleResultStatus.OUT_OF_STOCK;
+        }
 
-            //Add sale to the database
-            saveSaleToDatabase(sale);
+        // record sale in history module
+        HistorySys.logSales(user, sale);
 
-            System.out.println("Sale processed");
-            sale.completeSale();
+        //Add sale to the database
+        saveSaleToDatabase(sale);
 
-            return SaleResultStatus.SUCCESS;
-        }
-        catch (Exception e)
+        // A deadlock or lock-wait timeout is rethrown here, so the whole transaction is retried
+        Database.rethrowRetryableFailure();
+        if (Database.hasFailedStatement())
         {
-            e.printStackTrace();
+            System.out.println("Sale could not be saved; rolling it back.");
+            Database.rollbackToSavepoint(start);
             return SaleResultStatus.ERROR;
         }
+
+        Database.releaseSavepoint(start);
+        System.out.println("Sale processed");
+        return SaleResultStatus.SUCCESS;
     }
 
+    /**
+     * Writes the sale as one {@code sales} header row plus one
+     * {@code sale_lines} row per item. The lines are sent as a single batch,
+     * so the whole sale costs two round trips however many lines it has.
+     * Must run inside the sale transaction.
+     *
+     * <p>The header's legacy {@code item_id} and {@code quantity} columns
+     * are still filled from the first line, since existing schemas declare
+     * them {@code NOT NULL}; reports read the lines whenever there are any.</p>
+     */
     private static void saveSaleToDatabase(Sale sale)
     {
-        Map<String, Object> values = new HashMap<>();
-        values.put("customer_name", sale.getCustomerName());
-        values.put("sale_date", java.sql.Timestamp.valueOf(sale.getSaleTime()));
-        values.put("item_id", sale.getSingleItem().getId());
-        values.put("quantity", sale.getSingleItemQuantity());
+        Map<String, Object> header = new HashMap<>();
+        header.put("customer_name", sale.getCustomerName());
+        header.put("sale_date", java.sql.Timestamp.valueOf(sale.getSaleTime()));
+
+        if (!sale.getItems().isEmpty())
+        {
+            Map.Entry<Item, Integer> firstLine = sale.getItems().entrySet().iterator().next();
+            header.put("item_id", firstLine.getKey().getId());
+            header.put("quantity", firstLine.getValue());
+        }
+
+        int saleId = Database.insertWithPk("sales", header);
+        if (saleId <= 0)
+        {
+            // insertWithPk has recorded the failure, so the transaction rolls back
+            return;
+        }
+        sale.setId(saleId);
 
-        Database.insert("sales", null);
+        List<Map<String, Object>> lines = new ArrayList<>();
+        for (Map.Entry<Item, Integer> entry : sale.getItems().entrySet())
+        {
+            Map<String, Object> line = new HashMap<>();
+            line.put("sale_id", saleId);
+            line.put("item_id", entry.getKey().getId());
+            line.put("quantity", entry.getValue());
+            line.put("unit_price", entry.getKey().getPrice());
+            lines.add(line);
+        }
+
+        Database.insertBatch("sale_lines", lines);
     }
 
     /**
@@ -136,14 +316,8 @@ public class SaleSys
     /**
      * Exports a summary report of sales within the specified date range.
      *
-     * <p>The method retrieves all sales between {@code startDate} and
-     * {@code endDate} using {@link #getSalesHistory(Date, Date)} and then
-     * delegates the actual report creation to the Exporter module
-     * (to be implemented).</p>
-     *
-     * <p>The summary report may include information such as total sales
-     * amount, number of transactions, and breakdowns by item or category,
-     * depending on the final reporting requirements.</p>
+     * <p>The report is written to {@code sales_report.csv} on the user's
+     * Desktop; see {@link #exportSummaryReport(Date, Date, Path)}.</p>
      *
      * <p><b>Example Usage:</b></p>
      * <pre>{@code
@@ -155,40 +329,269 @@ public class SaleSys
      *
      * @param startDate the beginning of the period for which the report is generated
      * @param endDate   the end of the period for which the report is generated
+     * @return {@code true} if the report was written
      */
     public static boolean exportSummaryReport(Date startDate, Date endDate)
     {
-        System.out.println("Exporting summary report...");
-        List<Sale> sales = getSalesHistory(startDate, endDate);
-        List<String> saleStrings = new ArrayList<>();
-
-        for (Sale sale : sales)
-        {
-            saleStrings.add(sale.toSummaryString());
-        }
-
-        // 3. Path to Desktop
+        // Path to Desktop
         Path outputFile = Path.of(
                 System.getProperty("user.home"),
                 "Desktop",
                 "sales_report.csv"
         );
 
-        //Use the Exporter module to create the report
-        List<String> headers = List.of("Sale Summary");
+        return exportSummaryReport(startDate, endDate, outputFile);
+    }
+
+    /** Columns of the sales summary report. */
+    static final List<String> REPORT_HEADERS =
+            List.of("Date", "Customer", "Item", "Quantity", "Unit Price", "Line Total");
 
+    /**
+     * One row per sale line, with everything the report needs joined in, so
+     * rows can be written as they arrive from the cursor.
+     */
+    private static final String REPORT_SELECT =
+            "SELECT s.id, s.sale_date, s.customer_name, i.name AS item_name, " +
+            "COALESCE(l.quantity, s.quantity) AS quantity, " +
+            "COALESCE(l.unit_price, i.price) AS unit_price " +
+            "FROM sales s " +
+            "LEFT JOIN sale_lines l ON l.sale_id = s.id " +
+            "LEFT JOIN Items i ON i.id = COALESCE(l.item_id, s.item_id) ";
+
+    private static final String REPORT_ORDER = " ORDER BY s.sale_date ASC, s.id ASC, l.id ASC";
+
+    static final String REPORT_SQL = REPORT_SELECT + "WHERE s.sale_date BETWEEN ? AND ?" + REPORT_ORDER;
+
+    /**
+     * The report for one partition of the period, excluding its end so that
+     * neighbouring partitions never share a row.
+     */
+    static final String REPORT_PARTITION_SQL =
+            REPORT_SELECT + "WHERE s.sale_date >= ? AND s.sale_date < ?" + REPORT_ORDER;
+
+    static final DateTimeFormatter REPORT_DATE_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+
+    /** Partition start in per-partition file names, for whole-day and shorter partitions. */
+    private static final DateTimeFormatter PARTITION_DAY_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd");
+    private static final DateTimeFormatter PARTITION_TIME_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH-mm-ss");
+
+    /**
+     * Exports the sales summary report for a period to the given file.
+     *
+     * <p>Sale lines are streamed from a database cursor straight into the
+     * CSV file, one row per line with real columns: date, customer, item,
+     * quantity, unit price and line total. Nothing is collected in memory,
+     * so memory use does not grow with the size of the report.</p>
+     *
+     * @param startDate  the beginning of the period
+     * @param endDate    the end of the period
+     * @param outputFile the CSV file to write
+     * @return {@code true} if the report was written
+     */
+    public static boolean exportSummaryReport(Date startDate, Date endDate, Path outputFile)
+    {
+        System.out.println("Exporting summary report...");
+        ensureSchema();
+
+        List<Object> params = List.of(
+                new Timestamp(startDate.getTime()),
+                new Timestamp(endDate.getTime())
+        );
+
+        try
+        {
+            long rows = CsvExporter.writeCsv(outputFile, REPORT_HEADERS,
+                    Database.stream(REPORT_SQL, params), SaleSys::writeReportRow);
+
+            System.out.println("Report exported to: " + outputFile.toAbsolutePath() + " (" + rows + " lines)");
+            return true;
+        }
+        catch (IOException | RuntimeException e)
+        {
+            System.err.println("Failed to export CSV");
+            e.printStackTrace();
+            return false;
+        }
+    }
+
+    /**
+     * Exports the sales summary report for a period, querying and formatting
+     * it in parallel partitions.
+     *
+     * <p>The period is split into partitions of
+     * {@link ReportOptions#getPartition()} length (a day by default). Up to
+     * {@link ReportOptions#getParallelism()} partitions are streamed from
+     * the database and formatted at once on a dedicated fork-join pool,
+     * each on its own pooled connection. Partitions never overlap and each
+     * is ordered, so when they are written into one file, in date order,
+     * the result is byte-for-byte the same as
+     * {@link #exportSummaryReport(Date, Date, Path)}.</p>
+     *
+     * <p>With {@link ReportOptions#filePerPartition(boolean)} each partition
+     * is written, with its own header row, to a file named after
+     * {@code outputFile} plus the partition's start, e.g.
+     * {@code sales_report_2024-03-01.csv}. With
+     * {@link ReportOptions#gzip(boolean)} output is compressed as it is
+     * written.</p>
+     *
+     * <p><b>Example Usage:</b></p>
+     * <pre>{@code
+     * SaleSys.exportSummaryReport(monthStart, monthEnd, Path.of("sales_march.csv.gz"),
+     *         ReportOptions.create().gzip(true));
+     * }</pre>
+     *
+     * @param startDate  the beginning of the period
+     * @param endDate    the end of the period
+     * @param outputFile the CSV file to write, or the name pattern for per-partition files
+     * @param options    partitioning, parallelism and output settings
+     * @return {@code true} if the report was written
+     */
+    public static boolean exportSummaryReport(Date startDate, Date endDate, Path outputFile, ReportOptions options)
+    {
+        System.out.println("Exporting summary report in partitions...");
+        ensureSchema();
+
+        List<ReportPartition> partitions = partitionReport(
+                new Timestamp(startDate.getTime()).toLocalDateTime(),
+                new Timestamp(endDate.getTime()).toLocalDateTime(),
+                options.getPartition());
+
+        ForkJoinPool pool = new ForkJoinPool(options.getParallelism());
         try
         {
-            CsvExporter.writeCsv(outputFile, saleStrings, headers);
-            System.out.println("Report exported to: " + outputFile.toAbsolutePath());
+            long rows;
+            if (options.isFilePerPartition())
+            {
+                rows = CsvExporter.writeCsvPerPartition(REPORT_HEADERS, partitions,
+                        p -> partitionFile(outputFile, p, options),
+                        ReportPartition::open, SaleSys::writeReportRow, pool, options.isGzip());
+            }
+            else
+            {
+                rows = CsvExporter.writeCsvPartitioned(outputFile, REPORT_HEADERS, partitions,
+                        ReportPartition::open, SaleSys::writeReportRow, pool, options.isGzip());
+            }
+
+            System.out.println("Report exported to: " + outputFile.toAbsolutePath() + " (" + rows + " lines, "
+                    + partitions.size() + " partitions)");
             return true;
         }
-        catch (IOException e)
+        catch (IOException | RuntimeException e)
         {
             System.err.println("Failed to export CSV");
             e.printStackTrace();
             return false;
         }
+        finally
+        {
+            pool.shutdownNow();
+        }
+    }
+
+    /**
+     * Splits {@code [from, to]} into consecutive partitions of the given
+     * length. Only the last partition includes its end.
+     */
+    static List<ReportPartition> partitionReport(LocalDateTime from, LocalDateTime to, Duration length)
+    {
+        List<ReportPartition> partitions = new ArrayList<>();
+        LocalDateTime start = from;
+        while (!start.isAfter(to))
+        {
+            LocalDateTime end = start.plus(length);
+            if (!end.isBefore(to))
+            {
+                partitions.add(new ReportPartition(start, to, true));
+                break;
+            }
+            partitions.add(new ReportPartition(start, end, false));
+            start = end;
+        }
+        return partitions;
+    }
+
+    /**
+     * The file a partition is written to when exporting one file per
+     * partition: the output file name with the partition start appended
+     * before the extension.
+     */
+    private static Path partitionFile(Path outputFile, ReportPartition partition, ReportOptions options)
+    {
+        String name = outputFile.getFileName().toString();
+        String base = name.replaceFirst("(\\.csv)?(\\.gz)?$", "");
+
+        boolean wholeDays = options.getPartition().toSeconds() % Duration.ofDays(1).toSeconds() == 0
+                && options.getPartition().toNanosPart() == 0;
+        String label = (wholeDays ? PARTITION_DAY_FORMAT : PARTITION_TIME_FORMAT).format(partition.from);
+
+        return outputFile.resolveSibling(base + "_" + label + ".csv" + (options.isGzip() ? ".gz" : ""));
+    }
+
+    /**
+     * One slice of the report period: {@code [from, to)}, or
+     * {@code [from, to]} for the last slice.
+     */
+    static final class ReportPartition
+    {
+        final LocalDateTime from;
+        final LocalDateTime to;
+        final boolean last;
+
+        ReportPartition(LocalDateTime from, LocalDateTime to, boolean last)
+        {
+            this.from = from;
+            this.to = to;
+            this.last = last;
+        }
+
+        /** Streams the report rows of this partition; the stream must be closed. */
+        Stream<Map<String, Object>> open()
+        {
+            return Database.stream(last ? REPORT_SQL : REPORT_PARTITION_SQL,
+                    List.of(Timestamp.valueOf(from), Timestamp.valueOf(to)));
+        }
+    }
+
+    /**
+     * Writes the columns of one sale line of the summary report.
+     */
+    static void writeReportRow(Map<String, Object> row, CsvWriter csv) throws IOException
+    {
+        Timestamp date = (Timestamp) row.get("sale_date");
+        Number quantity = (Number) row.get("quantity");
+        Number unitPrice = (Number) row.get("unit_price");
+
+        csv.writeField(date != null ? REPORT_DATE_FORMAT.format(date.toLocalDateTime()) : null);
+        csv.writeField((String) row.get("customer_name"));
+        csv.writeField((String) row.get("item_name"));
+
+        if (quantity != null)
+        {
+            csv.writeField(quantity.longValue());
+        }
+        else
+        {
+            csv.writeEmpty();
+        }
+
+        if (unitPrice != null)
+        {
+            csv.writeField(unitPrice.doubleValue(), 2);
+        }
+        else
+        {
+            csv.writeEmpty();
+        }
+
+        if (quantity != null && unitPrice != null)
+        {
+            csv.writeField(quantity.longValue() * unitPrice.doubleValue(), 2);
+        }
+        else
+        {
+            csv.writeEmpty();
+        }
     }
 
     /**
@@ -207,43 +610,76 @@ public class SaleSys
     {
         System.out.println("Retrieving sales history...");
 
-        String sql = "SELECT id, customer_name, sale_date, item_id, quantity " +
-                     "FROM sales " +
-                     "WHERE sale_date BETWEEN ? AND ? " +
-                     "ORDER BY sale_date ASC";
+        // Sales saved before sale_lines existed keep their single item on the header row
+        String sql = "SELECT s.id, s.customer_name, s.sale_date, " +
+                     "COALESCE(l.item_id, s.item_id) AS item_id, " +
+                     "COALESCE(l.quantity, s.quantity) AS quantity, " +
+                     "l.unit_price " +
+                     "FROM sales s LEFT JOIN sale_lines l ON l.sale_id = s.id " +
+                     "WHERE s.sale_date BETWEEN ? AND ? " +
+                     "ORDER BY s.sale_date ASC, s.id ASC, l.id ASC";
 
         List<Object> params = List.of(
                 new Timestamp(startDate.getTime()),
                 new Timestamp(endDate.getTime())
         );
 
-        List<Map<String, Object>> sales = Database.select(sql, params);
+        List<Map<String, Object>> rows = Database.select(sql, params);
         List<Sale> formattedSales = new ArrayList<>();
 
-        for(Map<String, Object> row : sales)
+        // Resolve every item up front with one bulk lookup instead of one query per row
+        Set<Integer> itemIds = new HashSet<>();
+        for (Map<String, Object> row : rows)
         {
-            String customerName = (String) row.get("customer_name");
-            Timestamp ts = (Timestamp) row.get("sale_date");
-            LocalDateTime saleTime = ts != null ? ts.toLocalDateTime() : null;
+            if (row.get("item_id") != null)
+            {
+                itemIds.add(((Number) row.get("item_id")).intValue());
+            }
+        }
+        Map<Integer, Item> items = InventorySys.getItemsByIds(itemIds);
 
-            int itemId = ((Number) row.get("item_id")).intValue();
-            int quantity = ((Number) row.get("quantity")).intValue();
+        Sale current = null;
+        for (Map<String, Object> row : rows)
+        {
+            int saleId = ((Number) row.get("id")).intValue();
 
-            Sale tempSale = new Sale();
-            tempSale.setCustomerName(customerName);
-            tempSale.setSaleTime(saleTime);
+            if (current == null || current.getId() != saleId)
+            {
+                Timestamp ts = (Timestamp) row.get("sale_date");
 
-            Item saleItem = InventorySys.getItemById(itemId);
+                current = new Sale();
+                current.setId(saleId);
+                current.setCustomerName((String) row.get("customer_name"));
+                current.setSaleTime(ts != null ? ts.toLocalDateTime() : null);
+                formattedSales.add(current);
+            }
 
-            if (saleItem != null)
-                tempSale.addItem(saleItem, quantity);
-            else
+            if (row.get("item_id") == null)
+            {
+                continue;
+            }
+
+            int itemId = ((Number) row.get("item_id")).intValue();
+            int quantity = ((Number) row.get("quantity")).intValue();
+            Item saleItem = items.get(itemId);
+
+            if (saleItem == null)
+            {
                 System.out.println("Warning: no item found for id " + itemId);
+                continue;
+            }
+
+            // Report the price charged at the time of sale if it has changed since
+            Object unitPrice = row.get("unit_price");
+            if (unitPrice != null && ((Number) unitPrice).doubleValue() != saleItem.getPrice())
+            {
+                saleItem = new Item(itemId, saleItem.getName(), ((Number) unitPrice).doubleValue());
+            }
 
-            formattedSales.add(tempSale);
+            current.addItem(saleItem, quantity);
         }
 
         System.out.println("Sales history retrieved");
         return formattedSales;
     }
-}
\ No newline at end of file
+}
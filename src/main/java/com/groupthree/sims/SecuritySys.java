@@ -1,11 +1,19 @@
 package com.groupthree.sims;
 
+import java.security.SecureRandom;
 import java.sql.Timestamp;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collection;
 import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * SecuritySys handles all user authentication, authorization,
@@ -15,11 +23,40 @@ import java.util.Map;
  *
  * Responsibilities:
  *  - Create, update, and delete user accounts in the database
- *  - Authenticate login attempts
+ *  - Authenticate login attempts and keep login sessions in memory
  *  - Enforce role-based access control for UI components
  */
 public class SecuritySys {
 
+    /** Compiled role grants. */
+    private static final PermissionEngine PERMISSIONS = PermissionEngine.fromClasspath();
+
+    /** Sessions last one shift by default. */
+    private static final long DEFAULT_SESSION_TTL_MILLIS = 8 * 60 * 60 * 1000L;
+
+    /**
+     * How long a session trusts its copy of the user before reading the
+     * account again, so changes made by another process end the session
+     * within this time.
+     */
+    private static final long SESSION_RECHECK_MILLIS = 30 * 1000L;
+
+    /** Random bytes in a session token. */
+    private static final int SESSION_TOKEN_BYTES = 32;
+
+    private static final SecureRandom TOKEN_RANDOM = new SecureRandom();
+
+    private static volatile long sessionTtlMillis = DEFAULT_SESSION_TTL_MILLIS;
+
+    /** Live sessions by token. */
+    private static final ConcurrentHashMap<String, Session> SESSIONS = new ConcurrentHashMap<>();
+
+    /** Session tokens of each logged-in user, so their sessions can be ended together. */
+    private static final ConcurrentHashMap<Integer, Set<String>> SESSIONS_BY_USER = new ConcurrentHashMap<>();
+
+    /** Bumped on every invalidation; lets a login detect that it raced with one. */
+    private static final AtomicLong SESSION_GENERATION = new AtomicLong();
+
     /**
      * Creates a SecuritySys using the database as the backing store.
      */
@@ -89,27 +126,53 @@ public class SecuritySys {
     public static User findUserByUsername(String username) {
         if (username == null || username.isEmpty()) return null;
 
-        String escaped = escapeSql(username);
-        String sql = "SELECT * FROM users WHERE username = '" + escaped + "' LIMIT 1";
+        String sql = "SELECT * FROM users WHERE username = ? LIMIT 1";
 
-        List<Map<String, Object>> rows = Database.select(sql);
+        List<Map<String, Object>> rows = Database.select(sql, List.of(username));
         if (rows.isEmpty()) return null;
 
         return mapRowToUser(rows.get(0));
     }
 
     /**
-     * Loads a single user by ID from the database.
+     * Loads a single user by ID.
      */
     public static User findUserById(int id) {
-        String sql = "SELECT * FROM users WHERE id = " + id + " LIMIT 1";
+        String sql = "SELECT * FROM users WHERE id = ? LIMIT 1";
 
-        List<Map<String, Object>> rows = Database.select(sql);
+        List<Map<String, Object>> rows = Database.select(sql, List.of(id));
         if (rows.isEmpty()) return null;
 
         return mapRowToUser(rows.get(0));
     }
 
+    /**
+     * Loads many users by ID with a single query.
+     *
+     * @param ids the user IDs to load; duplicates and nulls are ignored
+     * @return a map from ID to user; IDs that do not exist are absent
+     */
+    public static Map<Integer, User> findUsersByIds(Collection<Integer> ids) {
+        Map<Integer, User> users = new HashMap<>();
+
+        Set<Integer> distinct = new LinkedHashSet<>(ids);
+        distinct.remove(null);
+        if (distinct.isEmpty()) return users;
+
+        StringBuilder sql = new StringBuilder("SELECT * FROM users WHERE id IN (");
+        for (int i = 0; i < distinct.size(); i++) {
+            sql.append(i == 0 ? "?" : ", ?");
+        }
+        sql.append(")");
+
+        for (Map<String, Object> row : Database.select(sql.toString(), new ArrayList<>(distinct))) {
+            User u = mapRowToUser(row);
+            if (u != null) users.put(u.getId(), u);
+        }
+
+        return users;
+    }
+
     /**
      * Updates the last_login_at column in the database.
      */
@@ -160,6 +223,7 @@ public class SecuritySys {
     public static boolean deleteUserByUsername(String username) {
         String escaped = escapeSql(username);
         int rows = Database.delete("users", "username = '" + escaped + "'");
+        invalidateSessions(username);
         return rows > 0;
     }
 
@@ -168,39 +232,46 @@ public class SecuritySys {
      */
     public static boolean deleteUserById(int userId) {
         int rows = Database.delete("users", "id = " + userId);
+        invalidateSessions(userId);
         return rows > 0;
     }
 
     /**
-     * Marks a user account as inactive (soft delete).
+     * Marks a user account as inactive (soft delete). The user's sessions
+     * end immediately.
      */
     public static boolean deactivateUser(int userId) {
         Map<String, Object> values = new HashMap<>();
         values.put("active", false);
 
         int rows = Database.update("users", values, "id = " + userId);
+        // After the write, so a login racing with it cannot keep the old account data
+        invalidateSessions(userId);
         return rows > 0;
     }
 
     /**
-     * Updates a user's password.
+     * Updates a user's password. The user's sessions end immediately.
      */
     public static boolean changePassword(int userId, String newPassword) {
         Map<String, Object> values = new HashMap<>();
         values.put("password", newPassword);
 
         int rows = Database.update("users", values, "id = " + userId);
+        invalidateSessions(userId);
         return rows > 0;
     }
 
     /**
-     * Assigns a new role to the selected user.
+     * Assigns a new role to the selected user. The user's sessions end
+     * immediately, so the new role applies from the next login.
      */
     public static boolean updateUserRole(int userId, Role newRole) {
         Map<String, Object> values = new HashMap<>();
         values.put("role", newRole.name());
 
         int rows = Database.update("users", values, "id = " + userId);
+        invalidateSessions(userId);
         return rows > 0;
     }
 
@@ -256,28 +327,236 @@ public class SecuritySys {
         return user;
     }
 
+    /* ===========================================================
+       SESSIONS
+       =========================================================== */
+
+    /**
+     * Authenticates a user and starts a session for them.
+     *
+     * <p>The returned token is an opaque random string. Screens keep it and
+     * call {@link #resolveSession(String)} on every action instead of
+     * loading the user again, so the hot paths issue at most one user query
+     * per session every {@value #SESSION_RECHECK_MILLIS} ms. The session
+     * lasts {@link #getSessionTtlMillis()} from login and ends early on
+     * {@link #logout(String)}, or for every session of the user when they
+     * are deactivated, deleted, or their role or password changes: at once
+     * if the change is made through this class in the same process,
+     * otherwise at the next re-check.</p>
+     *
+     * <p><b>Example Usage:</b></p>
+     * <pre>{@code
+     * String token = SecuritySys.login("SALES001", password);
+     * ...
+     * User user = SecuritySys.resolveSession(token);
+     * if (user == null) {
+     *     // expired or revoked; ask the user to log in again
+     * }
+     * }</pre>
+     *
+     * @return the session token, or null if login fails
+     */
+    public static String login(String username, String password) {
+        // Retry if the user's account changed while logging in, so a
+        // session never outlives the invalidation that should have ended it
+        for (int attempt = 0; attempt < 3; attempt++) {
+            long generation = SESSION_GENERATION.get();
+
+            User user = authenticate(username, password);
+            if (user == null) return null;
+
+            String token = newSessionToken();
+            long now = System.currentTimeMillis();
+            Session session = new Session(user, now + sessionTtlMillis, now);
+            SESSIONS.put(token, session);
+            SESSIONS_BY_USER.computeIfAbsent(user.getId(), id -> ConcurrentHashMap.newKeySet()).add(token);
+
+            if (SESSION_GENERATION.get() == generation) {
+                purgeExpiredSessions();
+                return token;
+            }
+            removeSession(token);
+        }
+        return null;
+    }
+
+    /**
+     * Returns the user of a live session.
+     *
+     * <p>The user is served from memory, except that the account is read
+     * again once the session's copy is {@value #SESSION_RECHECK_MILLIS} ms
+     * old. The session ends if the account is gone, inactive, or its role
+     * or password changed, e.g. from another instance of the application,
+     * or if it cannot be read.</p>
+     *
+     * @return the session's user, or null if the token is unknown, expired or revoked
+     */
+    public static User resolveSession(String token) {
+        if (token == null) return null;
+
+        Session session = SESSIONS.get(token);
+        if (session == null) return null;
+
+        long now = System.currentTimeMillis();
+        if (session.isExpired(now)) {
+            removeSession(token);
+            return null;
+        }
+        if (now - session.checkedAt >= SESSION_RECHECK_MILLIS) {
+            session = recheckSession(token, session, now);
+        }
+        return session == null ? null : session.user;
+    }
+
+    /**
+     * Reads the session's account again and either refreshes the session
+     * with it or ends every session of the user.
+     *
+     * @return the refreshed session, or null if it ended
+     */
+    private static Session recheckSession(String token, Session session, long now) {
+        User current = findUserById(session.user.getId());
+
+        if (current == null
+                || !current.isActive()
+                || current.getRole() != session.user.getRole()
+                || !Objects.equals(current.getPassword(), session.user.getPassword())) {
+            invalidateSessions(session.user.getId());
+            return null;
+        }
+
+        Session refreshed = new Session(current, session.expiresAt, now);
+        // Keep a session that was ended or refreshed meanwhile as it is
+        return SESSIONS.replace(token, session, refreshed) ? refreshed : SESSIONS.get(token);
+    }
+
+    /**
+     * Ends a session.
+     */
+    public static void logout(String token) {
+        if (token != null) removeSession(token);
+    }
+
+    /**
+     * Ends every session of a user, e.g. after changing their account
+     * outside this class.
+     */
+    public static void invalidateSessions(int userId) {
+        SESSION_GENERATION.incrementAndGet();
+
+        Set<String> tokens = SESSIONS_BY_USER.remove(userId);
+        if (tokens == null) return;
+        for (String token : tokens) {
+            SESSIONS.remove(token);
+        }
+    }
+
+    private static void invalidateSessions(String username) {
+        SESSION_GENERATION.incrementAndGet();
+
+        for (Session session : SESSIONS.values()) {
+            if (session.user.getUsername().equals(username)) {
+                invalidateSessions(session.user.getId());
+            }
+        }
+    }
+
+    /**
+     * Sets how long new sessions last.
+     *
+     * @param ttlMillis session lifetime in milliseconds; must be greater than 0
+     */
+    public static void setSessionTtlMillis(long ttlMillis) {
+        if (ttlMillis <= 0) {
+            throw new IllegalArgumentException("Session TTL must be greater than 0.");
+        }
+        sessionTtlMillis = ttlMillis;
+    }
+
+    /** @return how long new sessions last, in milliseconds */
+    public static long getSessionTtlMillis() {
+        return sessionTtlMillis;
+    }
+
+    /** @return number of sessions currently held, including expired ones not yet purged */
+    public static int getSessionCount() {
+        return SESSIONS.size();
+    }
+
+    private static void removeSession(String token) {
+        Session session = SESSIONS.remove(token);
+        if (session == null) return;
+
+        SESSIONS_BY_USER.computeIfPresent(session.user.getId(), (id, tokens) -> {
+            tokens.remove(token);
+            return tokens.isEmpty() ? null : tokens;
+        });
+    }
+
+    private static void purgeExpiredSessions() {
+        long now = System.currentTimeMillis();
+        for (Map.Entry<String, Session> entry : SESSIONS.entrySet()) {
+            if (entry.getValue().isExpired(now)) removeSession(entry.getKey());
+        }
+    }
+
+    private static String newSessionToken() {
+        byte[] bytes = new byte[SESSION_TOKEN_BYTES];
+        TOKEN_RANDOM.nextBytes(bytes);
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(bytes);
+    }
+
+    /** A logged-in user, when their session ends and when the account was last read. */
+    private static final class Session {
+        private final User user;
+        private final long expiresAt;
+        private final long checkedAt;
+
+        Session(User user, long expiresAt, long checkedAt) {
+            this.user = user;
+            this.expiresAt = expiresAt;
+            this.checkedAt = checkedAt;
+        }
+
+        boolean isExpired(long now) {
+            return now >= expiresAt;
+        }
+    }
+
     /**
      * Checks whether a user's role satisfies a required access level.
      *
-     * Rules:
+     * With the default grants:
      *  - ADMIN always has full access
      *  - MANAGER can access SALES + PRODUCTION actions
      *  - Other roles must match exactly
      */
     public static boolean authorize(User user, Role requiredRole) {
-        if (user == null || !user.isActive()) return false;
-
-        Role userRole = user.getRole();
-
-        if (userRole == Role.ADMIN) return true;
-        if (userRole == requiredRole) return true;
-
-        if (userRole == Role.MANAGER &&
-                (requiredRole == Role.SALES || requiredRole == Role.PRODUCTION)) {
-            return true;
+        if (requiredRole == null) return false;
+
+        switch (requiredRole) {
+            case ADMIN:      return hasCapability(user, Capability.ADMIN_ACTIONS);
+            case MANAGER:    return hasCapability(user, Capability.MANAGER_ACTIONS);
+            case SALES:      return hasCapability(user, Capability.SALES_ACTIONS);
+            case PRODUCTION: return hasCapability(user, Capability.PRODUCTION_ACTIONS);
+            default:         return false;
         }
+    }
 
-        return false;
+    /**
+     * Checks one capability of an active user: a single bit test on the
+     * capability mask of the user's role. See {@link PermissionEngine}.
+     */
+    public static boolean hasCapability(User user, Capability capability) {
+        return PERMISSIONS.check(user, capability);
+    }
+
+    /**
+     * @return the permission engine, e.g. to load grants from the database
+     *         with {@link PermissionEngine#loadFromTable()}
+     */
+    public static PermissionEngine getPermissionEngine() {
+        return PERMISSIONS;
     }
 
 
@@ -287,29 +566,22 @@ public class SecuritySys {
 
     /** Only Admin + Manager can open the administrator interface. */
     public static boolean canAccessAdminUI(User user) {
-        return user != null &&
-                user.isActive() &&
-                (user.getRole() == Role.ADMIN || user.getRole() == Role.MANAGER);
+        return hasCapability(user, Capability.ACCESS_ADMIN_UI);
     }
 
     /** POSUI can be accessed by Admin, Manager, and Sales. */
     public static boolean canAccessPOSUI(User user) {
-        if (user == null || !user.isActive()) return false;
-        Role r = user.getRole();
-        return r == Role.ADMIN || r == Role.MANAGER || r == Role.SALES;
+        return hasCapability(user, Capability.ACCESS_POS_UI);
     }
 
     /** FactoryUI can be accessed by Admin, Manager, and Production staff. */
     public static boolean canAccessFactoryUI(User user) {
-        if (user == null || !user.isActive()) return false;
-        Role r = user.getRole();
-        return r == Role.ADMIN || r == Role.MANAGER || r == Role.PRODUCTION;
+        return hasCapability(user, Capability.ACCESS_FACTORY_UI);
     }
 
     /** Only Admin + Manager are allowed to manage users. */
     public static boolean canManageUsers(User user) {
-        if (user == null || !user.isActive()) return false;
-        return user.getRole() == Role.ADMIN || user.getRole() == Role.MANAGER;
+        return hasCapability(user, Capability.MANAGE_USERS);
     }
 
 
@@ -0,0 +1,298 @@
+package com.groupthree.sims;
+
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.function.IntFunction;
+import java.util.function.Supplier;
+
+/**
+ * An in-process cache of {@link Stock} records indexed by both id and name.
+ *
+ * <p>{@link InventorySys} routes every stock read through this cache, so
+ * stock checks on the sale path become memory reads. Writers call
+ * {@link #beginWrite()} before changing a row and, once the change is
+ * committed, either {@link #adjust(String, int, long) apply the delta} to
+ * the cached copy or {@link #invalidate(int) drop it}.</p>
+ *
+ * <p>Writes are numbered. A load that overlaps a write is returned but not
+ * cached, since it may have read the row before the write committed, and a
+ * committed delta is only applied to entries loaded before the write
+ * began; others are dropped. An older copy of a row therefore never
+ * replaces a newer one.</p>
+ *
+ * <p>Rows can also be changed outside this process (another till, direct
+ * SQL). To bound how stale an entry can get, each entry expires after a
+ * time-to-live and is then reloaded on the next read. Calling
+ * {@link #invalidateAll()} bumps the cache version, which makes every
+ * existing entry stale at once.</p>
+ *
+ * <p><b>Example Usage:</b></p>
+ * <pre>{@code
+ * StockCache cache = InventorySys.getStockCache();
+ * System.out.println("hits=" + cache.getHitCount() + " misses=" + cache.getMissCount());
+ * }</pre>
+ */
+public class StockCache
+{
+    private final IntFunction<Stock> loadById;
+    private final Function<String, Stock> loadByName;
+    private final long ttlMillis;
+
+    private final ConcurrentHashMap<Integer, Entry> byId = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, Integer> idByName = new ConcurrentHashMap<>();
+
+    /** Entries loaded under an older version are treated as expired. */
+    private final AtomicLong version = new AtomicLong();
+
+    /** Advanced by every write and invalidation; see the class comment. */
+    private final AtomicLong writes = new AtomicLong();
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong refreshes = new AtomicLong();
+
+    /**
+     * @param loadById   loads a stock row from the database by id, or returns {@code null}
+     * @param loadByName loads a stock row from the database by name, or returns {@code null}
+     * @param ttlMillis  how long an entry is served before it is reloaded
+     */
+    public StockCache(IntFunction<Stock> loadById, Function<String, Stock> loadByName, long ttlMillis)
+    {
+        this.loadById = loadById;
+        this.loadByName = loadByName;
+        this.ttlMillis = ttlMillis;
+    }
+
+    /* ===========================================================
+       READS
+       =========================================================== */
+
+    /**
+     * @param id the stock id
+     * @return the cached stock record, loading it on a miss or after expiry;
+     *         {@code null} if no such record exists
+     */
+    public Stock getById(int id)
+    {
+        Entry entry = byId.get(id);
+        if (isFresh(entry))
+        {
+            hits.incrementAndGet();
+            return entry.stock;
+        }
+
+        countMiss(entry);
+        long stamp = writes.get();
+        long loadVersion = version.get();
+        Stock stock = loadById.apply(id);
+        return store(id, stock, stamp, loadVersion);
+    }
+
+    /**
+     * @param name the stock item name
+     * @return the cached stock record, loading it on a miss or after expiry;
+     *         {@code null} if no such record exists
+     */
+    public Stock getByName(String name)
+    {
+        Integer id = idByName.get(name);
+        Entry entry = id != null ? byId.get(id) : null;
+        if (isFresh(entry) && entry.stock.getName().equals(name))
+        {
+            hits.incrementAndGet();
+            return entry.stock;
+        }
+
+        countMiss(entry);
+        long stamp = writes.get();
+        long loadVersion = version.get();
+        Stock stock = loadByName.apply(name);
+        if (stock == null)
+        {
+            idByName.remove(name);
+            return null;
+        }
+        return store(stock.getId(), stock, stamp, loadVersion);
+    }
+
+    /* ===========================================================
+       WRITES
+       =========================================================== */
+
+    /**
+     * Replaces the cache contents with freshly loaded rows, e.g. at startup.
+     * If a write happens while the rows are loading, nothing is cached.
+     *
+     * @param loadAll loads every stock row currently in the database
+     * @return the number of rows loaded
+     */
+    public int warm(Supplier<List<Stock>> loadAll)
+    {
+        long stamp = writes.get();
+        long loadVersion = version.get();
+        List<Stock> all = loadAll.get();
+
+        byId.clear();
+        idByName.clear();
+        for (Stock stock : all)
+        {
+            store(stock.getId(), stock, stamp, loadVersion);
+        }
+        return all.size();
+    }
+
+    /**
+     * Marks the start of a change to stock rows. Call it before the
+     * database statement runs and pass the result to
+     * {@link #adjust(String, int, long)} once the change is committed.
+     *
+     * @return the write's number
+     */
+    public long beginWrite()
+    {
+        return writes.incrementAndGet();
+    }
+
+    /**
+     * Applies a committed change that the database made server-side (for
+     * example a conditional decrement) to the cached level of one item.
+     *
+     * <p>The delta is only added to an entry loaded before
+     * {@code writeStamp}; an entry loaded while the write was in progress
+     * may or may not already include it, so it is dropped instead. Items
+     * that are not cached are left alone and loaded on the next read.</p>
+     *
+     * @param name       the stock item name
+     * @param delta      the amount added to the stock level (negative to remove)
+     * @param writeStamp the number {@link #beginWrite()} returned for this change
+     */
+    public void adjust(String name, int delta, long writeStamp)
+    {
+        Integer id = idByName.get(name);
+        if (id == null)
+        {
+            return;
+        }
+
+        byId.computeIfPresent(id, (key, entry) -> entry.stamp < writeStamp
+                ? new Entry(new Stock(entry.stock.getId(), entry.stock.getName(),
+                                entry.stock.getStockLevel() + delta, entry.stock.getMinimumStockLevel()),
+                        entry.loadedAt, entry.version, entry.stamp)
+                : null);
+    }
+
+    /**
+     * Removes one record so that the next read reloads it. Loads already in
+     * progress are not cached.
+     *
+     * @param id the stock id
+     */
+    public void invalidate(int id)
+    {
+        writes.incrementAndGet();
+
+        Entry removed = byId.remove(id);
+        if (removed != null)
+        {
+            idByName.remove(removed.stock.getName(), id);
+        }
+    }
+
+    /**
+     * Marks every cached record as stale so each is reloaded on its next read.
+     */
+    public void invalidateAll()
+    {
+        writes.incrementAndGet();
+        version.incrementAndGet();
+    }
+
+    /**
+     * Caches a row loaded from the database, unless a write or invalidation
+     * has started since the load read {@code stamp}.
+     *
+     * @return {@code stock}, whether or not it was cached
+     */
+    private Stock store(int id, Stock stock, long stamp, long loadVersion)
+    {
+        if (stock == null)
+        {
+            invalidate(id);
+            return null;
+        }
+
+        // Checked under the entry's lock, so an invalidate() cannot slip between the check and the put
+        Entry[] previous = new Entry[1];
+        Entry stored = byId.compute(id, (key, current) -> {
+            previous[0] = current;
+            return writes.get() == stamp
+                    ? new Entry(stock, System.currentTimeMillis(), loadVersion, stamp)
+                    : current;
+        });
+        if (stored == previous[0])
+        {
+            return stock;
+        }
+
+        if (previous[0] != null && !previous[0].stock.getName().equals(stock.getName()))
+        {
+            idByName.remove(previous[0].stock.getName(), id);
+        }
+        idByName.put(stock.getName(), id);
+        return stock;
+    }
+
+    private boolean isFresh(Entry entry)
+    {
+        return entry != null
+                && entry.version == version.get()
+                && System.currentTimeMillis() - entry.loadedAt < ttlMillis;
+    }
+
+    private void countMiss(Entry expired)
+    {
+        if (expired != null)
+        {
+            refreshes.incrementAndGet();
+        }
+        else
+        {
+            misses.incrementAndGet();
+        }
+    }
+
+    /* ===========================================================
+       METRICS
+       =========================================================== */
+
+    /** @return reads served from memory */
+    public long getHitCount() { return hits.get(); }
+
+    /** @return reads that had to load an uncached record from the database */
+    public long getMissCount() { return misses.get(); }
+
+    /** @return reads that reloaded an expired record from the database */
+    public long getRefreshCount() { return refreshes.get(); }
+
+    /** @return number of cached records */
+    public int getSize() { return byId.size(); }
+
+    /** A cached record with the time, cache version and write number it was loaded under. */
+    private static final class Entry
+    {
+        private final Stock stock;
+        private final long loadedAt;
+        private final long version;
+        private final long stamp;
+
+        private Entry(Stock stock, long loadedAt, long version, long stamp)
+        {
+            this.stock = stock;
+            this.loadedAt = loadedAt;
+            this.version = version;
+            this.stamp = stamp;
+        }
+    }
+}
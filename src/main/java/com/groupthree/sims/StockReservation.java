@@ -0,0 +1,79 @@
+package com.groupthree.sims;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * The outcome of reserving stock for every line of a {@link Sale} through
+ * {@link InventorySys#reserveStock(Sale)}.
+ *
+ * <p>A reservation is all-or-nothing: it is successful only if every line
+ * was {@link ReservationStatus#RESERVED}. When any line fails, the stock of
+ * all lines is left unchanged, and the per-line statuses explain which items
+ * were short.</p>
+ */
+public class StockReservation
+{
+    private final Map<Item, ReservationStatus> lines;
+
+    /**
+     * @param lines the status of each sale line, in sale order
+     */
+    public StockReservation(Map<Item, ReservationStatus> lines)
+    {
+        this.lines = Collections.unmodifiableMap(new LinkedHashMap<>(lines));
+    }
+
+    /**
+     * @return {@code true} if every line of the sale was reserved
+     */
+    public boolean isSuccessful()
+    {
+        for (ReservationStatus status : lines.values())
+        {
+            if (status != ReservationStatus.RESERVED)
+            {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return {@code true} if any line failed because of a database error
+     *         rather than a stock shortage
+     */
+    public boolean hasErrors()
+    {
+        return lines.containsValue(ReservationStatus.ERROR);
+    }
+
+    /**
+     * @return a read-only map of each sale item to its reservation status
+     */
+    public Map<Item, ReservationStatus> getLines()
+    {
+        return lines;
+    }
+
+    /**
+     * @param item a line item of the reserved sale
+     * @return the status of that line, or {@code null} if it was not part of the sale
+     */
+    public ReservationStatus getStatus(Item item)
+    {
+        return lines.get(item);
+    }
+
+    @Override
+    public String toString()
+    {
+        StringBuilder sb = new StringBuilder("Stock reservation:");
+        for (Map.Entry<Item, ReservationStatus> line : lines.entrySet())
+        {
+            sb.append(" [").append(line.getKey().getName()).append(": ").append(line.getValue()).append("]");
+        }
+        return sb.toString();
+    }
+}
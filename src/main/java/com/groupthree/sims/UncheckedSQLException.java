@@ -0,0 +1,28 @@
+package com.groupthree.sims;
+
+import java.sql.SQLException;
+
+/**
+ * Wraps a {@link SQLException} where a checked exception cannot be thrown,
+ * such as while a {@link Database#stream(String, java.util.List) database
+ * stream} is being consumed. The counterpart of
+ * {@link java.io.UncheckedIOException}.
+ */
+public class UncheckedSQLException extends RuntimeException
+{
+    private static final long serialVersionUID = 1L;
+
+    public UncheckedSQLException(String message, SQLException cause)
+    {
+        super(message, cause);
+    }
+
+    /**
+     * @return the underlying {@code SQLException}
+     */
+    @Override
+    public synchronized SQLException getCause()
+    {
+        return (SQLException) super.getCause();
+    }
+}
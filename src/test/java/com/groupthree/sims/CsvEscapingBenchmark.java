@@ -0,0 +1,204 @@
+package com.groupthree.sims;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Compares the old per-field CSV escaping with {@link CsvWriter} on rows
+ * shaped like the sales summary report.
+ *
+ * <p>Not a unit test; run it on demand with the test classpath:</p>
+ * <pre>{@code
+ * mvn test-compile exec:java -Dexec.classpathScope=test \
+ *     -Dexec.mainClass=com.groupthree.sims.CsvEscapingBenchmark
+ * }</pre>
+ * <p>Add {@code -prof gc} to the JMH options to see allocation per row.</p>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CsvEscapingBenchmark
+{
+    private static final String[] CUSTOMERS = {
+            "Walk-in", "Smith, John", "Brown's Hardware", "Mary-Jane Clarke",
+            "Kingston Wholesale Ltd.", "The \"Corner\" Shop", "Patel, A. & Sons", "Green Grocers"
+    };
+
+    private static final String[] ITEMS = {
+            "500ml Water Bottle", "1L Juice, Mango", "Crackers 12-pack", "Bag of Rice (2kg)",
+            "Sugar 1kg", "Cooking Oil 3\" Cap", "Dish Soap", "Paper Towels, 6 Rolls"
+    };
+
+    private static final DateTimeFormatter DATE_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+
+    /** Percentage of text fields that need quoting. */
+    @Param({ "5", "25" })
+    public int quotedPercent;
+
+    @Param({ "10000" })
+    public int rowCount;
+
+    private String[] dates;
+    private String[] customers;
+    private String[] items;
+    private long[] quantities;
+    private double[] prices;
+
+    @Setup
+    public void setUp()
+    {
+        Random random = new Random(42);
+        LocalDateTime start = LocalDateTime.of(2024, 1, 1, 8, 0);
+
+        dates = new String[rowCount];
+        customers = new String[rowCount];
+        items = new String[rowCount];
+        quantities = new long[rowCount];
+        prices = new double[rowCount];
+
+        for (int i = 0; i < rowCount; i++)
+        {
+            dates[i] = DATE_FORMAT.format(start.plusMinutes(i * 7L));
+            customers[i] = pick(random, CUSTOMERS);
+            items[i] = pick(random, ITEMS);
+            quantities[i] = 1 + random.nextInt(48);
+            prices[i] = Math.round((0.5 + random.nextDouble() * 250) * 100) / 100.0;
+        }
+    }
+
+    /** Picks a value that needs quoting about {@code quotedPercent} percent of the time. */
+    private String pick(Random random, String[] values)
+    {
+        boolean quoted = random.nextInt(100) < quotedPercent;
+        while (true)
+        {
+            String value = values[random.nextInt(values.length)];
+            if (needsQuoting(value) == quoted)
+            {
+                return value;
+            }
+        }
+    }
+
+    /** The escaping and row building used before {@link CsvWriter}. */
+    @Benchmark
+    public long legacyEscaping() throws IOException
+    {
+        CountingWriter sink = new CountingWriter();
+        try (BufferedWriter writer = new BufferedWriter(sink, CsvWriter.DEFAULT_BUFFER_SIZE))
+        {
+            for (int i = 0; i < rowCount; i++)
+            {
+                String line = escapeCsvField(dates[i]) + ","
+                        + escapeCsvField(customers[i]) + ","
+                        + escapeCsvField(items[i]) + ","
+                        + escapeCsvField(String.valueOf(quantities[i])) + ","
+                        + escapeCsvField(String.format("%.2f", prices[i])) + ","
+                        + escapeCsvField(String.format("%.2f", quantities[i] * prices[i]));
+                writer.write(line);
+                writer.write('\n');
+            }
+        }
+        return sink.count;
+    }
+
+    @Benchmark
+    public long csvWriter() throws IOException
+    {
+        CountingWriter sink = new CountingWriter();
+        try (CsvWriter csv = new CsvWriter(sink))
+        {
+            for (int i = 0; i < rowCount; i++)
+            {
+                csv.writeField(dates[i]);
+                csv.writeField(customers[i]);
+                csv.writeField(items[i]);
+                csv.writeField(quantities[i]);
+                csv.writeField(prices[i], 2);
+                csv.writeField(quantities[i] * prices[i], 2);
+                csv.endRow();
+            }
+        }
+        return sink.count;
+    }
+
+    /** Copy of the former {@code CsvExporter.escapeCsvField}. */
+    private static String escapeCsvField(String value)
+    {
+        if (value == null)
+        {
+            return "";
+        }
+
+        boolean mustQuote = value.contains(",")
+                || value.contains("\"")
+                || value.contains("\n")
+                || value.contains("\r");
+
+        String escaped = value.replace("\"", "\"\"");
+        return mustQuote ? "\"" + escaped + "\"" : escaped;
+    }
+
+    private static boolean needsQuoting(String value)
+    {
+        return value.contains(",") || value.contains("\"") || value.contains("\n") || value.contains("\r");
+    }
+
+    /** Discards the output but counts it, so the work cannot be optimised away. */
+    private static final class CountingWriter extends Writer
+    {
+        long count;
+
+        @Override
+        public void write(char[] cbuf, int off, int len)
+        {
+            count += len;
+            if (len > 0)
+            {
+                count += cbuf[off + len - 1];
+            }
+        }
+
+        @Override
+        public void flush()
+        {
+        }
+
+        @Override
+        public void close()
+        {
+        }
+    }
+
+    public static void main(String[] args) throws RunnerException
+    {
+        Options options = new OptionsBuilder()
+                .include(CsvEscapingBenchmark.class.getSimpleName())
+                .build();
+        new Runner(options).run();
+    }
+}
@@ -0,0 +1,274 @@
+package com.groupthree.sims;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Checks that {@link CsvImporter} cuts a file into chunks without breaking
+ * quoted fields, and reports rows by the line they start on.
+ */
+public class CsvImporterTest
+{
+    private static ForkJoinPool pool;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @BeforeClass
+    public static void startPool()
+    {
+        pool = new ForkJoinPool(4);
+    }
+
+    @AfterClass
+    public static void stopPool()
+    {
+        pool.shutdownNow();
+    }
+
+    @Test
+    public void keepsQuotedFieldsWholeAcrossChunks() throws IOException
+    {
+        String csv = "id,name,note\n"
+                + "1,\"Smith, J\",\"line one\nline two\"\n"
+                + "2,\"say \"\"hi\"\"\",\"\"\n"
+                + "3,plain,\"a\r\nb\"\r\n"
+                + "4,\"\"\"\",\"ends with newline\n\"\n";
+        String[][] expected = {
+                { "1", "Smith, J", "line one\nline two" },
+                { "2", "say \"hi\"", "" },
+                { "3", "plain", "a\r\nb" },
+                { "4", "\"", "ends with newline\n" }
+        };
+
+        for (int chunkRecords = 1; chunkRecords <= 5; chunkRecords++)
+        {
+            Collected collected = importText(csv, chunkRecords);
+
+            assertEquals(0, collected.result.getErrorCount());
+            assertEquals(4, collected.result.getRowsImported());
+            assertRows(expected, collected.rows);
+            assertEquals(Arrays.asList(2, 4, 5, 7), collected.lines);
+        }
+    }
+
+    @Test
+    public void matchesTheRecordsOfALargeRandomFile() throws IOException
+    {
+        // Large enough to cross several read buffers, so quoted fields straddle them
+        Random random = new Random(23);
+        StringBuilder csv = new StringBuilder("a,b,c\r\n");
+        List<String[]> expected = new ArrayList<>();
+        List<Integer> expectedLines = new ArrayList<>();
+        int line = 2;
+
+        for (int i = 0; i < 3000; i++)
+        {
+            String[] fields = { "row" + i, randomField(random), randomField(random) };
+            expected.add(fields);
+            expectedLines.add(line);
+
+            String record = quote(fields[0]) + "," + quote(fields[1]) + "," + quote(fields[2]);
+            csv.append(record).append(random.nextBoolean() ? "\r\n" : "\n");
+            line += count(record, '\n') + 1;
+        }
+
+        for (int chunkRecords : new int[] { 1, 7, 500, 10_000 })
+        {
+            Collected collected = importText(csv.toString(), chunkRecords);
+
+            assertEquals(0, collected.result.getErrorCount());
+            assertEquals(expected.size(), collected.result.getRowsRead());
+            assertRows(expected.toArray(new String[0][]), collected.rows);
+            assertEquals(expectedLines, collected.lines);
+        }
+    }
+
+    @Test
+    public void reportsWrongFieldCountsByStartLine() throws IOException
+    {
+        String csv = "id,name\n"
+                + "1,one\n"
+                + "2\n"
+                + "\n"
+                + "3,\"multi\nline\",extra\n"
+                + "4,four";
+
+        Collected collected = importText(csv, 2);
+
+        assertEquals(4, collected.result.getRowsRead());
+        assertEquals(2, collected.result.getRowsImported());
+        assertEquals(2, collected.result.getErrorCount());
+        assertEquals(Arrays.asList(2, 7), collected.lines);
+
+        List<CsvImporter.RowError> errors = collected.result.getErrors();
+        assertEquals(3, errors.get(0).getLine());
+        assertEquals("Expected 2 fields but found 1.", errors.get(0).getMessage());
+        assertEquals(5, errors.get(1).getLine());
+        assertEquals("Expected 2 fields but found 3.", errors.get(1).getMessage());
+    }
+
+    @Test
+    public void reportsParserErrorsAndKeepsGoing() throws IOException
+    {
+        Path file = write("qty\n1\nx\n3\n");
+
+        List<Integer> imported = new ArrayList<>();
+        CsvImporter.Result result = CsvImporter.importCsv(file,
+                header -> fields -> {
+                    try
+                    {
+                        return Integer.parseInt(fields[0]);
+                    }
+                    catch (NumberFormatException e)
+                    {
+                        throw new IllegalArgumentException("Not a number: " + fields[0]);
+                    }
+                },
+                (rows, lines, errors) -> {
+                    imported.addAll(rows);
+                    return rows.size();
+                },
+                1, pool);
+
+        assertEquals(Arrays.asList(1, 3), imported);
+        assertEquals(1, result.getErrorCount());
+        assertEquals(3, result.getErrors().get(0).getLine());
+        assertEquals("Not a number: x", result.getErrors().get(0).getMessage());
+    }
+
+    @Test
+    public void stripsByteOrderMarkAndTrimsHeader() throws IOException
+    {
+        Path file = write("\uFEFFid , name\r\n1,one\r\n");
+
+        List<String[]> headers = new ArrayList<>();
+        CsvImporter.Result result = CsvImporter.importCsv(file,
+                header -> {
+                    headers.add(header);
+                    return fields -> fields;
+                },
+                (rows, lines, errors) -> rows.size(),
+                10, pool);
+
+        assertArrayEquals(new String[] { "id", "name" }, headers.get(0));
+        assertEquals(1, result.getRowsImported());
+    }
+
+    @Test
+    public void rejectedHeaderFailsOnLineOne() throws IOException
+    {
+        Path file = write("name\none\n");
+
+        CsvImporter.Result result = CsvImporter.importCsv(file,
+                header -> {
+                    throw new IllegalArgumentException("Missing column: id");
+                },
+                (rows, lines, errors) -> rows.size(),
+                10, pool);
+
+        assertEquals(0, result.getRowsRead());
+        assertEquals(1, result.getErrorCount());
+        assertEquals(1, result.getErrors().get(0).getLine());
+    }
+
+    @Test
+    public void emptyFileIsAnError() throws IOException
+    {
+        CsvImporter.Result result = CsvImporter.importCsv(write(""),
+                header -> fields -> fields, (rows, lines, errors) -> rows.size(), 10, pool);
+
+        assertEquals(1, result.getErrorCount());
+        assertTrue(result.getErrors().get(0).getMessage().contains("empty"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsChunkSizeBelowOne() throws IOException
+    {
+        CsvImporter.importCsv(write("a\n"), header -> fields -> fields, (rows, lines, errors) -> 0, 0, pool);
+    }
+
+    private Collected importText(String csv, int chunkRecords) throws IOException
+    {
+        Collected collected = new Collected();
+        collected.result = CsvImporter.importCsv(write(csv),
+                header -> fields -> fields,
+                (rows, lines, errors) -> {
+                    collected.rows.addAll(rows);
+                    collected.lines.addAll(lines);
+                    return rows.size();
+                },
+                chunkRecords, pool);
+        return collected;
+    }
+
+    private Path write(String csv) throws IOException
+    {
+        Path file = folder.newFile().toPath();
+        Files.write(file, csv.getBytes(StandardCharsets.UTF_8));
+        return file;
+    }
+
+    private static void assertRows(String[][] expected, List<String[]> actual)
+    {
+        assertEquals(expected.length, actual.size());
+        for (int i = 0; i < expected.length; i++)
+        {
+            assertArrayEquals("row " + i, expected[i], actual.get(i));
+        }
+    }
+
+    private static String randomField(Random random)
+    {
+        char[] alphabet = { 'x', 'y', ' ', ',', '"', '\n', '\r' };
+        char[] chars = new char[random.nextInt(random.nextInt(10) == 0 ? 200 : 20)];
+        for (int i = 0; i < chars.length; i++)
+        {
+            chars[i] = alphabet[random.nextInt(alphabet.length)];
+        }
+        return new String(chars);
+    }
+
+    /** Quotes every field, so a field of one space or a lone CR stays intact. */
+    private static String quote(String value)
+    {
+        return "\"" + value.replace("\"", "\"\"") + "\"";
+    }
+
+    private static int count(String s, char c)
+    {
+        int n = 0;
+        for (int i = 0; i < s.length(); i++)
+        {
+            if (s.charAt(i) == c)
+            {
+                n++;
+            }
+        }
+        return n;
+    }
+
+    private static final class Collected
+    {
+        private final List<String[]> rows = new ArrayList<>();
+        private final List<Integer> lines = new ArrayList<>();
+        private CsvImporter.Result result;
+    }
+}
@@ -0,0 +1,230 @@
+package com.groupthree.sims;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Checks that {@link CsvWriter} writes the same RFC 4180 output as the
+ * per-field escaping it replaced, including the in-buffer prefix shift,
+ * the long-field fallback and fixed-point number formatting.
+ */
+public class CsvWriterTest
+{
+    private static final String[] EDGE_CASES = {
+            "", "plain", " spaced ", "a,b", ",", ",leading", "trailing,",
+            "\"", "\"\"", "\"quoted\"", "say \"hi\"", "a\"b\"c",
+            "\n", "\r", "\r\n", "line1\nline2", "line1\r\nline2", "end\r",
+            "mixed, \"all\"\r\nof it", "café, crème", "tab\tseparated"
+    };
+
+    @Test
+    public void escapesEdgeCasesLikeTheOldEscaper() throws IOException
+    {
+        for (String value : EDGE_CASES)
+        {
+            assertEquals(value, legacyEscape(value), writeOne(value, CsvWriter.DEFAULT_BUFFER_SIZE));
+        }
+    }
+
+    @Test
+    public void writesNullAsAnEmptyField() throws IOException
+    {
+        StringWriter out = new StringWriter();
+        try (CsvWriter csv = new CsvWriter(out))
+        {
+            csv.writeField("a");
+            csv.writeField((CharSequence) null);
+            csv.writeEmpty();
+            csv.writeField("b");
+            csv.endRow();
+        }
+        assertEquals("a,,,b\n", out.toString());
+    }
+
+    @Test
+    public void shiftsPrefixWhenFieldFillsTheBuffer() throws IOException
+    {
+        // The field starts near the end of a small buffer, so it is written after a drain
+        for (int lead = 0; lead < 40; lead++)
+        {
+            char[] filler = new char[lead];
+            Arrays.fill(filler, 'x');
+
+            for (String value : EDGE_CASES)
+            {
+                StringWriter out = new StringWriter();
+                try (CsvWriter csv = new CsvWriter(out, 32))
+                {
+                    csv.writeField(new String(filler));
+                    csv.writeField(value);
+                    csv.endRow();
+                }
+                assertEquals(legacyEscape(new String(filler)) + "," + legacyEscape(value) + "\n", out.toString());
+            }
+        }
+    }
+
+    @Test
+    public void fallsBackForFieldsLongerThanTheBuffer() throws IOException
+    {
+        String plain = repeat("abcdefgh", 10);
+        String special = repeat("ab\"c,d\ne", 10);
+        String lateQuote = repeat("z", 70) + "\"";
+
+        for (String value : new String[] { plain, special, lateQuote })
+        {
+            assertEquals(legacyEscape(value), writeOne(value, 32));
+        }
+    }
+
+    @Test
+    public void matchesTheOldEscaperOnRandomFields() throws IOException
+    {
+        Random random = new Random(2140);
+        char[] alphabet = { 'a', 'b', ' ', ',', '"', '\n', '\r', 'é' };
+
+        for (int i = 0; i < 5000; i++)
+        {
+            char[] chars = new char[random.nextInt(60)];
+            for (int j = 0; j < chars.length; j++)
+            {
+                chars[j] = alphabet[random.nextInt(alphabet.length)];
+            }
+            String value = new String(chars);
+
+            assertEquals(legacyEscape(value), writeOne(value, 32 + random.nextInt(64)));
+        }
+    }
+
+    @Test
+    public void writesRowsWithSeparators() throws IOException
+    {
+        StringWriter out = new StringWriter();
+        CsvWriter csv = new CsvWriter(out);
+        csv.writeRow(Arrays.asList("id", "name, full", "qty"));
+        csv.writeField(7);
+        csv.writeField("Smith, \"J\"");
+        csv.writeField(-3);
+        csv.endRow();
+        csv.close();
+
+        assertEquals("id,\"name, full\",qty\n7,\"Smith, \"\"J\"\"\",-3\n", out.toString());
+        assertEquals(2, csv.getRowCount());
+    }
+
+    @Test
+    public void writesIntegers() throws IOException
+    {
+        long[] values = { 0, 1, -1, 9, 10, 1234567890L, -987654321L, Long.MAX_VALUE, Long.MIN_VALUE };
+        for (long value : values)
+        {
+            StringWriter out = new StringWriter();
+            try (CsvWriter csv = new CsvWriter(out, 32))
+            {
+                csv.writeField(value);
+            }
+            assertEquals(Long.toString(value), out.toString());
+        }
+    }
+
+    @Test
+    public void roundsFixedPointLikeStringFormat() throws IOException
+    {
+        double[] values = {
+                0, -0.0, 2.5, 2.345, -2.345, 1.005, -1.005, 0.005, -0.005, -0.001, 0.125, 0.135,
+                0.285, 0.29, -0.29, 9.995, 99.995, 1.115, 123456.785, 1e-9, 1234567890.125
+        };
+
+        for (int scale = 0; scale <= 4; scale++)
+        {
+            for (double value : values)
+            {
+                assertEquals(value + " at scale " + scale,
+                        String.format(Locale.ROOT, "%." + scale + "f", value), writeFixed(value, scale));
+            }
+        }
+    }
+
+    @Test
+    public void roundsRandomAmountsLikeStringFormat() throws IOException
+    {
+        Random random = new Random(4180);
+        for (int i = 0; i < 20000; i++)
+        {
+            // Amounts with three decimals hit the half-way cases of two-decimal output
+            double value = (random.nextInt(2_000_000) - 1_000_000) / 1000.0;
+            assertEquals(String.format(Locale.ROOT, "%.2f", value), writeFixed(value, 2));
+
+            double wide = random.nextGaussian() * 1e15;
+            assertEquals(String.format(Locale.ROOT, "%.3f", wide), writeFixed(wide, 3));
+        }
+    }
+
+    @Test
+    public void formatsNonFiniteFixedPointValues() throws IOException
+    {
+        assertEquals("NaN", writeFixed(Double.NaN, 2));
+        assertEquals("Infinity", writeFixed(Double.POSITIVE_INFINITY, 2));
+        assertEquals("-Infinity", writeFixed(Double.NEGATIVE_INFINITY, 2));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsScaleOutOfRange() throws IOException
+    {
+        writeFixed(1.0, 10);
+    }
+
+    /** Copy of the former {@code CsvExporter.escapeCsvField}. */
+    private static String legacyEscape(String value)
+    {
+        if (value == null)
+        {
+            return "";
+        }
+
+        boolean mustQuote = value.contains(",")
+                || value.contains("\"")
+                || value.contains("\n")
+                || value.contains("\r");
+
+        String escaped = value.replace("\"", "\"\"");
+        return mustQuote ? "\"" + escaped + "\"" : escaped;
+    }
+
+    private static String writeOne(String value, int bufferSize) throws IOException
+    {
+        StringWriter out = new StringWriter();
+        try (CsvWriter csv = new CsvWriter(out, bufferSize))
+        {
+            csv.writeField(value);
+        }
+        return out.toString();
+    }
+
+    private static String writeFixed(double value, int scale) throws IOException
+    {
+        StringWriter out = new StringWriter();
+        try (CsvWriter csv = new CsvWriter(out, 32))
+        {
+            csv.writeField(value, scale);
+        }
+        return out.toString();
+    }
+
+    private static String repeat(String s, int times)
+    {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < times; i++)
+        {
+            sb.append(s);
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,163 @@
+package com.groupthree.sims;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+import org.junit.Test;
+
+/**
+ * Checks the sliding window and EWMA kept by {@link DefectRateMonitor},
+ * and when it raises and re-arms its alert. Breaches are collected in
+ * memory, so no database is needed.
+ */
+public class DefectRateMonitorTest
+{
+    private static final double DELTA = 1e-9;
+
+    private final List<String> alerts = new ArrayList<>();
+
+    @Test
+    public void raisesOnceUntilTheRateFallsBelowTheRearmLevel()
+    {
+        DefectRateMonitor monitor = monitor(4);
+
+        monitor.record(1, null, 100, 1);
+        assertTrue(alerts.isEmpty());
+
+        // 21 / 200 = 10.5% over the window
+        monitor.record(1, null, 100, 20);
+        assertEquals(1, alerts.size());
+        assertEquals("Item 1|item:1|10.50|10.00", alerts.get(0));
+
+        // Still over, or between 80% and 100% of the limit: no new alert
+        monitor.record(1, null, 100, 20);
+        monitor.record(1, null, 100, 0);
+        monitor.record(1, null, 100, 0);
+        monitor.record(1, null, 100, 30);
+        monitor.record(1, null, 100, 0);
+        assertEquals(1, alerts.size());
+
+        // Window 7.5% and EWMA 4.2%, both under 8%: re-armed
+        monitor.record(1, null, 100, 0);
+        assertEquals(1, alerts.size());
+
+        monitor.record(1, null, 100, 20);
+        assertEquals(2, alerts.size());
+        assertEquals("Item 1|item:1|12.50|10.00", alerts.get(1));
+    }
+
+    @Test
+    public void checksNothingBelowTheMinimumUnits()
+    {
+        DefectRateMonitor monitor = monitor(4);
+
+        monitor.record(1, "M1", 50, 50);
+        assertTrue(alerts.isEmpty());
+
+        monitor.record(1, "M1", 50, 0);
+        assertEquals(2, alerts.size());
+        assertEquals("Item 1|item:1|50.00|10.00", alerts.get(0));
+        assertEquals("Machine M1|machine:M1|50.00|10.00", alerts.get(1));
+    }
+
+    @Test
+    public void lateReportIsChargedToTheNewestBatch()
+    {
+        DefectRateMonitor monitor = monitor(4);
+
+        monitor.record(2, "M1", 100, 5);
+        monitor.record(2, "M1", 0, 5);
+
+        DefectRateMonitor.Snapshot stats = monitor.getItemStats(2);
+        assertEquals(2, stats.getTotalBatches());
+        assertEquals(1, stats.getBatches());
+        assertEquals(100, stats.getUnits());
+        assertEquals(10, stats.getDefects());
+        assertEquals(0.10, stats.getWindowRate(), DELTA);
+        assertEquals(0.10, stats.getEwma(), DELTA);
+        assertEquals(stats.getEwma(), monitor.getMachineStats("M1").getEwma(), DELTA);
+        assertTrue(alerts.isEmpty());
+
+        // Pushes the one batch to 15%, and the rate and EWMA stop at 100%
+        monitor.record(2, "M1", 0, 5);
+        assertEquals(2, alerts.size());
+
+        monitor.record(2, "M1", 0, 500);
+        assertEquals(1.0, monitor.getItemStats(2).getWindowRate(), DELTA);
+        assertEquals(1.0, monitor.getItemStats(2).getEwma(), DELTA);
+    }
+
+    @Test
+    public void lateReportMovesTheEwmaLikeTheBatchHadIncludedIt()
+    {
+        DefectRateMonitor late = monitor(4);
+        late.record(3, null, 100, 0);
+        late.record(3, null, 100, 10);
+        late.record(3, null, 0, 10);
+
+        DefectRateMonitor direct = monitor(4);
+        direct.record(3, null, 100, 0);
+        direct.record(3, null, 100, 20);
+
+        assertEquals(0.10, direct.getItemStats(3).getEwma(), DELTA);
+        assertEquals(direct.getItemStats(3).getEwma(), late.getItemStats(3).getEwma(), DELTA);
+        assertEquals(direct.getItemStats(3).getWindowRate(), late.getItemStats(3).getWindowRate(), DELTA);
+    }
+
+    @Test
+    public void ignoresAReportWithNoBatch()
+    {
+        DefectRateMonitor monitor = new DefectRateMonitor(4, 0.5, 0.10, 0.10, 0, this::collect);
+
+        monitor.record(4, null, 0, 5);
+
+        DefectRateMonitor.Snapshot stats = monitor.getItemStats(4);
+        assertEquals(0, stats.getBatches());
+        assertEquals(0, stats.getDefects());
+        assertEquals(0.0, stats.getEwma(), DELTA);
+        assertTrue(alerts.isEmpty());
+    }
+
+    @Test
+    public void evictsTheOldestBatchFromTheWindow()
+    {
+        DefectRateMonitor monitor = monitor(3);
+
+        monitor.record(5, "M2", 100, 5);
+        monitor.record(5, "M2", 200, 10);
+        monitor.record(5, "M2", 300, 0);
+        assertEquals(600, monitor.getItemStats(5).getUnits());
+
+        monitor.record(5, "M2", 400, 40);
+
+        DefectRateMonitor.Snapshot stats = monitor.getMachineStats("M2");
+        assertEquals(4, stats.getTotalBatches());
+        assertEquals(3, stats.getBatches());
+        assertEquals(900, stats.getUnits());
+        assertEquals(50, stats.getDefects());
+        assertEquals(50 / 900.0, stats.getWindowRate(), DELTA);
+        assertEquals(0.05, stats.getP50(), DELTA);
+        assertEquals(0.10, stats.getP99(), DELTA);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsAnAlphaAboveOne()
+    {
+        new DefectRateMonitor(4, 1.5, 0.10, 0.10, 100, this::collect);
+    }
+
+    /** 10% window and EWMA limits, checked from 100 units, with an alpha of 0.5. */
+    private DefectRateMonitor monitor(int windowSize)
+    {
+        return new DefectRateMonitor(windowSize, 0.5, 0.10, 0.10, 100, this::collect);
+    }
+
+    private void collect(String label, String entity, double ratePercent, double limitPercent)
+    {
+        alerts.add(String.format(Locale.ROOT, "%s|%s|%.2f|%.2f", label, entity, ratePercent, limitPercent));
+    }
+}
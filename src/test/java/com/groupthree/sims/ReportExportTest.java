@@ -0,0 +1,229 @@
+package com.groupthree.sims;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.GZIPInputStream;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Checks how {@link SaleSys} splits a report period into partitions, and
+ * that a partitioned export writes the same file as a sequential one
+ * whatever the parallelism. Rows come from memory, so no database is needed.
+ */
+public class ReportExportTest
+{
+    private static final LocalDateTime MARCH_1 = LocalDateTime.of(2024, 3, 1, 0, 0);
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void onlyTheLastPartitionIncludesItsEnd()
+    {
+        List<SaleSys.ReportPartition> days =
+                SaleSys.partitionReport(MARCH_1, MARCH_1.plusDays(3), Duration.ofDays(1));
+
+        assertEquals(3, days.size());
+        assertPartition(days.get(0), MARCH_1, MARCH_1.plusDays(1), false);
+        assertPartition(days.get(1), MARCH_1.plusDays(1), MARCH_1.plusDays(2), false);
+        assertPartition(days.get(2), MARCH_1.plusDays(2), MARCH_1.plusDays(3), true);
+    }
+
+    @Test
+    public void lastPartitionIsCutShortAtTheEndOfThePeriod()
+    {
+        LocalDateTime to = MARCH_1.plusDays(1).plusHours(12);
+        List<SaleSys.ReportPartition> days = SaleSys.partitionReport(MARCH_1, to, Duration.ofDays(1));
+
+        assertEquals(2, days.size());
+        assertPartition(days.get(0), MARCH_1, MARCH_1.plusDays(1), false);
+        assertPartition(days.get(1), MARCH_1.plusDays(1), to, true);
+    }
+
+    @Test
+    public void singleInstantIsOneInclusivePartition()
+    {
+        List<SaleSys.ReportPartition> partitions = SaleSys.partitionReport(MARCH_1, MARCH_1, Duration.ofDays(1));
+
+        assertEquals(1, partitions.size());
+        assertPartition(partitions.get(0), MARCH_1, MARCH_1, true);
+    }
+
+    @Test
+    public void startAfterEndHasNoPartitions()
+    {
+        assertTrue(SaleSys.partitionReport(MARCH_1.plusDays(1), MARCH_1, Duration.ofDays(1)).isEmpty());
+    }
+
+    @Test
+    public void subDayPartitionsAreContiguous()
+    {
+        LocalDateTime to = MARCH_1.plusDays(1).plusMinutes(90);
+        List<SaleSys.ReportPartition> partitions = SaleSys.partitionReport(MARCH_1, to, Duration.ofHours(6));
+
+        assertEquals(5, partitions.size());
+        assertEquals(MARCH_1, partitions.get(0).from);
+        for (int i = 1; i < partitions.size(); i++)
+        {
+            assertEquals(partitions.get(i - 1).to, partitions.get(i).from);
+            assertFalse(partitions.get(i - 1).last);
+        }
+        assertPartition(partitions.get(4), MARCH_1.plusDays(1), to, true);
+
+        List<SaleSys.ReportPartition> millis =
+                SaleSys.partitionReport(MARCH_1, MARCH_1.plusNanos(5_000_000), Duration.ofMillis(1));
+        assertEquals(5, millis.size());
+    }
+
+    @Test
+    public void explicitParallelismIsKept()
+    {
+        assertEquals(3, ReportOptions.create().parallelism(3).getParallelism());
+    }
+
+    @Test
+    public void partitionedExportMatchesSequentialExport() throws IOException
+    {
+        LocalDateTime to = MARCH_1.plusDays(4);
+        List<Map<String, Object>> rows = sampleRows(to);
+
+        Path sequential = folder.newFile("sequential.csv").toPath();
+        long expectedRows = CsvExporter.writeCsv(sequential, SaleSys.REPORT_HEADERS,
+                rows.stream().filter(r -> within(r, MARCH_1, to, true)), SaleSys::writeReportRow);
+        byte[] expected = Files.readAllBytes(sequential);
+
+        for (Duration length : List.of(Duration.ofDays(1), Duration.ofHours(5), Duration.ofDays(10)))
+        {
+            List<SaleSys.ReportPartition> partitions = SaleSys.partitionReport(MARCH_1, to, length);
+
+            for (int parallelism : new int[] { 1, 4 })
+            {
+                ForkJoinPool pool = new ForkJoinPool(parallelism);
+                try
+                {
+                    Path plain = folder.newFile().toPath();
+                    long written = CsvExporter.writeCsvPartitioned(plain, SaleSys.REPORT_HEADERS, partitions,
+                            p -> rows.stream().filter(r -> within(r, p.from, p.to, p.last)),
+                            SaleSys::writeReportRow, pool, false);
+
+                    assertEquals(expectedRows, written);
+                    assertArrayEquals(length + " at parallelism " + parallelism, expected, Files.readAllBytes(plain));
+
+                    Path gzipped = folder.newFile().toPath();
+                    CsvExporter.writeCsvPartitioned(gzipped, SaleSys.REPORT_HEADERS, partitions,
+                            p -> rows.stream().filter(r -> within(r, p.from, p.to, p.last)),
+                            SaleSys::writeReportRow, pool, true);
+
+                    try (InputStream in = new GZIPInputStream(Files.newInputStream(gzipped)))
+                    {
+                        assertArrayEquals(expected, in.readAllBytes());
+                    }
+                }
+                finally
+                {
+                    pool.shutdownNow();
+                }
+            }
+        }
+    }
+
+    @Test
+    public void failedRowReadFailsThePartitionedExport() throws IOException
+    {
+        List<SaleSys.ReportPartition> partitions =
+                SaleSys.partitionReport(MARCH_1, MARCH_1.plusDays(3), Duration.ofDays(1));
+        List<Map<String, Object>> rows = sampleRows(MARCH_1.plusDays(3));
+        Path file = folder.newFile().toPath();
+
+        ForkJoinPool pool = new ForkJoinPool(2);
+        try
+        {
+            CsvExporter.writeCsvPartitioned(file, SaleSys.REPORT_HEADERS, partitions,
+                    p -> p.last
+                            ? Stream.<Map<String, Object>>generate(() -> {
+                                throw new UncheckedSQLException("Connection lost", new SQLException("gone"));
+                            })
+                            : rows.stream().filter(r -> within(r, p.from, p.to, p.last)),
+                    SaleSys::writeReportRow, pool, false);
+            fail("A failed read must not look like the end of the rows");
+        }
+        catch (IOException e)
+        {
+            assertTrue(e.getCause() instanceof SQLException);
+        }
+        finally
+        {
+            pool.shutdownNow();
+        }
+    }
+
+    private static void assertPartition(SaleSys.ReportPartition partition,
+                                        LocalDateTime from, LocalDateTime to, boolean last)
+    {
+        assertEquals(from, partition.from);
+        assertEquals(to, partition.to);
+        assertEquals(last, partition.last);
+    }
+
+    /** Mirrors the report queries: {@code [from, to)}, or {@code [from, to]} for the last partition. */
+    private static boolean within(Map<String, Object> row, LocalDateTime from, LocalDateTime to, boolean last)
+    {
+        LocalDateTime date = ((Timestamp) row.get("sale_date")).toLocalDateTime();
+        return !date.isBefore(from) && (last ? !date.isAfter(to) : date.isBefore(to));
+    }
+
+    /**
+     * Sale lines in date order every 37 minutes, plus lines exactly on
+     * partition boundaries and at the end of the period.
+     */
+    private static List<Map<String, Object>> sampleRows(LocalDateTime to)
+    {
+        List<LocalDateTime> dates = new ArrayList<>();
+        for (LocalDateTime date = MARCH_1; !date.isAfter(to); date = date.plusMinutes(37))
+        {
+            dates.add(date);
+        }
+        for (LocalDateTime day = MARCH_1; !day.isAfter(to); day = day.plusDays(1))
+        {
+            dates.add(day);
+            dates.add(day.plusHours(5));
+        }
+        dates.add(to);
+
+        List<LocalDateTime> ordered = dates.stream().sorted().collect(Collectors.toList());
+        List<Map<String, Object>> rows = new ArrayList<>();
+        for (int i = 0; i < ordered.size(); i++)
+        {
+            Map<String, Object> row = new HashMap<>();
+            row.put("sale_date", Timestamp.valueOf(ordered.get(i)));
+            row.put("customer_name", i % 7 == 0 ? "Smith, \"J\"" : "Customer " + i);
+            row.put("item_name", i % 11 == 0 ? null : "Item " + (i % 5));
+            row.put("quantity", i % 13 == 0 ? null : i % 9 + 1);
+            row.put("unit_price", i % 3 + 0.125 * (i % 8));
+            rows.add(row);
+        }
+        return rows;
+    }
+}